@@ -19,21 +19,133 @@
 (function() {
 	var app = angular.module('angularjs-project-support.build', []);
 
+	/*
+	 * Fetches build information once per apiUrl per page: every caller shares the same promise, so any number of
+	 * <build> elements cost a single request. The last response and its ETag are kept in localStorage, and the next
+	 * page load revalidates them with If-None-Match; the server answers 304 with no body while the build is unchanged.
+	 * Likewise, every subscriber to a streamUrl shares one EventSource, closed when the last of them unsubscribes.
+	 */
+	app.factory('buildService', ['$http', '$q', '$window', '$rootScope', function($http, $q, $window, $rootScope) {
+		var STORAGE_PREFIX = 'angularjs-project-support.build:';
+		var promises = {};
+		var streams = {};
+		
+		var read = function(apiUrl) {
+			try {
+				var stored = $window.localStorage && $window.localStorage.getItem(STORAGE_PREFIX + apiUrl);
+				return stored ? angular.fromJson(stored) : null;
+			} catch(e) {
+				// storage disabled, or the entry is corrupt
+				return null;
+			}
+		};
+		var write = function(apiUrl, etag, data) {
+			try {
+				if($window.localStorage) {
+					$window.localStorage.setItem(STORAGE_PREFIX + apiUrl, angular.toJson({ etag: etag, data: data }));
+				}
+			} catch(e) {
+				// storage disabled or full; we'll refetch next time
+			}
+		};
+		var fetch = function(apiUrl) {
+			var cached = read(apiUrl);
+			var config = {};
+			if(cached && cached.etag) {
+				config.headers = { 'If-None-Match': cached.etag };
+			}
+			return $http.get(apiUrl, config).then(function(response) {
+				var etag = response.headers('ETag');
+				if(etag) {
+					write(apiUrl, etag, response.data);
+				}
+				return response.data;
+			}, function(response) {
+				if(response.status === 304 && cached) {
+					return cached.data;
+				}
+				delete promises[apiUrl];
+				return $q.reject(response);
+			});
+		};
+		return {
+			/*
+			 * Returns a promise for the build at apiUrl, shared with every other caller on the page.
+			 */
+			get: function(apiUrl) {
+				if(!promises[apiUrl]) {
+					promises[apiUrl] = fetch(apiUrl);
+				}
+				return promises[apiUrl];
+			},
+			/*
+			 * Revalidates the build at apiUrl; later calls to get share the new promise.
+			 */
+			refresh: function(apiUrl) {
+				promises[apiUrl] = fetch(apiUrl);
+				return promises[apiUrl];
+			},
+			/*
+			 * Calls listener with each build sent by the Server-Sent Events stream at streamUrl (starting with the latest,
+			 * if the stream is already open). Returns the function that unsubscribes the listener.
+			 */
+			subscribe: function(streamUrl, listener) {
+				var stream = streams[streamUrl];
+				if(!stream) {
+					stream = streams[streamUrl] = { source: new $window.EventSource(streamUrl), listeners: [] };
+					stream.source.addEventListener('build', function(event) {
+						stream.data = angular.fromJson(event.data);
+						$rootScope.$apply(function() {
+							angular.forEach(stream.listeners.slice(), function(each) {
+								each(stream.data);
+							});
+						});
+					});
+				} else if(stream.data !== undefined) {
+					listener(stream.data);
+				}
+				stream.listeners.push(listener);
+				return function() {
+					var index = stream.listeners.indexOf(listener);
+					if(index >= 0) {
+						stream.listeners.splice(index, 1);
+						if(stream.listeners.length === 0) {
+							stream.source.close();
+							delete streams[streamUrl];
+						}
+					}
+				};
+			}
+		};
+	}]);
+
 	app.directive('build', function() {
 		return {
 			restrict: 'E',
 			scope: {
-    			apiUrl: '@apiUrl'
+    			apiUrl: '@apiUrl',
+    			streamUrl: '@streamUrl'
     		},
 			template: '<p class="text-muted pull-right">Revision {{buildNumber}} (Version {{projectVersion}}<span ng-show="scmBranch"> from {{scmBranch}} branch</span>)</p>',
-			controller: ['$scope', '$http', function($scope, $http) {
-				$http
-					.get($scope.apiUrl)
-					.success(function(data) {
-						$scope.buildNumber = data.buildNumber;
-						$scope.projectVersion= data.projectVersion;
-						$scope.scmBranch = data.scmBranch;
-					});
+			controller: ['$scope', 'buildService', '$window', function($scope, buildService, $window) {
+				var update = function(data) {
+					var previous = $scope.buildNumber;
+					$scope.buildNumber = data.buildNumber;
+					$scope.projectVersion= data.projectVersion;
+					$scope.scmBranch = data.scmBranch;
+					if(previous !== undefined && previous !== data.buildNumber) {
+						// a redeploy
+						$scope.$emit('build:changed', data);
+					}
+				};
+				if($scope.streamUrl && $window.EventSource) {
+					// the stream sends the current build on connect, and again when it changes, so no GET is needed
+					$scope.$on('$destroy', buildService.subscribe($scope.streamUrl, update));
+				} else {
+					buildService
+						.get($scope.apiUrl)
+						.then(update);
+				}
 			}],
 		}
 	});
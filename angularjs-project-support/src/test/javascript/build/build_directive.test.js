@@ -21,6 +21,10 @@ describe("directive: build", function() {
 	var element, scope, $compile_, $httpBackend;
 	
 	beforeEach(module('angularjs-project-support'));
+	
+	beforeEach(function() {
+		window.localStorage.clear();
+	});
 
 	beforeEach(inject(function($rootScope, $compile,  _$httpBackend_) {
 		scope = $rootScope.$new();
@@ -75,4 +79,118 @@ describe("directive: build", function() {
 		expect(element.find('span').text()).toBe(' from  branch');
 		expect(element.find('span').hasClass('ng-hide')).toBe(true);
 	});
+	it('should share one request among several elements', function(){
+		$httpBackend.expectGET('build').respond(
+				{
+					buildNumber: "f0b3539",
+					scmBranch: null,
+					projectVersion: "1.3.0"
+				});
+		var first = $compile_('<build api-url="build"></build>')(scope);
+		var second = $compile_('<build api-url="build"></build>')(scope);
+		$httpBackend.flush();
+		scope.$digest();
+		
+		expect(first.find('p').text()).toContain('Revision f0b3539');
+		expect(second.find('p').text()).toContain('Revision f0b3539');
+		$httpBackend.verifyNoOutstandingExpectation();
+		$httpBackend.verifyNoOutstandingRequest();
+	});
+	it('should revalidate the stored build with If-None-Match', function(){
+		window.localStorage.setItem('angularjs-project-support.build:build', angular.toJson({
+			etag: '"abc"',
+			data: { buildNumber: "f0b3539", scmBranch: "master", projectVersion: "1.3.1-SNAPSHOT" }
+		}));
+		$httpBackend.expectGET('build', function(headers) {
+			return headers['If-None-Match'] === '"abc"';
+		}).respond(304, '');
+		compileDirective();
+		
+		expect(element.find('p').text()).toContain('Revision f0b3539');
+		expect(element.find('span').text()).toBe(' from master branch');
+	});
+	it('should store the build with its ETag', function(){
+		$httpBackend.expectGET('build').respond(200, { buildNumber: "f0b3539", scmBranch: null, projectVersion: "1.3.0" }, { 'ETag': '"def"' });
+		compileDirective();
+		
+		var stored = angular.fromJson(window.localStorage.getItem('angularjs-project-support.build:build'));
+		expect(stored.etag).toBe('"def"');
+		expect(stored.data.buildNumber).toBe('f0b3539');
+	});
+	describe('with stream-url', function() {
+		var sources, $window_;
+		
+		beforeEach(inject(function($window) {
+			$window_ = $window;
+			sources = [];
+			$window.EventSource = function(url) {
+				var listeners = {};
+				this.url = url;
+				this.closed = false;
+				this.addEventListener = function(name, listener) {
+					listeners[name] = listener;
+				};
+				this.close = function() {
+					this.closed = true;
+				};
+				this.send = function(name, data) {
+					listeners[name]({ data: angular.toJson(data) });
+				};
+				sources.push(this);
+			};
+		}));
+		afterEach(function() {
+			delete $window_.EventSource;
+		});
+		
+		it('should render each build event without polling', function() {
+			element = $compile_('<build api-url="build" stream-url="build/events"></build>')(scope);
+			scope.$digest();
+			expect(sources.length).toBe(1);
+			expect(sources[0].url).toBe('build/events');
+			
+			sources[0].send('build', { buildNumber: "f0b3539", scmBranch: "master", projectVersion: "1.3.1-SNAPSHOT" });
+			expect(element.find('p').text()).toContain('Revision f0b3539');
+			
+			var changed = jasmine.createSpy('changed');
+			scope.$on('build:changed', changed);
+			sources[0].send('build', { buildNumber: "a1b2c3d", scmBranch: null, projectVersion: "1.3.1" });
+			expect(element.find('p').text()).toContain('Revision a1b2c3d');
+			expect(element.find('span').hasClass('ng-hide')).toBe(true);
+			expect(changed).toHaveBeenCalled();
+			
+			$httpBackend.verifyNoOutstandingRequest();
+		});
+		it('should close the stream when destroyed', function() {
+			element = $compile_('<build stream-url="build/events"></build>')(scope);
+			scope.$digest();
+			scope.$destroy();
+			expect(sources[0].closed).toBe(true);
+		});
+		it('should share one stream among several elements', function() {
+			var firstScope = scope.$new();
+			var secondScope = scope.$new();
+			var first = $compile_('<build stream-url="build/events"></build>')(firstScope);
+			firstScope.$digest();
+			sources[0].send('build', { buildNumber: "f0b3539", scmBranch: "master", projectVersion: "1.3.1-SNAPSHOT" });
+			
+			var second = $compile_('<build stream-url="build/events"></build>')(secondScope);
+			secondScope.$digest();
+			expect(sources.length).toBe(1);
+			expect(second.find('p').text()).toContain('Revision f0b3539');
+			
+			sources[0].send('build', { buildNumber: "a1b2c3d", scmBranch: null, projectVersion: "1.3.1" });
+			expect(first.find('p').text()).toContain('Revision a1b2c3d');
+			expect(second.find('p').text()).toContain('Revision a1b2c3d');
+			
+			firstScope.$destroy();
+			expect(sources[0].closed).toBe(false);
+			secondScope.$destroy();
+			expect(sources[0].closed).toBe(true);
+			
+			$compile_('<build stream-url="build/events"></build>')(scope);
+			scope.$digest();
+			expect(sources.length).toBe(2);
+		});
+	});
 });
\ No newline at end of file
@@ -0,0 +1,183 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import java.util.Properties;
+
+/**
+ * The build information written into the artifact: the same fields, with the same rules, as 
+ * spring-project-rest-api's Build and ProjectController.
+ * 
+ * @author Nicholas Blair
+ */
+public final class BuildDescriptor {
+
+	public static final String GIT_BUILD_TIME = "git.build.time";
+	public static final String GIT_BRANCH = "git.branch";
+	public static final String GIT_COMMIT_ID_ABBREV = "git.commit.id.abbrev";
+	public static final String GIT_DIRTY = "git.dirty";
+	public static final String GIT_TAGS = "git.tags";
+	
+	private final String buildNumber;
+	private final String scmBranch;
+	private final String projectVersion;
+	private final String timestamp;
+	private final boolean dirty;
+	/**
+	 * 
+	 * @param buildNumber
+	 * @param scmBranch
+	 * @param projectVersion
+	 * @param timestamp
+	 * @param dirty
+	 */
+	public BuildDescriptor(String buildNumber, String scmBranch, String projectVersion, String timestamp, boolean dirty) {
+		this.buildNumber = buildNumber;
+		this.scmBranch = scmBranch;
+		this.projectVersion = projectVersion;
+		this.timestamp = timestamp;
+		this.dirty = dirty;
+	}
+	/**
+	 * The branch is left out for tagged (release) builds, and the build is assumed dirty when git.dirty isn't set.
+	 * 
+	 * @param projectVersion
+	 * @param properties the project's properties, including those set by the git-commit-id-plugin
+	 * @return a descriptor
+	 */
+	public static BuildDescriptor fromProperties(String projectVersion, Properties properties) {
+		String tags = properties.getProperty(GIT_TAGS);
+		String scmBranch = tags == null || tags.isEmpty() ? properties.getProperty(GIT_BRANCH) : null;
+		return new BuildDescriptor(properties.getProperty(GIT_COMMIT_ID_ABBREV), 
+				scmBranch, 
+				projectVersion, 
+				properties.getProperty(GIT_BUILD_TIME), 
+				Boolean.parseBoolean(properties.getProperty(GIT_DIRTY, "true")));
+	}
+	/**
+	 * @return the buildNumber
+	 */
+	public String getBuildNumber() {
+		return buildNumber;
+	}
+	/**
+	 * @return the scmBranch
+	 */
+	public String getScmBranch() {
+		return scmBranch;
+	}
+	/**
+	 * @return the projectVersion
+	 */
+	public String getProjectVersion() {
+		return projectVersion;
+	}
+	/**
+	 * @return the timestamp
+	 */
+	public String getTimestamp() {
+		return timestamp;
+	}
+	/**
+	 * @return the dirty
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+	/**
+	 * 
+	 * @return a JSON object with the properties of spring-project-rest-api's Build, in the same order
+	 */
+	public String toJson() {
+		StringBuilder builder = new StringBuilder(160);
+		builder.append("{\"buildNumber\":");
+		appendQuoted(builder, buildNumber);
+		builder.append(",\"scmBranch\":");
+		appendQuoted(builder, scmBranch);
+		builder.append(",\"projectVersion\":");
+		appendQuoted(builder, projectVersion);
+		builder.append(",\"timestamp\":");
+		appendQuoted(builder, timestamp);
+		builder.append(",\"dirty\":");
+		builder.append(dirty);
+		builder.append('}');
+		return builder.toString();
+	}
+	/**
+	 * 
+	 * @param packageName empty for the default package
+	 * @param className
+	 * @return the source of a final class with a constant for each property, and the JSON
+	 */
+	public String toJavaSource(String packageName, String className) {
+		StringBuilder builder = new StringBuilder(1024);
+		if(!packageName.isEmpty()) {
+			builder.append("package ").append(packageName).append(";\n\n");
+		}
+		builder.append("/**\n * Build information, generated by the build-descriptor-maven-plugin.\n */\n");
+		builder.append("public final class ").append(className).append(" {\n\n");
+		appendConstant(builder, "BUILD_NUMBER", buildNumber);
+		appendConstant(builder, "SCM_BRANCH", scmBranch);
+		appendConstant(builder, "PROJECT_VERSION", projectVersion);
+		appendConstant(builder, "TIMESTAMP", timestamp);
+		builder.append("\tpublic static final boolean DIRTY = ").append(dirty).append(";\n");
+		appendConstant(builder, "JSON", toJson());
+		builder.append("\n\tprivate ").append(className).append("() {\n\t}\n}\n");
+		return builder.toString();
+	}
+	/**
+	 * 
+	 * @param builder
+	 * @param name
+	 * @param value may be null
+	 */
+	private static void appendConstant(StringBuilder builder, String name, String value) {
+		builder.append("\tpublic static final String ").append(name).append(" = ");
+		appendQuoted(builder, value);
+		builder.append(";\n");
+	}
+	/**
+	 * Appends the value as a string literal that is valid in both JSON and Java, or null.
+	 * 
+	 * @param builder
+	 * @param value may be null
+	 */
+	static void appendQuoted(StringBuilder builder, String value) {
+		if(value == null) {
+			builder.append("null");
+			return;
+		}
+		builder.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '"': builder.append("\\\""); break;
+			case '\\': builder.append("\\\\"); break;
+			case '\n': builder.append("\\n"); break;
+			case '\r': builder.append("\\r"); break;
+			case '\t': builder.append("\\t"); break;
+			default:
+				if(c < 0x20 || c > 0x7e) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		builder.append('"');
+	}
+}
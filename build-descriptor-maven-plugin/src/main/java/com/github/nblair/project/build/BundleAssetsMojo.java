@@ -0,0 +1,254 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Bundles static web assets for serving with far-future expiry: every file under the source directory is written to the output
+ * directory under a content-hashed name (build/build_directive.js becomes build/build_directive.0123456789ab.js), JavaScript
+ * minified by the {@link JavaScriptMinifier}, along with a precompressed ".gz" variant when that is smaller.
+ * A JSON manifest maps each original path to its hashed path, so a server (or page) can find the current name.
+ * Files left in the output directory by earlier builds under another hash of the same name are deleted, so a build without
+ * "clean" doesn't ship them.
+ *
+ * @author Nicholas Blair
+ */
+@Mojo(name="bundle", defaultPhase=LifecyclePhase.PROCESS_RESOURCES, threadSafe=true)
+public class BundleAssetsMojo extends AbstractMojo {
+
+	public static final String DEFAULT_MANIFEST = "asset-manifest.json";
+	public static final String GZIP_SUFFIX = ".gz";
+	/**
+	 * Hex characters of the SHA-256 digest used in the hashed names.
+	 */
+	static final int HASH_LENGTH = 12;
+
+	/**
+	 * The assets to bundle.
+	 */
+	@Parameter(required=true)
+	private File sourceDirectory;
+	/**
+	 * Where the hashed files, their ".gz" variants and the manifest are written.
+	 */
+	@Parameter(defaultValue="${project.build.outputDirectory}", required=true)
+	private File outputDirectory;
+	/**
+	 * The name of the manifest, relative to the outputDirectory.
+	 */
+	@Parameter(defaultValue=DEFAULT_MANIFEST, required=true)
+	private String manifest;
+	/**
+	 *
+	 */
+	@Parameter(defaultValue="false")
+	private boolean skip;
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException {
+		if(skip) {
+			getLog().info("Skipping asset bundle");
+			return;
+		}
+		if(!sourceDirectory.isDirectory()) {
+			getLog().info("No assets to bundle in " + sourceDirectory);
+			return;
+		}
+		try {
+			Map<String, String> hashedPaths = bundle(sourceDirectory, outputDirectory, manifest);
+			getLog().info("Bundled " + hashedPaths.size() + " assets from " + sourceDirectory);
+		} catch (IOException e) {
+			throw new MojoExecutionException("failed to bundle assets", e);
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("failed to minify assets in " + sourceDirectory + ": " + e.getMessage(), e);
+		}
+	}
+	/**
+	 *
+	 * @param sourceDirectory
+	 * @param outputDirectory
+	 * @param manifest the manifest's path relative to the outputDirectory
+	 * @return the manifest: the hashed path for each source path, both relative and '/' separated
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a JavaScript file can't be minified
+	 */
+	static Map<String, String> bundle(File sourceDirectory, File outputDirectory, String manifest) throws IOException {
+		Map<String, String> hashedPaths = new TreeMap<String, String>();
+		collect(sourceDirectory, "", outputDirectory, hashedPaths);
+		GenerateBuildDescriptorMojo.write(new File(outputDirectory, manifest), toJson(hashedPaths).getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		return hashedPaths;
+	}
+	/**
+	 *
+	 * @param directory
+	 * @param prefix the directory's path relative to the source directory, with a trailing '/' unless empty
+	 * @param outputDirectory
+	 * @param hashedPaths
+	 * @throws IOException
+	 */
+	private static void collect(File directory, String prefix, File outputDirectory, Map<String, String> hashedPaths) throws IOException {
+		File[] files = directory.listFiles();
+		if(files == null) {
+			throw new IOException("failed to list " + directory);
+		}
+		Arrays.sort(files);
+		for(File file: files) {
+			String path = prefix + file.getName();
+			if(file.isDirectory()) {
+				collect(file, path + "/", outputDirectory, hashedPaths);
+				continue;
+			}
+			byte[] content = Files.readAllBytes(file.toPath());
+			if(path.endsWith(".js")) {
+				content = JavaScriptMinifier.minify(new String(content, GenerateBuildDescriptorMojo.UTF_8)).getBytes(GenerateBuildDescriptorMojo.UTF_8);
+			}
+			String hashedPath = hashedPath(path, content);
+			GenerateBuildDescriptorMojo.write(new File(outputDirectory, hashedPath), content);
+			byte[] compressed = gzip(content);
+			if(compressed.length < content.length) {
+				GenerateBuildDescriptorMojo.write(new File(outputDirectory, hashedPath + GZIP_SUFFIX), compressed);
+			}
+			deleteStale(outputDirectory, path, hashedPath);
+			hashedPaths.put(path, hashedPath);
+		}
+	}
+	/**
+	 * Delete the files an earlier build wrote for the path under another hash, and their ".gz" variants.
+	 *
+	 * @param outputDirectory
+	 * @param path
+	 * @param hashedPath the path's current hashed path
+	 * @throws IOException
+	 */
+	static void deleteStale(File outputDirectory, String path, String hashedPath) throws IOException {
+		File current = new File(outputDirectory, hashedPath);
+		File[] siblings = current.getParentFile().listFiles();
+		if(siblings == null) {
+			throw new IOException("failed to list " + current.getParentFile());
+		}
+		Pattern hashedName = hashedNamePattern(new File(path).getName());
+		for(File sibling: siblings) {
+			String name = sibling.getName();
+			if(sibling.isFile() && hashedName.matcher(name).matches() 
+					&& !name.equals(current.getName()) && !name.equals(current.getName() + GZIP_SUFFIX)) {
+				Files.delete(sibling.toPath());
+			}
+		}
+	}
+	/**
+	 *
+	 * @param name a file name, without directories
+	 * @return a pattern matching the name under any hash, with or without the {@link #GZIP_SUFFIX}
+	 */
+	static Pattern hashedNamePattern(String name) {
+		String hash = "\\.[0-9a-f]{" + HASH_LENGTH + "}";
+		int dot = name.lastIndexOf('.');
+		String hashedName = dot <= 0 ? Pattern.quote(name) + hash : Pattern.quote(name.substring(0, dot)) + hash + Pattern.quote(name.substring(dot));
+		return Pattern.compile(hashedName + "(" + Pattern.quote(GZIP_SUFFIX) + ")?");
+	}
+	/**
+	 *
+	 * @param path
+	 * @param content
+	 * @return the path with the first {@link #HASH_LENGTH} hex characters of the content's SHA-256 digest before the extension
+	 */
+	static String hashedPath(String path, byte[] content) {
+		String hash = toHex(sha256(content)).substring(0, HASH_LENGTH);
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		if(dot <= slash + 1) {
+			return path + "." + hash;
+		}
+		return path.substring(0, dot) + "." + hash + path.substring(dot);
+	}
+	/**
+	 *
+	 * @param hashedPaths
+	 * @return the manifest as a JSON object
+	 */
+	static String toJson(Map<String, String> hashedPaths) {
+		StringBuilder builder = new StringBuilder("{");
+		for(Map.Entry<String, String> entry: hashedPaths.entrySet()) {
+			if(builder.length() > 1) {
+				builder.append(',');
+			}
+			BuildDescriptor.appendQuoted(builder, entry.getKey());
+			builder.append(':');
+			BuildDescriptor.appendQuoted(builder, entry.getValue());
+		}
+		return builder.append('}').toString();
+	}
+	/**
+	 * The output is the same for the same input (GZIPOutputStream leaves the header's timestamp 0), so
+	 * {@link GenerateBuildDescriptorMojo#write(File, byte[])} skips it on unchanged builds.
+	 *
+	 * @param bytes
+	 * @return the bytes, gzipped
+	 * @throws IOException
+	 */
+	static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+	/**
+	 *
+	 * @param content
+	 * @return the SHA-256 digest
+	 */
+	private static byte[] sha256(byte[] content) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required of every JVM", e);
+		}
+	}
+	/**
+	 *
+	 * @param bytes
+	 * @return lower case hex
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for(byte b: bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return builder.toString();
+	}
+}
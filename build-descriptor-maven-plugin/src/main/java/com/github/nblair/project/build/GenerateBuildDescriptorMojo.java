@@ -0,0 +1,133 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Writes the project's {@link BuildDescriptor} as META-INF/build.json (a generated resource) and as a constants class
+ * (a generated source), so nothing needs to be resolved at runtime.
+ * 
+ * Run it after the git-commit-id-plugin's revision goal, which sets the git.* properties it reads.
+ * 
+ * @author Nicholas Blair
+ */
+@Mojo(name="generate", defaultPhase=LifecyclePhase.GENERATE_SOURCES, threadSafe=true)
+public class GenerateBuildDescriptorMojo extends AbstractMojo {
+
+	public static final String BUILD_JSON = "META-INF/build.json";
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Pattern QUALIFIED_NAME = Pattern.compile("([\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)(\\.[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)*");
+	
+	@Parameter(defaultValue="${project}", readonly=true, required=true)
+	private MavenProject project;
+	/**
+	 * Where META-INF/build.json is written; added to the project's resources.
+	 */
+	@Parameter(defaultValue="${project.build.directory}/generated-resources/build-descriptor", required=true)
+	private File resourceDirectory;
+	/**
+	 * Where the constants class is written; added to the project's compile source roots.
+	 */
+	@Parameter(defaultValue="${project.build.directory}/generated-sources/build-descriptor", required=true)
+	private File sourceDirectory;
+	/**
+	 * The fully qualified name of the constants class; leave empty to skip it.
+	 */
+	@Parameter(defaultValue="${project.groupId}.BuildDescriptor")
+	private String constantsClass;
+	/**
+	 * 
+	 */
+	@Parameter(defaultValue="false")
+	private boolean skip;
+	
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException {
+		if(skip) {
+			getLog().info("Skipping build descriptor");
+			return;
+		}
+		Properties properties = project.getProperties();
+		BuildDescriptor descriptor = BuildDescriptor.fromProperties(project.getVersion(), properties);
+		try {
+			write(new File(resourceDirectory, BUILD_JSON), descriptor.toJson());
+			Resource resource = new Resource();
+			resource.setDirectory(resourceDirectory.getAbsolutePath());
+			resource.setIncludes(Arrays.asList(BUILD_JSON));
+			project.addResource(resource);
+			
+			if(constantsClass != null && !constantsClass.isEmpty()) {
+				String qualifiedName = constantsClass.replace('-', '_');
+				if(!QUALIFIED_NAME.matcher(qualifiedName).matches()) {
+					throw new MojoExecutionException("constantsClass is not a valid class name: " + constantsClass);
+				}
+				int lastDot = qualifiedName.lastIndexOf('.');
+				String packageName = lastDot < 0 ? "" : qualifiedName.substring(0, lastDot);
+				String className = qualifiedName.substring(lastDot + 1);
+				write(new File(sourceDirectory, qualifiedName.replace('.', File.separatorChar) + ".java"), descriptor.toJavaSource(packageName, className));
+				project.addCompileSourceRoot(sourceDirectory.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("failed to write build descriptor", e);
+		}
+	}
+	/**
+	 * Writes the file, unless it already has the content (so unchanged builds don't recompile or repackage it).
+	 * 
+	 * @param file
+	 * @param content
+	 * @throws IOException
+	 */
+	static void write(File file, String content) throws IOException {
+		write(file, content.getBytes(UTF_8));
+	}
+	/**
+	 * Writes the file, unless it already has the content.
+	 * 
+	 * @param file
+	 * @param bytes
+	 * @throws IOException
+	 */
+	static void write(File file, byte[] bytes) throws IOException {
+		if(file.isFile() && Arrays.equals(bytes, Files.readAllBytes(file.toPath()))) {
+			return;
+		}
+		File parent = file.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("failed to create " + parent);
+		}
+		Files.write(file.toPath(), bytes);
+	}
+}
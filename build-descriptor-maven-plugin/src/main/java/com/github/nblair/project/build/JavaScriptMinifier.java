@@ -0,0 +1,281 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A conservative JavaScript minifier: removes comments (except those starting with "/*!", and a block comment before any
+ * code, usually the file's license header) and collapses whitespace, leaving string, template and regular expression
+ * literals untouched. Identifiers aren't renamed, and a line break is kept wherever automatic semicolon insertion might
+ * depend on it. It decides whether a '/' starts a regular expression from the character before it, so a regular
+ * expression right after a ')' (as in "if(x) /y/.test(z)") isn't supported.
+ *
+ * @author Nicholas Blair
+ */
+public final class JavaScriptMinifier {
+
+	/**
+	 * Characters that can't end an expression, so a '/' after them starts a regular expression.
+	 */
+	private static final String REGEX_PRECEDERS = "(,=:[!&|?{};+-*%<>~^}";
+	/**
+	 * Characters after which a line break never ends a statement.
+	 */
+	private static final String CONTINUES_AFTER = "{;,([=:?&|*%<>!~^";
+	/**
+	 * Characters before which a line break never ends a statement.
+	 */
+	private static final String CONTINUES_BEFORE = "}),;].?:";
+	private static final Set<String> REGEX_KEYWORDS = new HashSet<String>(Arrays.asList("return", "typeof", "case", "do", "else",
+			"in", "instanceof", "new", "delete", "void", "throw"));
+
+	private final String source;
+	private final StringBuilder out;
+	private int position;
+	private boolean pendingSpace;
+	private boolean pendingNewline;
+	/**
+	 * The last character written, other than a line break or space; 0 at the start.
+	 */
+	private char last;
+	/**
+	 * The identifier or keyword just written, if {@link #last} ends one.
+	 */
+	private final StringBuilder lastWord = new StringBuilder();
+	/**
+	 * True if {@link #last} ends a "++" or "--" operator, after which a '/' is a division.
+	 */
+	private boolean lastIncrement;
+	/**
+	 *
+	 * @param source
+	 */
+	private JavaScriptMinifier(String source) {
+		this.source = source;
+		this.out = new StringBuilder(source.length());
+	}
+	/**
+	 *
+	 * @param source
+	 * @return the minified source
+	 * @throws IllegalArgumentException if a comment or literal isn't terminated
+	 */
+	public static String minify(String source) {
+		return new JavaScriptMinifier(source).minify();
+	}
+	/**
+	 *
+	 * @return the minified source
+	 */
+	private String minify() {
+		while(position < source.length()) {
+			char c = source.charAt(position);
+			char next = position + 1 < source.length() ? source.charAt(position + 1) : 0;
+			if(c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029') {
+				pendingNewline = true;
+				position++;
+			} else if(Character.isWhitespace(c) || c == '\u00a0' || c == '\ufeff') {
+				pendingSpace = true;
+				position++;
+			} else if(c == '/' && next == '/') {
+				while(position < source.length() && source.charAt(position) != '\n' && source.charAt(position) != '\r') {
+					position++;
+				}
+			} else if(c == '/' && next == '*') {
+				comment();
+			} else if(c == '\'' || c == '"' || c == '`') {
+				literal(c);
+			} else if(c == '/' && regexAllowed()) {
+				regex();
+			} else {
+				token(c);
+				position++;
+			}
+		}
+		if(out.length() > 0) {
+			out.append('\n');
+		}
+		return out.toString();
+	}
+	/**
+	 * Skips a block comment, or copies it if it starts with "/*!" (licenses, by convention) or comes before anything
+	 * else has been written (a license header).
+	 */
+	private void comment() {
+		int end = source.indexOf("*/", position + 2);
+		if(end < 0) {
+			throw unterminated("comment");
+		}
+		String comment = source.substring(position, end + 2);
+		position = end + 2;
+		if(comment.startsWith("/*!") || out.length() == 0) {
+			if(out.length() > 0) {
+				out.append('\n');
+			}
+			out.append(comment).append('\n');
+			pendingSpace = false;
+			pendingNewline = false;
+			last = 0;
+			lastWord.setLength(0);
+			lastIncrement = false;
+		} else if(comment.indexOf('\n') >= 0 || comment.indexOf('\r') >= 0) {
+			pendingNewline = true;
+		} else {
+			pendingSpace = true;
+		}
+	}
+	/**
+	 * Copies a string or template literal.
+	 *
+	 * @param quote
+	 */
+	private void literal(char quote) {
+		int start = position;
+		position++;
+		while(position < source.length()) {
+			char c = source.charAt(position++);
+			if(c == '\\') {
+				// an escaped character, or a line continuation
+				if(source.startsWith("\r\n", position)) {
+					position++;
+				}
+				position++;
+			} else if(c == quote) {
+				separate(quote);
+				out.append(source, start, position);
+				last = quote;
+				lastWord.setLength(0);
+				lastIncrement = false;
+				return;
+			} else if(quote != '`' && (c == '\n' || c == '\r')) {
+				break;
+			}
+		}
+		throw unterminated("string");
+	}
+	/**
+	 * Copies a regular expression literal, up to its flags (which are copied as an identifier would be).
+	 */
+	private void regex() {
+		int start = position;
+		position++;
+		boolean inClass = false;
+		while(position < source.length()) {
+			char c = source.charAt(position++);
+			if(c == '\\') {
+				position++;
+			} else if(c == '[') {
+				inClass = true;
+			} else if(c == ']') {
+				inClass = false;
+			} else if(c == '/' && !inClass) {
+				separate('/');
+				out.append(source, start, position);
+				last = '/';
+				lastWord.setLength(0);
+				lastIncrement = false;
+				return;
+			} else if(c == '\n' || c == '\r') {
+				break;
+			}
+		}
+		throw unterminated("regular expression");
+	}
+	/**
+	 *
+	 * @param c any other character
+	 */
+	private void token(char c) {
+		separate(c);
+		boolean increment = (c == '+' || c == '-') && !lastIncrement && out.length() > 0 && out.charAt(out.length() - 1) == c;
+		out.append(c);
+		lastIncrement = increment;
+		if(isIdentifierPart(c)) {
+			if(!isIdentifierPart(last)) {
+				lastWord.setLength(0);
+			}
+			lastWord.append(c);
+		} else {
+			lastWord.setLength(0);
+		}
+		last = c;
+	}
+	/**
+	 * Writes the line break or space, if any, that must separate the last character from the next.
+	 *
+	 * @param next
+	 */
+	private void separate(char next) {
+		if(last != 0) {
+			if(pendingNewline && CONTINUES_AFTER.indexOf(last) < 0 && CONTINUES_BEFORE.indexOf(next) < 0) {
+				out.append('\n');
+			} else if((pendingNewline || pendingSpace) && needsSpace(last, next)) {
+				out.append(' ');
+			}
+		}
+		pendingSpace = false;
+		pendingNewline = false;
+	}
+	/**
+	 *
+	 * @return true if a '/' at the current position starts a regular expression rather than a division
+	 */
+	private boolean regexAllowed() {
+		if(lastIncrement) {
+			return false;
+		}
+		if(last == 0 || REGEX_PRECEDERS.indexOf(last) >= 0) {
+			return true;
+		}
+		return isIdentifierPart(last) && REGEX_KEYWORDS.contains(lastWord.toString());
+	}
+	/**
+	 *
+	 * @param last
+	 * @param next
+	 * @return true if the two characters would run together into a different token without a space
+	 */
+	static boolean needsSpace(char last, char next) {
+		if(isIdentifierPart(last) && isIdentifierPart(next)) {
+			return true;
+		}
+		if((last == '+' || last == '-' || last == '/') && last == next) {
+			return true;
+		}
+		// 1 .toString() isn't 1.toString()
+		return Character.isDigit(last) && next == '.';
+	}
+	/**
+	 *
+	 * @param c
+	 * @return true if c can be part of an identifier, keyword or number
+	 */
+	static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '\\' || c > 0x7f;
+	}
+	/**
+	 *
+	 * @param what
+	 * @return an exception describing where the unterminated construct is
+	 */
+	private IllegalArgumentException unterminated(String what) {
+		return new IllegalArgumentException("unterminated " + what + " before offset " + position);
+	}
+}
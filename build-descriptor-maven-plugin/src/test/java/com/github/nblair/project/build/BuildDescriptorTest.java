@@ -0,0 +1,77 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BuildDescriptor}.
+ * 
+ * @author Nicholas Blair
+ */
+public class BuildDescriptorTest {
+
+	/**
+	 * Verify the branch is dropped for tagged builds, and dirty defaults to true.
+	 */
+	@Test
+	public void fromProperties() {
+		Properties properties = new Properties();
+		properties.setProperty(BuildDescriptor.GIT_BRANCH, "master");
+		properties.setProperty(BuildDescriptor.GIT_COMMIT_ID_ABBREV, "abcd123");
+		BuildDescriptor snapshot = BuildDescriptor.fromProperties("1.2.4-SNAPSHOT", properties);
+		assertEquals("master", snapshot.getScmBranch());
+		assertEquals("abcd123", snapshot.getBuildNumber());
+		assertTrue(snapshot.isDirty());
+		
+		properties.setProperty(BuildDescriptor.GIT_TAGS, "foo-1.2.3");
+		properties.setProperty(BuildDescriptor.GIT_DIRTY, "false");
+		BuildDescriptor release = BuildDescriptor.fromProperties("1.2.3", properties);
+		assertNull(release.getScmBranch());
+		assertFalse(release.isDirty());
+	}
+	/**
+	 * Verify the JSON, including escaping.
+	 */
+	@Test
+	public void toJson() {
+		BuildDescriptor descriptor = new BuildDescriptor("abcd123", "some\"branch", "1.0", null, false);
+		assertEquals("{\"buildNumber\":\"abcd123\",\"scmBranch\":\"some\\\"branch\",\"projectVersion\":\"1.0\",\"timestamp\":null,\"dirty\":false}", descriptor.toJson());
+	}
+	/**
+	 * Verify the constants class source.
+	 */
+	@Test
+	public void toJavaSource() {
+		BuildDescriptor descriptor = new BuildDescriptor("abcd123", null, "1.0", "18.10.2026", true);
+		String source = descriptor.toJavaSource("com.example", "BuildDescriptor");
+		assertTrue(source, source.startsWith("package com.example;\n"));
+		assertTrue(source, source.contains("public final class BuildDescriptor {"));
+		assertTrue(source, source.contains("public static final String BUILD_NUMBER = \"abcd123\";"));
+		assertTrue(source, source.contains("public static final String SCM_BRANCH = null;"));
+		assertTrue(source, source.contains("public static final boolean DIRTY = true;"));
+		assertTrue(source, source.contains("public static final String JSON = \"{\\\"buildNumber\\\":\\\"abcd123\\\","));
+		assertFalse(descriptor.toJavaSource("", "Build").contains("package"));
+	}
+}
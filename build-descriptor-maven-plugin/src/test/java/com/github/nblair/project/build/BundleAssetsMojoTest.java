@@ -0,0 +1,153 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link BundleAssetsMojo}.
+ * 
+ * @author Nicholas Blair
+ */
+public class BundleAssetsMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Verify the hash goes before the extension, and changes with the content.
+	 */
+	@Test
+	public void hashedPath() {
+		byte[] content = "var a=1;\n".getBytes(GenerateBuildDescriptorMojo.UTF_8);
+		String hashed = BundleAssetsMojo.hashedPath("build/build_directive.js", content);
+		assertTrue(hashed, hashed.matches("build/build_directive\\.[0-9a-f]{12}\\.js"));
+		assertEquals(hashed, BundleAssetsMojo.hashedPath("build/build_directive.js", content));
+		assertFalse(hashed.equals(BundleAssetsMojo.hashedPath("build/build_directive.js", "var a=2;\n".getBytes(GenerateBuildDescriptorMojo.UTF_8))));
+		assertTrue(BundleAssetsMojo.hashedPath("dir.d/LICENSE", content).matches("dir\\.d/LICENSE\\.[0-9a-f]{12}"));
+	}
+	/**
+	 * Verify the minified, hashed files, the gzip variants and the manifest are written.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void bundle() throws IOException {
+		File source = folder.newFolder("source");
+		File output = folder.newFolder("output");
+		StringBuilder script = new StringBuilder("// comment\n");
+		for(int i = 0; i < 50; i++) {
+			script.append("var value").append(i).append(" = 'some value';\n");
+		}
+		new File(source, "build").mkdirs();
+		Files.write(new File(source, "build/build_directive.js").toPath(), script.toString().getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		Files.write(new File(source, "tiny.css").toPath(), "a{}".getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		
+		Map<String, String> manifest = BundleAssetsMojo.bundle(source, output, BundleAssetsMojo.DEFAULT_MANIFEST);
+		assertEquals(2, manifest.size());
+		String hashed = manifest.get("build/build_directive.js");
+		byte[] minified = Files.readAllBytes(new File(output, hashed).toPath());
+		assertEquals(JavaScriptMinifier.minify(script.toString()), new String(minified, GenerateBuildDescriptorMojo.UTF_8));
+		assertArrayEquals(minified, gunzip(Files.readAllBytes(new File(output, hashed + BundleAssetsMojo.GZIP_SUFFIX).toPath())));
+		// gzip would only make it bigger
+		assertTrue(new File(output, manifest.get("tiny.css")).isFile());
+		assertFalse(new File(output, manifest.get("tiny.css") + BundleAssetsMojo.GZIP_SUFFIX).exists());
+		
+		String json = new String(Files.readAllBytes(new File(output, BundleAssetsMojo.DEFAULT_MANIFEST).toPath()), GenerateBuildDescriptorMojo.UTF_8);
+		assertEquals("{\"build/build_directive.js\":\"" + hashed + "\",\"tiny.css\":\"" + manifest.get("tiny.css") + "\"}", json);
+	}
+	/**
+	 * Verify bundling changed assets again, without cleaning, deletes the files written under the old hash and leaves the others.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void bundle_deletes_stale() throws IOException {
+		File source = folder.newFolder("source");
+		File output = folder.newFolder("output");
+		StringBuilder script = new StringBuilder();
+		for(int i = 0; i < 50; i++) {
+			script.append("var value").append(i).append(" = 'some value';\n");
+		}
+		new File(source, "build").mkdirs();
+		File js = new File(source, "build/build_directive.js");
+		Files.write(js.toPath(), script.toString().getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		Files.write(new File(source, "build/build_directive.css").toPath(), "a{}".getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		new File(output, "build").mkdirs();
+		File unrelated = new File(output, "build/build_directive.properties");
+		Files.write(unrelated.toPath(), "a=b".getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		
+		Map<String, String> first = BundleAssetsMojo.bundle(source, output, BundleAssetsMojo.DEFAULT_MANIFEST);
+		String stale = first.get("build/build_directive.js");
+		assertTrue(new File(output, stale + BundleAssetsMojo.GZIP_SUFFIX).isFile());
+		
+		Files.write(js.toPath(), script.append("var changed = true;\n").toString().getBytes(GenerateBuildDescriptorMojo.UTF_8));
+		Map<String, String> second = BundleAssetsMojo.bundle(source, output, BundleAssetsMojo.DEFAULT_MANIFEST);
+		String hashed = second.get("build/build_directive.js");
+		assertFalse(stale.equals(hashed));
+		assertFalse(new File(output, stale).exists());
+		assertFalse(new File(output, stale + BundleAssetsMojo.GZIP_SUFFIX).exists());
+		assertTrue(new File(output, hashed).isFile());
+		assertTrue(new File(output, hashed + BundleAssetsMojo.GZIP_SUFFIX).isFile());
+		assertTrue(new File(output, second.get("build/build_directive.css")).isFile());
+		assertTrue(unrelated.isFile());
+	}
+	/**
+	 * Verify the pattern for hashed names, with and without an extension.
+	 */
+	@Test
+	public void hashedNamePattern() {
+		assertTrue(BundleAssetsMojo.hashedNamePattern("app.min.js").matcher("app.min.0123456789ab.js").matches());
+		assertTrue(BundleAssetsMojo.hashedNamePattern("app.min.js").matcher("app.min.0123456789ab.js.gz").matches());
+		assertTrue(BundleAssetsMojo.hashedNamePattern("LICENSE").matcher("LICENSE.0123456789ab").matches());
+		assertFalse(BundleAssetsMojo.hashedNamePattern("app.min.js").matcher("app.min.js").matches());
+		assertFalse(BundleAssetsMojo.hashedNamePattern("app.min.js").matcher("app.min.0123456789ab.css").matches());
+		assertFalse(BundleAssetsMojo.hashedNamePattern("app.js").matcher("appxjs.0123456789ab.js").matches());
+	}
+	/**
+	 * 
+	 * @param bytes
+	 * @return the bytes, gunzipped
+	 * @throws IOException
+	 */
+	private static byte[] gunzip(byte[] bytes) throws IOException {
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
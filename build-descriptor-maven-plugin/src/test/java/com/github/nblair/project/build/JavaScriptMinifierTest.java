@@ -0,0 +1,76 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.build;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link JavaScriptMinifier}.
+ * 
+ * @author Nicholas Blair
+ */
+public class JavaScriptMinifierTest {
+
+	/**
+	 * Verify comments after the leading one are removed and whitespace collapsed, keeping the spaces between words.
+	 */
+	@Test
+	public void minify_comments_and_whitespace() {
+		String source = "/*\n * license\n */\n'use strict';\n\n// a comment\nvar x = function (a,  b) {\n\treturn a + b; /* inline */\n};\n";
+		assertEquals("/*\n * license\n */\n'use strict';var x=function(a,b){return a+b;};\n", JavaScriptMinifier.minify(source));
+	}
+	/**
+	 * Verify comment-like and whitespace content of string, template and regex literals is left alone.
+	 */
+	@Test
+	public void minify_literals() {
+		assertEquals("var s='a  // b',t=\"/* c */\",u=`x\n  y`;\n", JavaScriptMinifier.minify("var s = 'a  // b', t = \"/* c */\", u = `x\n  y`;"));
+		assertEquals("var r=/[/] +\\/ /g;\n", JavaScriptMinifier.minify("var r = /[/] +\\/ /g;"));
+		assertEquals("if(x){return/a b/.test(y);}\n", JavaScriptMinifier.minify("if (x) {\n  return /a b/.test(y);\n}"));
+		assertEquals("var q=a/b/c;\n", JavaScriptMinifier.minify("var q = a / b / c;"));
+		assertEquals("var x=i++/2;var y=3/4;\n", JavaScriptMinifier.minify("var x = i++ / 2;\nvar y = 3 / 4;"));
+		assertEquals("var x=i--/2,y=a+ +/b/.lastIndex;\n", JavaScriptMinifier.minify("var x = i-- / 2, y = a + +/b/.lastIndex;"));
+	}
+	/**
+	 * Verify line breaks that automatic semicolon insertion may depend on are kept, and the others dropped.
+	 */
+	@Test
+	public void minify_line_breaks() {
+		assertEquals("var a=b\n++c\n", JavaScriptMinifier.minify("var a = b\n++c"));
+		assertEquals("return\nx\n", JavaScriptMinifier.minify("return\nx"));
+		assertEquals("promise.then(f).catch(g)\n", JavaScriptMinifier.minify("promise\n  .then(f)\n  .catch(g)"));
+		assertEquals("a+ +b;c- -d;1 .toString()\n", JavaScriptMinifier.minify("a + +b; c - -d; 1 .toString()"));
+	}
+	/**
+	 * Verify "/*!" comments, and only the first block comment before any code, are kept.
+	 */
+	@Test
+	public void minify_preserved_comment() {
+		assertEquals("/*! keep */\nvar a=1;\n", JavaScriptMinifier.minify("/*! keep */\nvar a = 1;"));
+		assertEquals("var a=1;\n/*! keep */\nvar b=2;\n", JavaScriptMinifier.minify("var a = 1; /* drop */\n/*! keep */\nvar b = 2;"));
+		assertEquals("/* license */\nvar a=1;\n", JavaScriptMinifier.minify("// header\n/* license */\n/* drop */\nvar a = 1;"));
+	}
+	/**
+	 * Verify an unterminated string is reported.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void minify_unterminated() {
+		JavaScriptMinifier.minify("var s = 'abc;\nvar t = 1;");
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.nblair.web.CompositeEnumeration;
+
+/**
+ * Cost of creating and fully iterating a {@link CompositeEnumeration} of header names, with and without 
+ * distinct mode. Half of the overridden names are also present in the request.
+ * 
+ * @author Nicholas Blair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeEnumerationBenchmark {
+
+	@Param({ "4", "16" })
+	public int overrides;
+	@Param({ "false", "true" })
+	public boolean distinct;
+	
+	private List<String> overrideNames;
+	private List<String> requestNames;
+	/**
+	 * 
+	 */
+	@Setup
+	public void setUp() {
+		overrideNames = new ArrayList<>();
+		for(int i = 0; i < overrides; i++) {
+			overrideNames.add("X-Override-" + i);
+		}
+		requestNames = new ArrayList<>();
+		for(int i = 0; i < 8; i++) {
+			requestNames.add("X-Request-" + i);
+		}
+		requestNames.addAll(overrideNames.subList(0, overrides / 2));
+	}
+	/**
+	 * 
+	 * @param blackhole
+	 */
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public void iterate(Blackhole blackhole) {
+		CompositeEnumeration<String> composite = new CompositeEnumeration<String>(distinct, overrides, 
+				Collections.enumeration(overrideNames), Collections.enumeration(requestNames));
+		while(composite.hasMoreElements()) {
+			blackhole.consume(composite.nextElement());
+		}
+	}
+}
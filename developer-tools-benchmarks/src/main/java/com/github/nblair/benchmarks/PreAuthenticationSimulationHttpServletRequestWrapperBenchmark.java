@@ -0,0 +1,132 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.nblair.web.HeaderOverrideTable;
+import com.github.nblair.web.PreAuthenticationSimulationHttpServletRequestWrapper;
+
+/**
+ * Cost of the header accessors of {@link PreAuthenticationSimulationHttpServletRequestWrapper}, for overridden 
+ * headers and for headers passed through to the wrapped request.
+ * 
+ * @author Nicholas Blair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreAuthenticationSimulationHttpServletRequestWrapperBenchmark {
+
+	private PreAuthenticationSimulationHttpServletRequestWrapper wrapper;
+	/**
+	 * 
+	 */
+	@Setup
+	public void setUp() {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		headers.put("mail", Arrays.asList("jdoe@example.edu"));
+		headers.put("isMemberOf", Arrays.asList("group1", "group2", "group3"));
+		headers.put("X-Request-Count", Arrays.asList("42"));
+		headers.put("X-Authenticated-Since", Arrays.asList("Sun, 06 Nov 1994 08:49:37 GMT"));
+		// also present on the wrapped request
+		headers.put("Accept-Language", Arrays.asList("fr-CA"));
+		wrapper = new PreAuthenticationSimulationHttpServletRequestWrapper(Requests.typicalRequest(), "jdoe", HeaderOverrideTable.compile(headers));
+	}
+	/**
+	 * 
+	 * @return REMOTE_USER
+	 */
+	@Benchmark
+	public String getRemoteUser() {
+		return wrapper.getRemoteUser();
+	}
+	/**
+	 * 
+	 * @return an overridden header, requested in a different case than configured
+	 */
+	@Benchmark
+	public String getHeader_overridden() {
+		return wrapper.getHeader("ISMEMBEROF");
+	}
+	/**
+	 * 
+	 * @return a header of the wrapped request
+	 */
+	@Benchmark
+	public String getHeader_passthrough() {
+		return wrapper.getHeader("User-Agent");
+	}
+	/**
+	 * 
+	 * @param blackhole
+	 */
+	@Benchmark
+	public void getHeaders_overridden(Blackhole blackhole) {
+		Enumeration<String> values = wrapper.getHeaders("isMemberOf");
+		while(values.hasMoreElements()) {
+			blackhole.consume(values.nextElement());
+		}
+	}
+	/**
+	 * 
+	 * @param blackhole
+	 */
+	@Benchmark
+	public void getHeaderNames(Blackhole blackhole) {
+		Enumeration<String> names = wrapper.getHeaderNames();
+		while(names.hasMoreElements()) {
+			blackhole.consume(names.nextElement());
+		}
+	}
+	/**
+	 * 
+	 * @return an overridden int header
+	 */
+	@Benchmark
+	public int getIntHeader_overridden() {
+		return wrapper.getIntHeader("x-request-count");
+	}
+	/**
+	 * 
+	 * @return an overridden date header
+	 */
+	@Benchmark
+	public long getDateHeader_overridden() {
+		return wrapper.getDateHeader("x-authenticated-since");
+	}
+}
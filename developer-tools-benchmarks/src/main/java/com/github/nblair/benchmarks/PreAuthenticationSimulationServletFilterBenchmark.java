@@ -0,0 +1,119 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.github.nblair.web.PreAuthenticationIdentityRegistry;
+import com.github.nblair.web.PreAuthenticationSimulationServletFilter;
+import com.github.nblair.web.SyntheticIdentityGenerator;
+
+/**
+ * Per-request cost of {@link PreAuthenticationSimulationServletFilter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)},
+ * including the application reading REMOTE_USER and one header from the request it is handed.
+ * 
+ * Modes:
+ * <ul>
+ * <li>none: nothing configured, the request is passed along untouched</li>
+ * <li>static: a configured REMOTE_USER and 4 headers</li>
+ * <li>registry: the request selects one of 1000 identities from a {@link PreAuthenticationIdentityRegistry}</li>
+ * <li>synthetic: each request gets the next of 10000 identities from a {@link SyntheticIdentityGenerator}</li>
+ * </ul>
+ * 
+ * @author Nicholas Blair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreAuthenticationSimulationServletFilterBenchmark {
+
+	@Param({ "none", "static", "registry", "synthetic" })
+	public String mode;
+	
+	private PreAuthenticationSimulationServletFilter filter;
+	private MockHttpServletRequest request;
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+	private final Requests.RecordingFilterChain chain = new Requests.RecordingFilterChain();
+	/**
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws ServletException, IOException {
+		filter = new PreAuthenticationSimulationServletFilter();
+		request = Requests.typicalRequest();
+		switch(mode) {
+		case "static":
+			filter.setIdentity("jdoe", "mail;isMemberOf;Shib-Identity-Provider;eppn", 
+					"jdoe@example.edu;group1,group2,group3;https://idp.example.edu;jdoe@example.edu");
+			break;
+		case "registry":
+			StringBuilder file = new StringBuilder("REMOTE_USER;mail;isMemberOf\n");
+			for(int i = 0; i < 1000; i++) {
+				file.append("user-").append(i).append(";user-").append(i).append("@example.edu;group").append(i % 10).append(",everyone\n");
+			}
+			filter.setIdentityRegistry(PreAuthenticationIdentityRegistry.load(new StringReader(file.toString())));
+			request.addHeader("X-Preauth-Identity", "user-500");
+			break;
+		case "synthetic":
+			Map<String, List<String>> headers = new LinkedHashMap<>();
+			headers.put("mail", Arrays.asList("user-{n}@example.edu"));
+			headers.put("isMemberOf", Arrays.asList("group-{n%10}", "everyone"));
+			filter.setSyntheticIdentityGenerator(new SyntheticIdentityGenerator(10000, 0L, null, headers));
+			break;
+		default:
+			break;
+		}
+	}
+	/**
+	 * 
+	 * @return what the application read from the request
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Benchmark
+	public Object doFilter() throws IOException, ServletException {
+		filter.doFilter(request, response, chain);
+		return chain.read("mail");
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+import com.github.nblair.web.ProfileConditionalDelegatingFilterProxy;
+
+/**
+ * Per-request cost of {@link ProfileConditionalDelegatingFilterProxy#doFilter(ServletRequest, ServletResponse, FilterChain)}
+ * when the required profile is active (the delegate runs) and inactive (the delegate is skipped). The delegate itself does nothing.
+ * 
+ * @author Nicholas Blair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileConditionalDelegatingFilterProxyBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean active;
+	
+	private ProfileConditionalDelegatingFilterProxy proxy;
+	private final MockHttpServletRequest request = Requests.typicalRequest();
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+	private final Requests.RecordingFilterChain chain = new Requests.RecordingFilterChain();
+	/**
+	 * 
+	 */
+	@Setup
+	public void setUp() {
+		MockEnvironment environment = new MockEnvironment();
+		if(active) {
+			environment.setActiveProfiles("benchmark");
+		}
+		MockServletContext servletContext = new MockServletContext();
+		GenericWebApplicationContext applicationContext = new GenericWebApplicationContext(servletContext);
+		applicationContext.setEnvironment(environment);
+		applicationContext.refresh();
+		servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, applicationContext);
+		
+		proxy = new ProfileConditionalDelegatingFilterProxy(new PassThroughFilter());
+		proxy.setRequiredProfile("benchmark");
+		proxy.setServletContext(servletContext);
+	}
+	/**
+	 * 
+	 * @return what the application read from the request
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Benchmark
+	public Object doFilter() throws ServletException, IOException {
+		proxy.doFilter(request, response, chain);
+		return chain.read("Host");
+	}
+	
+	/**
+	 * Delegate that only continues the chain.
+	 */
+	static final class PassThroughFilter implements Filter {
+		@Override
+		public void init(FilterConfig filterConfig) throws ServletException {
+		}
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+			chain.doFilter(request, response);
+		}
+		@Override
+		public void destroy() {
+		}
+	}
+}
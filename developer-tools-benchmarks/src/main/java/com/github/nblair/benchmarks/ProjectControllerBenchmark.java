@@ -0,0 +1,93 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.github.nblair.project.rest.Build;
+import com.github.nblair.project.rest.ProjectController;
+
+/**
+ * Cost of {@link ProjectController#build()} and {@link ProjectController#buildResponse(String, String, String)} with a typical set of build properties.
+ * 
+ * @author Nicholas Blair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectControllerBenchmark {
+
+	private ProjectController controller;
+	private String etag;
+	/**
+	 * 
+	 */
+	@Setup
+	public void setUp() {
+		MockEnvironment environment = new MockEnvironment()
+			.withProperty(ProjectController.PROJECT_VERSION, "1.0.0-SNAPSHOT")
+			.withProperty(ProjectController.GIT_BRANCH, "master")
+			.withProperty(ProjectController.GIT_COMMIT_ID_ABBREV, "abc1234")
+			.withProperty(ProjectController.GIT_DIRTY, "false")
+			.withProperty(ProjectController.GIT_TAGS, "")
+			.withProperty(ProjectController.GIT_BUILD_TIME, "18.10.2026 @ 12:00:00 CDT");
+		controller = new ProjectController();
+		ReflectionTestUtils.setField(controller, "environment", environment);
+		etag = controller.buildResponse("application/json", "gzip, deflate", null).getHeaders().getETag();
+	}
+	/**
+	 * 
+	 * @return the build
+	 */
+	@Benchmark
+	public Build build() {
+		return controller.build();
+	}
+	/**
+	 * 
+	 * @return the pre-serialized gzipped JSON response
+	 */
+	@Benchmark
+	public ResponseEntity<byte[]> buildResponse() {
+		return controller.buildResponse("application/json", "gzip, deflate", null);
+	}
+	/**
+	 * 
+	 * @return the 304 for a client holding the current ETag
+	 */
+	@Benchmark
+	public ResponseEntity<byte[]> buildResponse_notModified() {
+		return controller.buildResponse("application/json", "gzip, deflate", etag);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.benchmarks;
+
+import java.io.IOException;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Fixtures shared by the benchmarks.
+ * 
+ * @author Nicholas Blair
+ */
+final class Requests {
+
+	private Requests() {
+	}
+	/**
+	 * 
+	 * @return a GET request carrying the headers a browser typically sends
+	 */
+	static MockHttpServletRequest typicalRequest() {
+		MockHttpServletRequest request = new Servlet3Request("GET", "/app/index.html");
+		request.setContextPath("/app");
+		request.addHeader("Host", "localhost:8080");
+		request.addHeader("Connection", "keep-alive");
+		request.addHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+		request.addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/40.0 Safari/537.36");
+		request.addHeader("Accept-Encoding", "gzip, deflate, sdch");
+		request.addHeader("Accept-Language", "en-US,en;q=0.8");
+		request.addHeader("Cookie", "JSESSIONID=0123456789ABCDEF0123456789ABCDEF");
+		request.addHeader("Cache-Control", "max-age=0");
+		return request;
+	}
+	
+	/**
+	 * Spring 3.2's {@link MockHttpServletRequest} implements Servlet 2.5, and the filter asks for the {@link DispatcherType}.
+	 */
+	static class Servlet3Request extends MockHttpServletRequest {
+		/**
+		 * 
+		 * @param method
+		 * @param requestURI
+		 */
+		Servlet3Request(String method, String requestURI) {
+			super(method, requestURI);
+		}
+		/**
+		 * 
+		 * @return {@link DispatcherType#REQUEST}
+		 */
+		public DispatcherType getDispatcherType() {
+			return DispatcherType.REQUEST;
+		}
+	}
+	/**
+	 * {@link FilterChain} standing in for the rest of the application: it remembers the request it was given
+	 * so the benchmark can read from it (as the application would) and return the result.
+	 */
+	static final class RecordingFilterChain implements FilterChain {
+		private ServletRequest request;
+		/* (non-Javadoc)
+		 * @see javax.servlet.FilterChain#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse)
+		 */
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+			this.request = request;
+		}
+		/**
+		 * 
+		 * @param headerName
+		 * @return the REMOTE_USER and a header of the last request, as the application would read them
+		 */
+		Object read(String headerName) {
+			HttpServletRequest last = (HttpServletRequest) request;
+			request = null;
+			return last.getRemoteUser() + last.getHeader(headerName);
+		}
+	}
+}
@@ -18,54 +18,205 @@ package com.github.nblair.web;
 
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * Composite {@link Enumeration} wrapping another {@link Enumeration} AND an {@link Iterator}.
+ * Composite {@link Enumeration} over any number of source {@link Enumeration}s, returned in order: 
+ * {@link #nextElement()} exhausts each source before moving to the next.
  * 
- * {@link #nextElement()} will exhaust the {@link Iterator} first.
- * 
- * Note: if the {@link Iterator} and the {@link Enumeration} both include an equivalent object
- * or objects, no {@link #equals(Object)} checking is done to return once.
+ * By default no {@link #equals(Object)} checking is done, so an element present in more than one
+ * source is returned more than once. In distinct mode, elements are checked as they are returned against 
+ * a small open-addressed set of the elements already returned, and repeats are skipped; the sources are still 
+ * consumed lazily. Subclasses may override {@link #hash(Object)} and {@link #equivalent(Object, Object)} to change 
+ * what counts as a repeat.
  * 
  * @author Nicholas Blair
  */
 public class CompositeEnumeration<E> implements Enumeration<E> {
 
-	private final Enumeration<E> wrapped;
-	private final Iterator<E> iterator;
+	private static final Object NULL = new Object();
+	
+	private final Enumeration<? extends E>[] sources;
+	private final boolean distinct;
+	private int current;
+	/**
+	 * Elements returned so far in distinct mode (with null stored as {@link #NULL}), allocated on first use. 
+	 */
+	private Object[] seen;
+	private int seenCount;
+	private final int expectedSize;
+	private E next;
+	private boolean hasNext;
 	/**
+	 * Returns the elements of the iterator, then the elements of the wrapped enumeration.
+	 * 
 	 * @param wrapped
 	 * @param iterator
 	 */
+	@SuppressWarnings("unchecked")
 	public CompositeEnumeration(Enumeration<E> wrapped, Iterator<E> iterator) {
-		this.wrapped = wrapped;
-		this.iterator = iterator;
+		this(false, 0, new IteratorEnumeration<E>(iterator), wrapped);
+	}
+	/**
+	 * 
+	 * @param distinct if true, return each element (according to {@link #equivalent(Object, Object)}) only once
+	 * @param expectedSize the expected number of distinct elements, used to size the set in distinct mode
+	 * @param sources the enumerations to return the elements of, in order
+	 */
+	public CompositeEnumeration(boolean distinct, int expectedSize, Enumeration<? extends E>... sources) {
+		this.sources = sources;
+		this.distinct = distinct;
+		this.expectedSize = expectedSize;
 	}
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * Delegates to {@link Iterator#hasNext()} first, then the wrapped {@link Enumeration#hasMoreElements()}.
+	 * Moves past exhausted sources; in distinct mode, also looks ahead past repeated elements.
 	 */
 	@Override
 	public boolean hasMoreElements() {
-		if(iterator.hasNext()) {
-			return true;
+		if(distinct) {
+			return hasNext || advance();
+		}
+		while(current < sources.length) {
+			if(sources[current].hasMoreElements()) {
+				return true;
+			}
+			current++;
 		}
-		return wrapped.hasMoreElements();
+		return false;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * Returns from the iterator first until exhausted, then from the wrapped enumeration.
+	 * Returns from each source in order until exhausted.
 	 */
 	@Override
 	public E nextElement() {
-		if(iterator.hasNext()) {
+		if(!hasMoreElements()) {
+			throw new NoSuchElementException();
+		}
+		if(distinct) {
+			E result = next;
+			next = null;
+			hasNext = false;
+			return result;
+		}
+		return sources[current].nextElement();
+	}
+	/**
+	 * Hash of an element in distinct mode; must be consistent with {@link #equivalent(Object, Object)}.
+	 * 
+	 * @param element never null
+	 * @return the hash for the element
+	 */
+	protected int hash(E element) {
+		return element.hashCode();
+	}
+	/**
+	 * Equality of elements in distinct mode.
+	 * 
+	 * @param element never null
+	 * @param other never null
+	 * @return true if the elements are equivalent
+	 */
+	protected boolean equivalent(E element, E other) {
+		return element.equals(other);
+	}
+	/**
+	 * Finds the next element not returned already, and stores it in {@link #next}.
+	 * 
+	 * @return true if there is one
+	 */
+	private boolean advance() {
+		while(current < sources.length) {
+			Enumeration<? extends E> source = sources[current];
+			while(source.hasMoreElements()) {
+				E candidate = source.nextElement();
+				if(add(candidate)) {
+					next = candidate;
+					hasNext = true;
+					return true;
+				}
+			}
+			current++;
+		}
+		return false;
+	}
+	/**
+	 * 
+	 * @param element
+	 * @return true if the element had not been seen before
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean add(E element) {
+		if(seen == null) {
+			int capacity = 8;
+			while(capacity < expectedSize * 2) {
+				capacity <<= 1;
+			}
+			seen = new Object[capacity];
+		}
+		int mask = seen.length - 1;
+		int slot = (element == null ? 0 : hash(element)) & mask;
+		Object existing;
+		while((existing = seen[slot]) != null) {
+			if(existing == NULL ? element == null : element != null && equivalent(element, (E) existing)) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		seen[slot] = element == null ? NULL : element;
+		if(++seenCount * 2 > seen.length) {
+			grow();
+		}
+		return true;
+	}
+	/**
+	 * Doubles the capacity of {@link #seen}.
+	 */
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		Object[] previous = seen;
+		seen = new Object[previous.length * 2];
+		int mask = seen.length - 1;
+		for(Object element: previous) {
+			if(element != null) {
+				int slot = (element == NULL ? 0 : hash((E) element)) & mask;
+				while(seen[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				seen[slot] = element;
+			}
+		}
+	}
+	
+	/**
+	 * {@link Enumeration} view of an {@link Iterator}.
+	 */
+	static final class IteratorEnumeration<E> implements Enumeration<E> {
+		private final Iterator<E> iterator;
+		/**
+		 * 
+		 * @param iterator
+		 */
+		IteratorEnumeration(Iterator<E> iterator) {
+			this.iterator = iterator;
+		}
+		/* (non-Javadoc)
+		 * @see java.util.Enumeration#hasMoreElements()
+		 */
+		@Override
+		public boolean hasMoreElements() {
+			return iterator.hasNext();
+		}
+		/* (non-Javadoc)
+		 * @see java.util.Enumeration#nextElement()
+		 */
+		@Override
+		public E nextElement() {
 			return iterator.next();
 		}
-		
-		return wrapped.nextElement();
 	}
-
 }
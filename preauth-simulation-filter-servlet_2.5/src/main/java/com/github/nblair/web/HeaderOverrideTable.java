@@ -0,0 +1,344 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Immutable lookup table for the headers overridden by {@link PreAuthenticationSimulationHttpServletRequestWrapper}.
+ *
+ * A table is compiled once (see {@link #compile(Map)}) and shared by every wrapper the filter creates.
+ * Header names are matched ignoring case, as required by the HTTP specification. The case-folded hash of
+ * each name is computed at compile time, and the first value of each header is pre-parsed for
+ * {@link HttpServletRequest#getIntHeader(String)} and {@link HttpServletRequest#getDateHeader(String)},
+ * so none of the lookup methods allocate.
+ *
+ * @author Nicholas Blair
+ */
+public final class HeaderOverrideTable {
+
+	/**
+	 * Table with no overridden headers.
+	 */
+	public static final HeaderOverrideTable EMPTY = new HeaderOverrideTable(new String[0], Collections.<List<String>>emptyList());
+	/**
+	 * Formats accepted for {@link HttpServletRequest#getDateHeader(String)}: RFC 1123, RFC 1036 and ANSI C asctime().
+	 */
+	private static final String[] HTTP_DATE_FORMATS = {
+		"EEE, dd MMM yyyy HH:mm:ss zzz",
+		"EEEE, dd-MMM-yy HH:mm:ss zzz",
+		"EEE MMM d HH:mm:ss yyyy"
+	};
+	private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+	/**
+	 * The {@link #HTTP_DATE_FORMATS} of this thread, so building a table doesn't create formats.
+	 */
+	private static final ThreadLocal<SimpleDateFormat[]> DATE_FORMATS = new ThreadLocal<SimpleDateFormat[]>() {
+		@Override
+		protected SimpleDateFormat[] initialValue() {
+			return dateFormats();
+		}
+	};
+
+	private final String[] names;
+	private final int[] hashes;
+	/**
+	 * Open-addressed index: each slot holds (position in {@link #names} + 1), or 0 if the slot is free.
+	 */
+	private final int[] slots;
+	private final List<String> nameList;
+
+	private final List<String>[] values;
+	private final String[] firstValues;
+	private final int[] intValues;
+	private final boolean[] intParsed;
+	private final long[] dateValues;
+	private final boolean[] dateParsed;
+
+	/**
+	 *
+	 * @param names the header names
+	 * @param headerValues values for each of the names, in order
+	 * @throws IllegalArgumentException if the same name (ignoring case) appears more than once
+	 */
+	@SuppressWarnings("unchecked")
+	private HeaderOverrideTable(String[] names, List<List<String>> headerValues) {
+		this.names = names;
+		this.hashes = new int[names.length];
+		int capacity = 2;
+		while(capacity < names.length * 2) {
+			capacity <<= 1;
+		}
+		this.slots = new int[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < names.length; i++) {
+			if(names[i] == null) {
+				throw new IllegalArgumentException("header names cannot be null");
+			}
+			int hash = hash(names[i]);
+			hashes[i] = hash;
+			int slot = hash & mask;
+			while(slots[slot] != 0) {
+				if(names[slots[slot] - 1].equalsIgnoreCase(names[i])) {
+					throw new IllegalArgumentException("Header '" + names[i] + "' is specified more than once (header names are case-insensitive)");
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+		this.nameList = Collections.unmodifiableList(Arrays.asList(names));
+		this.values = new List[names.length];
+		this.firstValues = new String[names.length];
+		this.intValues = new int[names.length];
+		this.intParsed = new boolean[names.length];
+		this.dateValues = new long[names.length];
+		this.dateParsed = new boolean[names.length];
+
+		Map<List<String>, List<String>> canonical = new HashMap<List<String>, List<String>>();
+		for(int i = 0; i < names.length; i++) {
+			List<String> value = headerValues.get(i);
+			if(value == null) {
+				value = Collections.emptyList();
+			}
+			List<String> shared = canonical.get(value);
+			if(shared == null) {
+				shared = Collections.unmodifiableList(new ArrayList<String>(value));
+				canonical.put(shared, shared);
+			}
+			values[i] = shared;
+			if(shared.isEmpty()) {
+				continue;
+			}
+			String first = shared.get(0);
+			firstValues[i] = first;
+			if(isInteger(first)) {
+				try {
+					intValues[i] = Integer.parseInt(first);
+					intParsed[i] = true;
+				} catch (NumberFormatException e) {
+					// out of range, report when requested
+				}
+			}
+			if(first != null && first.indexOf(':') > 0) {
+				for(SimpleDateFormat format: DATE_FORMATS.get()) {
+					try {
+						dateValues[i] = format.parse(first).getTime();
+						dateParsed[i] = true;
+						break;
+					} catch (ParseException e) {
+						// try the next format
+					}
+				}
+			}
+		}
+	}
+	/**
+	 *
+	 * @param headers header names mapped to their values; may be null
+	 * @return a table for the provided headers, or {@link #EMPTY} if there are none
+	 * @throws IllegalArgumentException if the same name (ignoring case) appears more than once
+	 */
+	public static HeaderOverrideTable compile(Map<String, List<String>> headers) {
+		if(headers == null || headers.isEmpty()) {
+			return EMPTY;
+		}
+		String[] names = new String[headers.size()];
+		List<List<String>> headerValues = new ArrayList<List<String>>(headers.size());
+		int i = 0;
+		for(Map.Entry<String, List<String>> entry: headers.entrySet()) {
+			names[i++] = entry.getKey();
+			headerValues.add(entry.getValue());
+		}
+		return new HeaderOverrideTable(names, headerValues);
+	}
+	/**
+	 *
+	 * @return true if no headers are overridden
+	 */
+	public boolean isEmpty() {
+		return names.length == 0;
+	}
+	/**
+	 *
+	 * @return the number of overridden headers
+	 */
+	public int size() {
+		return names.length;
+	}
+	/**
+	 *
+	 * @return the overridden header names, in the order they were configured
+	 */
+	public List<String> getNames() {
+		return nameList;
+	}
+	/**
+	 *
+	 * @param name
+	 * @return true if the header is overridden (ignoring case)
+	 */
+	public boolean contains(String name) {
+		return indexOf(name) >= 0;
+	}
+	/**
+	 *
+	 * @param name
+	 * @return the overridden values for the header (ignoring case), or null if not overridden
+	 */
+	public List<String> getValues(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : values[index];
+	}
+	/**
+	 *
+	 * @param name
+	 * @return the first overridden value for the header (ignoring case), or null if not set
+	 */
+	public String getFirstValue(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : firstValues[index];
+	}
+	/**
+	 *
+	 * @return a copy of the table as a {@link Map} of header name to values
+	 */
+	public Map<String, List<String>> asMap() {
+		Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+		for(int i = 0; i < names.length; i++) {
+			result.put(names[i], values[i]);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	/**
+	 *
+	 * @param name
+	 * @return the position of the header (ignoring case), or -1 if not overridden
+	 */
+	int indexOf(String name) {
+		if(name == null || names.length == 0) {
+			return -1;
+		}
+		int hash = hash(name);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		int entry;
+		while((entry = slots[slot]) != 0) {
+			int index = entry - 1;
+			if(hashes[index] == hash && names[index].equalsIgnoreCase(name)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	/**
+	 *
+	 * @param index
+	 * @return the first value at the position, or null if the header has no values
+	 */
+	String firstValueAt(int index) {
+		return firstValues[index];
+	}
+	/**
+	 *
+	 * @param index
+	 * @return the pre-parsed integer value at the position
+	 * @throws NumberFormatException if the first value is not an integer
+	 */
+	int intValueAt(int index) {
+		if(!intParsed[index]) {
+			throw new NumberFormatException("For input string: \"" + firstValues[index] + "\"");
+		}
+		return intValues[index];
+	}
+	/**
+	 *
+	 * @param index
+	 * @return the pre-parsed date value at the position, in milliseconds since the epoch
+	 * @throws IllegalArgumentException if the first value is not an HTTP date
+	 */
+	long dateValueAt(int index) {
+		if(!dateParsed[index]) {
+			throw new IllegalArgumentException("Value of header '" + names[index] + "' cannot be converted to a date: " + firstValues[index]);
+		}
+		return dateValues[index];
+	}
+	/**
+	 * Case-insensitive hash, consistent with {@link String#equalsIgnoreCase(String)}.
+	 *
+	 * @param name
+	 * @return the hash of the name, folded to lower case
+	 */
+	static int hash(String name) {
+		int h = 0;
+		for(int i = 0, length = name.length(); i < length; i++) {
+			char c = name.charAt(i);
+			if(c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			} else if(c >= 128) {
+				c = Character.toLowerCase(Character.toUpperCase(c));
+			}
+			h = 31 * h + c;
+		}
+		return h ^ (h >>> 16);
+	}
+	/**
+	 *
+	 * @param value
+	 * @return true if the value is an optional sign followed by only digits
+	 */
+	private static boolean isInteger(String value) {
+		if(value == null || value.isEmpty()) {
+			return false;
+		}
+		int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+		if(start == value.length()) {
+			return false;
+		}
+		for(int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 *
+	 * @return new instances of the {@link #HTTP_DATE_FORMATS} ({@link SimpleDateFormat} is not thread safe)
+	 */
+	private static SimpleDateFormat[] dateFormats() {
+		SimpleDateFormat[] formats = new SimpleDateFormat[HTTP_DATE_FORMATS.length];
+		for(int i = 0; i < formats.length; i++) {
+			formats[i] = new SimpleDateFormat(HTTP_DATE_FORMATS[i], Locale.US);
+			formats[i].setTimeZone(GMT);
+		}
+		return formats;
+	}
+}
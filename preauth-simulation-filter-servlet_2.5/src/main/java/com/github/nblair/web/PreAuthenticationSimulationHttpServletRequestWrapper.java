@@ -30,8 +30,9 @@ import javax.servlet.http.HttpServletRequestWrapper;
  */
 public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpServletRequestWrapper {
 
+	private final PreAuthenticationIdentity identity;
 	private final String remoteUser;
-	private final Map<String, List<String>> additionalHeaders;
+	private final HeaderOverrideTable headerOverrides;
 	/**
 	 * Constructs an instance with a value for {@link #getRemoteUser()} but no additional values for {@link #getHeader(String)} variants.
 	 * 
@@ -39,7 +40,7 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 * @param remoteUser
 	 */
 	public PreAuthenticationSimulationHttpServletRequestWrapper(HttpServletRequest request, String remoteUser) {
-		this(request, remoteUser, Collections.<String, List<String>>emptyMap());
+		this(request, remoteUser, HeaderOverrideTable.EMPTY);
 	}
 	/**
 	 * Constructs an instance with additional values for {@link #getHeader(String)} variants and null for {@link #getRemoteUser()}.
@@ -51,7 +52,8 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 		this(request, null, additionalHeaders);
 	}
 	/**
-	 * Primary constructor. 
+	 * Compiles the additionalHeaders for this instance only; prefer {@link #PreAuthenticationSimulationHttpServletRequestWrapper(HttpServletRequest, String, HeaderOverrideTable)}
+	 * to share one {@link HeaderOverrideTable} across requests.
 	 * 
 	 * @param request the wrapped {@link HttpServletRequest}.
 	 * @param remoteUser the value to return for {@link #getRemoteUser()}
@@ -60,9 +62,31 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	public PreAuthenticationSimulationHttpServletRequestWrapper(
 			HttpServletRequest request, String remoteUser,
 			Map<String, List<String>> additionalHeaders) {
+		this(request, remoteUser, HeaderOverrideTable.compile(additionalHeaders));
+	}
+	/**
+	 * 
+	 * @param request the wrapped {@link HttpServletRequest}.
+	 * @param remoteUser the value to return for {@link #getRemoteUser()}
+	 * @param headerOverrides the values to return for the {@link #getHeader(String)} variants
+	 */
+	public PreAuthenticationSimulationHttpServletRequestWrapper(
+			HttpServletRequest request, String remoteUser,
+			HeaderOverrideTable headerOverrides) {
+		this(request, new PreAuthenticationIdentity(remoteUser, headerOverrides));
+	}
+	/**
+	 * Primary constructor. 
+	 * 
+	 * @param request the wrapped {@link HttpServletRequest}.
+	 * @param identity the values to return for {@link #getRemoteUser()} and the {@link #getHeader(String)} variants
+	 */
+	public PreAuthenticationSimulationHttpServletRequestWrapper(
+			HttpServletRequest request, PreAuthenticationIdentity identity) {
 		super(request);
-		this.remoteUser = remoteUser;
-		this.additionalHeaders = additionalHeaders;
+		this.identity = identity;
+		this.remoteUser = identity.getRemoteUser();
+		this.headerOverrides = identity.getHeaderOverrides();
 	}
 
 	/* (non-Javadoc)
@@ -79,19 +103,42 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 */
 	@Override
 	public Enumeration<String> getHeaders(String name) {
-		if(additionalHeaders.containsKey(name)) {
-			return new CompositeEnumeration<String>(super.getHeaders(name), additionalHeaders.get(name).iterator());
+		List<String> override = headerOverrides.getValues(name);
+		if(override != null) {
+			return new CompositeEnumeration<String>(super.getHeaders(name), override.iterator());
 		} else {
 			return super.getHeaders(name);
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.servlet.http.HttpServletRequestWrapper#getHeaderNames()
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Returns the overridden header names, then the names of the wrapped request that are not overridden;
+	 * each name is returned once, ignoring case.
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public Enumeration<String> getHeaderNames() {
-		return new CompositeEnumeration<String>(super.getHeaderNames(), additionalHeaders.keySet().iterator());
+		Enumeration<String> names = super.getHeaderNames();
+		if(headerOverrides.isEmpty()) {
+			return names;
+		}
+		if(names == null) {
+			// the container doesn't allow access to header names
+			return Collections.enumeration(headerOverrides.getNames());
+		}
+		return new CompositeEnumeration<String>(true, headerOverrides.size(), 
+				Collections.enumeration(headerOverrides.getNames()), names) {
+			@Override
+			protected int hash(String name) {
+				return HeaderOverrideTable.hash(name);
+			}
+			@Override
+			protected boolean equivalent(String name, String other) {
+				return name.equalsIgnoreCase(other);
+			}
+		};
 	}
 
 	/* (non-Javadoc)
@@ -99,8 +146,17 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 */
 	@Override
 	public int getIntHeader(String name) {
-		String override = getOverrideHeaderValue(name);
-		return override != null ? Integer.parseInt(override) : super.getIntHeader(name);
+		int index = overrideIndex(name);
+		return index >= 0 ? headerOverrides.intValueAt(index) : super.getIntHeader(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServletRequestWrapper#getDateHeader(java.lang.String)
+	 */
+	@Override
+	public long getDateHeader(String name) {
+		int index = overrideIndex(name);
+		return index >= 0 ? headerOverrides.dateValueAt(index) : super.getDateHeader(name);
 	}
 
 	/* (non-Javadoc)
@@ -110,16 +166,35 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	public String getRemoteUser() {
 		return this.remoteUser != null ? remoteUser : super.getRemoteUser();
 	}
+	/**
+	 * 
+	 * @return the {@link PreAuthenticationIdentity} applied by this instance
+	 */
+	public PreAuthenticationIdentity getIdentity() {
+		return identity;
+	}
+	/**
+	 * 
+	 * @return the {@link HeaderOverrideTable} used by this instance
+	 */
+	public HeaderOverrideTable getHeaderOverrides() {
+		return headerOverrides;
+	}
 	/**
 	 * 
 	 * @param name
 	 * @return the value of the overridden header, or null if not set.
 	 */
 	protected String getOverrideHeaderValue(String name) {
-		List<String> fromAdditional = additionalHeaders.get(name);
-		if(fromAdditional != null && !fromAdditional.isEmpty()) {
-			return fromAdditional.get(0);
-		}
-		return null;
+		return headerOverrides.getFirstValue(name);
+	}
+	/**
+	 * 
+	 * @param name
+	 * @return the position of the header in {@link #getHeaderOverrides()} if it has a value, otherwise -1
+	 */
+	private int overrideIndex(String name) {
+		int index = headerOverrides.indexOf(name);
+		return index >= 0 && headerOverrides.firstValueAt(index) != null ? index : -1;
 	}
 }
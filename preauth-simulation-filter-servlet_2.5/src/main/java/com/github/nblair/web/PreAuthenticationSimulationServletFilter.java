@@ -19,7 +19,7 @@ package com.github.nblair.web;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +28,7 @@ import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
@@ -96,8 +97,7 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 	public static final String INIT_PARAM_PREAUTH_REMOTE_USER = "preauth.remoteUser";
 	
 	private boolean enabled;
-	private String remoteUser;
-	private Map<String, List<String>> additionalHeaders = Collections.emptyMap();
+	private PreAuthenticationIdentity identity = PreAuthenticationIdentity.NONE;
 	
 	
 	/**
@@ -116,28 +116,59 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 	 * @return the remoteUser
 	 */
 	public String getRemoteUser() {
-		return remoteUser;
+		return identity.getRemoteUser();
 	}
 	/**
 	 * @param remoteUser the remoteUser to set
 	 */
 	public void setRemoteUser(String remoteUser) {
-		this.remoteUser = remoteUser;
+		setIdentity(new PreAuthenticationIdentity(remoteUser, identity.getHeaderOverrides()));
 	}
 	/**
 	 * @return the additionalHeaders
 	 */
 	public Map<String, List<String>> getAdditionalHeaders() {
-		return additionalHeaders;
+		return identity.getHeaderOverrides().asMap();
 	}
 	/**
+	 * Compiles the additionalHeaders into the {@link HeaderOverrideTable} shared by every request.
+	 * 
 	 * @param additionalHeaders the additionalHeaders to set
+	 * @throws IllegalArgumentException if a header name is repeated (ignoring case)
 	 */
 	public void setAdditionalHeaders(Map<String, List<String>> additionalHeaders) {
-		this.additionalHeaders = additionalHeaders;
+		setIdentity(new PreAuthenticationIdentity(identity.getRemoteUser(), HeaderOverrideTable.compile(additionalHeaders)));
 	}
+	/**
+	 * 
+	 * @param headerNames semi-colon separated header names
+	 * @param headerValues semi-colon separated header values, each of which may be comma separated to provide multiple values
+	 * @throws ServletException if the names and values don't match up
+	 */
 	public void setAdditionalHeaders(String headerNames, String headerValues) throws ServletException {
-		setAdditionalHeaders(toMap(headerNames, headerValues));
+		try {
+			setAdditionalHeaders(toMap(headerNames, headerValues));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+	}
+	/**
+	 * @return the compiled additionalHeaders
+	 */
+	public HeaderOverrideTable getHeaderOverrides() {
+		return identity.getHeaderOverrides();
+	}
+	/**
+	 * @return the identity applied to each request
+	 */
+	public PreAuthenticationIdentity getIdentity() {
+		return identity;
+	}
+	/**
+	 * @param identity the identity to apply to each request, null for none
+	 */
+	public void setIdentity(PreAuthenticationIdentity identity) {
+		this.identity = identity != null ? identity : PreAuthenticationIdentity.NONE;
 	}
 
 	/* (non-Javadoc)
@@ -157,18 +188,39 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The request is passed along untouched when the filter is disabled, when there is nothing to simulate, or when it
+	 * (or a request it wraps) is already a {@link PreAuthenticationSimulationHttpServletRequestWrapper} for
+	 * the same identity, as happens on FORWARD, INCLUDE and ERROR dispatches.
 	 */
 	public void doFilter(ServletRequest request, ServletResponse response,
 			FilterChain chain) throws IOException, ServletException {
-		if(isEnabled()){
-			chain.doFilter(new PreAuthenticationSimulationHttpServletRequestWrapper((HttpServletRequest) request, remoteUser, additionalHeaders),  response);
+		PreAuthenticationIdentity current = this.identity;
+		if(isEnabled() && !current.isEmpty() && !isWrapped(request, current)){
+			chain.doFilter(new PreAuthenticationSimulationHttpServletRequestWrapper((HttpServletRequest) request, current),  response);
 		}else{
 			//no-op
 			chain.doFilter(request, response);
 		}
 	}
+	/**
+	 * 
+	 * @param request
+	 * @param identity
+	 * @return true if the request, or any request it wraps, is a {@link PreAuthenticationSimulationHttpServletRequestWrapper} for the identity
+	 */
+	protected boolean isWrapped(ServletRequest request, PreAuthenticationIdentity identity) {
+		while(request instanceof ServletRequestWrapper) {
+			if(request instanceof PreAuthenticationSimulationHttpServletRequestWrapper 
+					&& ((PreAuthenticationSimulationHttpServletRequestWrapper) request).getIdentity() == identity) {
+				return true;
+			}
+			request = ((ServletRequestWrapper) request).getRequest();
+		}
+		return false;
+	}
 
 	/* (non-Javadoc)
 	 * @see javax.servlet.Filter#destroy()
@@ -204,7 +256,7 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 			throw new ServletException("Length of 'preauth.headerNames' (" + headerNames.length + ") and 'preauth.headerValues (" + headerValues.length + ") does not match");
 		}
 		
-		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
 		for(int i = 0; i < headerNames.length; i++) {			
 			result.put(headerNames[i], Arrays.asList(headerValues[i].split(",", -1)));
 		}
@@ -19,7 +19,9 @@ package com.github.nblair.web;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -36,10 +38,12 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -68,6 +72,57 @@ public class PreAuthenticationSimulationServletFilterTest {
 		new PreAuthenticationSimulationServletFilter().doFilter(request, response, chain);
 	}
 
+	/**
+	 * Verify the request itself (not a wrapper) is passed along when the filter has nothing to simulate.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_no_overrides_passthrough() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setEnabled(true);
+		filter.doFilter(request, response, chain);
+		verify(chain).doFilter(request, response);
+	}
+	/**
+	 * Verify a request that was already wrapped by the filter (directly, or beneath another wrapper) is not wrapped again,
+	 * as happens on FORWARD/INCLUDE/ERROR dispatches.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_already_wrapped() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setEnabled(true);
+		filter.setRemoteUser("override-remoteUser");
+		
+		FilterChain chain = mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+		ArgumentCaptor<ServletRequest> captor = ArgumentCaptor.forClass(ServletRequest.class);
+		verify(chain).doFilter(captor.capture(), eq(response));
+		ServletRequest wrapped = captor.getValue();
+		assertTrue(wrapped instanceof PreAuthenticationSimulationHttpServletRequestWrapper);
+		
+		FilterChain dispatchChain = mock(FilterChain.class);
+		filter.doFilter(wrapped, response, dispatchChain);
+		verify(dispatchChain).doFilter(wrapped, response);
+		
+		HttpServletRequestWrapper outer = new HttpServletRequestWrapper((HttpServletRequest) wrapped);
+		filter.doFilter(outer, response, dispatchChain);
+		verify(dispatchChain).doFilter(outer, response);
+		
+		// a new identity must be applied on top of the previous one
+		filter.setRemoteUser("another-remoteUser");
+		filter.doFilter(wrapped, response, new SimpleAssertionFilterChain("another-remoteUser", Collections.<String, String>emptyMap()));
+	}
 	/**
 	 * Populate {@link PreAuthenticationSimulationServletFilter#setRemoteUser(String)} but do NOT enable the preauth simulator and verify that the
 	 * {@link HttpServletRequest#getRemoteUser()} returns null.
@@ -127,6 +182,30 @@ public class PreAuthenticationSimulationServletFilterTest {
 		FilterChain chain = new SimpleAssertionFilterChain(null, ImmutableMap.of("foo1", "bar1", "foo2", "bar2"));
 		filter.doFilter(request, response, chain);
 	}
+	/**
+	 * Verify that overridden headers are found regardless of the case of the requested name.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_override_header_case_insensitive() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setAdditionalHeaders("Shib-Identity-Provider;Content-Length", "https://idp.example.edu;42");
+		filter.setEnabled(true);
+		
+		FilterChain chain = new SimpleAssertionFilterChain(null, ImmutableMap.of("shib-identity-provider", "https://idp.example.edu", "SHIB-IDENTITY-PROVIDER", "https://idp.example.edu")) {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				super.doFilter(request, response);
+				assertEquals(42, ((HttpServletRequest)request).getIntHeader("content-length"));
+			}
+		};
+		filter.doFilter(request, response, chain);
+	}
 	/**
 	 * Verify behavior of {@link PreAuthenticationSimulationServletFilter#init(FilterConfig)} when no init-params
 	 * are provided.
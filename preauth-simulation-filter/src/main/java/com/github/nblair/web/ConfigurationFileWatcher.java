@@ -0,0 +1,119 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a single file with a {@link WatchService} on a daemon thread, and runs a callback
+ * (on that thread) each time the file is created, modified or deleted.
+ *
+ * Editors often produce several events for one save, so events arriving within {@link #SETTLE_MILLISECONDS}
+ * of each other result in a single callback.
+ *
+ * @author Nicholas Blair
+ */
+final class ConfigurationFileWatcher implements Runnable, Closeable {
+
+	static final long SETTLE_MILLISECONDS = 100;
+
+	private final Path file;
+	private final Runnable onChange;
+	private final WatchService watchService;
+	private final Thread thread;
+	private volatile boolean closed;
+	/**
+	 * Starts watching immediately.
+	 *
+	 * @param file
+	 * @param onChange invoked on the watcher thread after the file changes
+	 * @throws IOException if the file's directory cannot be watched
+	 */
+	ConfigurationFileWatcher(Path file, Runnable onChange) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.onChange = onChange;
+		Path directory = this.file.getParent();
+		this.watchService = directory.getFileSystem().newWatchService();
+		directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		this.thread = new Thread(this, "preauth-configuration-watcher-" + this.file.getFileName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	/**
+	 * @return the watched file
+	 */
+	Path getFile() {
+		return file;
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			while(!closed) {
+				WatchKey key = watchService.take();
+				boolean changed = drain(key);
+				// let a burst of events for the same save settle
+				while((key = watchService.poll(SETTLE_MILLISECONDS, TimeUnit.MILLISECONDS)) != null) {
+					changed |= drain(key);
+				}
+				if(changed && !closed) {
+					onChange.run();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+	/**
+	 *
+	 * @param key
+	 * @return true if any of the key's events concern the watched file
+	 */
+	private boolean drain(WatchKey key) {
+		boolean changed = false;
+		for(WatchEvent<?> event: key.pollEvents()) {
+			if(event.kind() == OVERFLOW || file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+	/**
+	 * Stops watching; the callback will not be run again.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+		thread.interrupt();
+	}
+}
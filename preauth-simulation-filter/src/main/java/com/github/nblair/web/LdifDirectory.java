@@ -0,0 +1,315 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Immutable index of the entries in an LDIF file (RFC 2849), providing the headers to simulate for each REMOTE_USER.
+ * 
+ * The file is read one entry at a time, and each entry with a {@link #DEFAULT_REMOTE_USER_ATTRIBUTE} (or the attribute
+ * provided to {@link #load(Path, String, List)}) becomes a {@link PreAuthenticationIdentity} whose headers are the entry's attributes.
+ * Everything is materialized while loading: values repeated across entries (group names, for instance) are stored once,
+ * entries with the same attribute names share one header index, and {@link #get(String)} is a single map lookup.
+ * For example:
+ <pre>
+ version: 1
+
+ dn: uid=jdoe,ou=people,dc=example,dc=edu
+ uid: jdoe
+ mail: jdoe@example.edu
+ isMemberOf: group1
+ isMemberOf: group2
+ </pre>
+ * 
+ * Attribute names are matched ignoring case, and attribute options (";lang-en") are dropped. Base64 values ("::") are decoded
+ * as UTF-8. Change records and URL values (":&lt;") are not supported.
+ *
+ * @author Nicholas Blair
+ */
+public final class LdifDirectory {
+
+	/**
+	 * The attribute holding each entry's REMOTE_USER, unless another is provided.
+	 */
+	public static final String DEFAULT_REMOTE_USER_ATTRIBUTE = "uid";
+
+	private final Map<String, PreAuthenticationIdentity> identities;
+	/**
+	 *
+	 * @param identities
+	 */
+	private LdifDirectory(Map<String, PreAuthenticationIdentity> identities) {
+		this.identities = identities;
+	}
+	/**
+	 *
+	 * @param file
+	 * @param remoteUserAttribute the attribute holding each entry's REMOTE_USER, null for {@link #DEFAULT_REMOTE_USER_ATTRIBUTE}
+	 * @param attributes the attributes to provide as headers, in order; null or empty for every attribute of each entry
+	 * @return a directory of the entries in the file
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public static LdifDirectory load(Path file, String remoteUserAttribute, List<String> attributes) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(reader, remoteUserAttribute, attributes);
+		}
+	}
+	/**
+	 *
+	 * @param source
+	 * @param remoteUserAttribute the attribute holding each entry's REMOTE_USER, null for {@link #DEFAULT_REMOTE_USER_ATTRIBUTE}
+	 * @param attributes the attributes to provide as headers, in order; null or empty for every attribute of each entry
+	 * @return a directory of the entries read from the source (which is not closed)
+	 * @throws IOException if the source cannot be read or is malformed
+	 */
+	public static LdifDirectory load(Reader source, String remoteUserAttribute, List<String> attributes) throws IOException {
+		BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+		Loader loader = new Loader(remoteUserAttribute != null ? remoteUserAttribute : DEFAULT_REMOTE_USER_ATTRIBUTE, attributes);
+		StringBuilder logical = new StringBuilder();
+		int logicalLineNumber = 0;
+		int lineNumber = 0;
+		String line;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			if(line.startsWith(" ")) {
+				if(logicalLineNumber == 0) {
+					throw new IOException("line " + lineNumber + ": continuation without a preceding line");
+				}
+				logical.append(line, 1, line.length());
+				continue;
+			}
+			if(logicalLineNumber != 0) {
+				loader.line(logical.toString(), logicalLineNumber);
+				logical.setLength(0);
+				logicalLineNumber = 0;
+			}
+			if(line.isEmpty()) {
+				loader.endEntry();
+			} else {
+				logical.append(line);
+				logicalLineNumber = lineNumber;
+			}
+		}
+		if(logicalLineNumber != 0) {
+			loader.line(logical.toString(), logicalLineNumber);
+		}
+		loader.endEntry();
+		return new LdifDirectory(loader.identities);
+	}
+	/**
+	 *
+	 * @return the number of REMOTE_USERs in the directory
+	 */
+	public int size() {
+		return identities.size();
+	}
+	/**
+	 *
+	 * @param remoteUser
+	 * @return the identity for the REMOTE_USER, with its entry's attributes as headers; null if it is not in the directory
+	 */
+	public PreAuthenticationIdentity get(String remoteUser) {
+		return remoteUser != null ? identities.get(remoteUser) : null;
+	}
+	/**
+	 * Collects the attributes of the current entry, and indexes the entry when it ends.
+	 */
+	private static final class Loader {
+		private final String remoteUserAttribute;
+		/**
+		 * Case-folded names of the attributes to provide as headers, mapped to the header names; null for all.
+		 */
+		private final Map<String, String> selected;
+		private final Map<String, PreAuthenticationIdentity> identities = new HashMap<>();
+		/**
+		 * Header name lists mapped to the template sharing their index.
+		 */
+		private final Map<List<String>, HeaderOverrideTable> templates = new HashMap<>();
+		/**
+		 * Every distinct value read so far, so each is stored once.
+		 */
+		private final Map<String, String> values = new HashMap<>();
+		/**
+		 * The current entry's attributes, keyed by case-folded name, in the order first seen.
+		 */
+		private final Map<String, Attribute> entry = new LinkedHashMap<>();
+		private boolean inEntry;
+		private int entryLineNumber;
+		/**
+		 *
+		 * @param remoteUserAttribute
+		 * @param attributes
+		 */
+		Loader(String remoteUserAttribute, List<String> attributes) {
+			this.remoteUserAttribute = remoteUserAttribute.toLowerCase(Locale.ENGLISH);
+			if(attributes == null || attributes.isEmpty()) {
+				this.selected = null;
+			} else {
+				this.selected = new LinkedHashMap<>();
+				for(String attribute: attributes) {
+					selected.put(attribute.toLowerCase(Locale.ENGLISH), attribute);
+				}
+			}
+		}
+		/**
+		 *
+		 * @param line a line, with its continuations appended
+		 * @param lineNumber where the line started
+		 * @throws IOException if the line is malformed
+		 */
+		void line(String line, int lineNumber) throws IOException {
+			if(line.startsWith("#")) {
+				return;
+			}
+			int colon = line.indexOf(':');
+			if(colon <= 0) {
+				throw new IOException("line " + lineNumber + ": expected 'attribute: value'");
+			}
+			String description = line.substring(0, colon);
+			int options = description.indexOf(';');
+			String name = (options < 0 ? description : description.substring(0, options)).trim();
+			String key = name.toLowerCase(Locale.ENGLISH);
+			if(!inEntry) {
+				if("version".equals(key)) {
+					return;
+				}
+				if(!"dn".equals(key)) {
+					throw new IOException("line " + lineNumber + ": expected 'dn:' to start an entry");
+				}
+				inEntry = true;
+				entryLineNumber = lineNumber;
+				return;
+			}
+			String value;
+			int start = colon + 1;
+			if(start < line.length() && line.charAt(start) == ':') {
+				try {
+					value = new String(DatatypeConverter.parseBase64Binary(line.substring(start + 1).trim()), StandardCharsets.UTF_8);
+				} catch (IllegalArgumentException e) {
+					throw new IOException("line " + lineNumber + ": invalid base64 value", e);
+				}
+			} else if(start < line.length() && line.charAt(start) == '<') {
+				throw new IOException("line " + lineNumber + ": URL values are not supported");
+			} else {
+				while(start < line.length() && line.charAt(start) == ' ') {
+					start++;
+				}
+				value = line.substring(start);
+			}
+			if("changetype".equals(key)) {
+				if(!"add".equals(value)) {
+					throw new IOException("line " + lineNumber + ": change records are not supported");
+				}
+				return;
+			}
+			if(selected != null && !selected.containsKey(key) && !key.equals(remoteUserAttribute)) {
+				return;
+			}
+			Attribute attribute = entry.get(key);
+			if(attribute == null) {
+				attribute = new Attribute(selected != null && selected.containsKey(key) ? selected.get(key) : name);
+				entry.put(key, attribute);
+			}
+			String shared = values.get(value);
+			if(shared == null) {
+				shared = value;
+				values.put(shared, shared);
+			}
+			attribute.values.add(shared);
+		}
+		/**
+		 * Indexes the current entry, if it has a REMOTE_USER, and starts the next.
+		 * 
+		 * @throws IOException if the REMOTE_USER is already indexed
+		 */
+		void endEntry() throws IOException {
+			if(!inEntry) {
+				return;
+			}
+			Attribute remoteUser = entry.get(remoteUserAttribute);
+			if(remoteUser != null) {
+				String name = remoteUser.values.get(0);
+				if(identities.containsKey(name)) {
+					throw new IOException("line " + entryLineNumber + ": REMOTE_USER '" + name + "' is listed more than once");
+				}
+				identities.put(name, new PreAuthenticationIdentity(name, headers()));
+			}
+			entry.clear();
+			inEntry = false;
+		}
+		/**
+		 *
+		 * @return the current entry's attributes, as headers
+		 */
+		private HeaderOverrideTable headers() {
+			List<String> names = new ArrayList<>();
+			List<List<String>> headerValues = new ArrayList<>();
+			if(selected == null) {
+				for(Attribute attribute: entry.values()) {
+					names.add(attribute.name);
+					headerValues.add(attribute.values);
+				}
+			} else {
+				for(Map.Entry<String, String> attribute: selected.entrySet()) {
+					Attribute present = entry.get(attribute.getKey());
+					if(present != null) {
+						names.add(attribute.getValue());
+						headerValues.add(present.values);
+					}
+				}
+			}
+			if(names.isEmpty()) {
+				return HeaderOverrideTable.EMPTY;
+			}
+			HeaderOverrideTable template = templates.get(names);
+			if(template == null) {
+				template = HeaderOverrideTable.forNames(names.toArray(new String[names.size()]));
+				templates.put(Collections.unmodifiableList(names), template);
+			}
+			return template.withValues(headerValues);
+		}
+	}
+	/**
+	 * The values of one attribute of the current entry.
+	 */
+	private static final class Attribute {
+		private final String name;
+		private final List<String> values = new ArrayList<>(1);
+		/**
+		 *
+		 * @param name
+		 */
+		Attribute(String name) {
+			this.name = name;
+		}
+	}
+}
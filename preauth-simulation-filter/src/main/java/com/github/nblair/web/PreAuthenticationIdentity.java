@@ -0,0 +1,69 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+/**
+ * Immutable pairing of the simulated REMOTE_USER and the {@link HeaderOverrideTable} applied
+ * by a {@link PreAuthenticationSimulationHttpServletRequestWrapper}.
+ *
+ * @author Nicholas Blair
+ */
+public final class PreAuthenticationIdentity {
+
+	/**
+	 * Identity that overrides nothing.
+	 */
+	public static final PreAuthenticationIdentity NONE = new PreAuthenticationIdentity(null, HeaderOverrideTable.EMPTY);
+
+	private final String remoteUser;
+	private final HeaderOverrideTable headerOverrides;
+	/**
+	 *
+	 * @param remoteUser the value for REMOTE_USER, or null to leave it unchanged
+	 * @param headerOverrides the overridden headers, or null for none
+	 */
+	public PreAuthenticationIdentity(String remoteUser, HeaderOverrideTable headerOverrides) {
+		this.remoteUser = remoteUser;
+		this.headerOverrides = headerOverrides != null ? headerOverrides : HeaderOverrideTable.EMPTY;
+	}
+	/**
+	 * @return the remoteUser, may be null
+	 */
+	public String getRemoteUser() {
+		return remoteUser;
+	}
+	/**
+	 * @return the headerOverrides, never null
+	 */
+	public HeaderOverrideTable getHeaderOverrides() {
+		return headerOverrides;
+	}
+	/**
+	 *
+	 * @return true if this identity does not change the request at all
+	 */
+	public boolean isEmpty() {
+		return remoteUser == null && headerOverrides.isEmpty();
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PreAuthenticationIdentity [remoteUser=" + remoteUser + ", headerNames=" + headerOverrides.getNames() + "]";
+	}
+}
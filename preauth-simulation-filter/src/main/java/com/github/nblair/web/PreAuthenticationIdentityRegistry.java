@@ -0,0 +1,234 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Read-only registry of {@link PreAuthenticationIdentity}s loaded from a local file, used to simulate
+ * many distinct users (for example during a load test) with a single {@link PreAuthenticationSimulationServletFilter}.
+ *
+ * The file uses the same delimiters as the filter's init-params. Blank lines and lines starting with '#' are ignored.
+ * The first remaining line names the columns: a label for the REMOTE_USER column followed by the header names.
+ * Every other line is a REMOTE_USER followed by the values for each header, where multiple values are separated by commas:
+ * <pre>
+ # remoteUser;header1;header2
+ REMOTE_USER;mail;isMemberOf
+ jdoe;jdoe@example.edu;group1,group2
+ asmith;asmith@example.edu;
+ </pre>
+ *
+ * Each identity is kept as the raw remainder of its line in an open-addressed index, so large files stay compact;
+ * the {@link PreAuthenticationIdentity} is built the first time it is requested and reused from then on.
+ * Lookups by REMOTE_USER are constant time.
+ *
+ * @author Nicholas Blair
+ */
+public final class PreAuthenticationIdentityRegistry {
+
+	private final HeaderOverrideTable template;
+	private final String[] remoteUsers;
+	private final String[] rows;
+	/**
+	 * Open-addressed index: each slot holds (position in {@link #remoteUsers} + 1), or 0 if the slot is free.
+	 */
+	private final int[] slots;
+	private final AtomicReferenceArray<PreAuthenticationIdentity> identities;
+	/**
+	 *
+	 * @param template
+	 * @param remoteUsers
+	 * @param rows
+	 * @param slots
+	 */
+	private PreAuthenticationIdentityRegistry(HeaderOverrideTable template, String[] remoteUsers, String[] rows, int[] slots) {
+		this.template = template;
+		this.remoteUsers = remoteUsers;
+		this.rows = rows;
+		this.slots = slots;
+		this.identities = new AtomicReferenceArray<>(remoteUsers.length);
+	}
+	/**
+	 *
+	 * @param file
+	 * @return a registry for the identities in the file
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public static PreAuthenticationIdentityRegistry load(Path file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(reader);
+		}
+	}
+	/**
+	 *
+	 * @param source
+	 * @return a registry for the identities read from the source (which is not closed)
+	 * @throws IOException if the source cannot be read or is malformed
+	 */
+	public static PreAuthenticationIdentityRegistry load(Reader source) throws IOException {
+		BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+		HeaderOverrideTable template = null;
+		List<String> remoteUsers = new ArrayList<>();
+		List<String> rows = new ArrayList<>();
+		int lineNumber = 0;
+		String line;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			if(line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			if(template == null) {
+				String[] columns = line.split(";");
+				try {
+					template = HeaderOverrideTable.forNames(Arrays.copyOfRange(columns, 1, columns.length));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+				}
+				continue;
+			}
+			int separator = line.indexOf(';');
+			String remoteUser = separator < 0 ? line : line.substring(0, separator);
+			String row = separator < 0 ? "" : line.substring(separator + 1);
+			int columns = separator < 0 ? 0 : countColumns(row);
+			if(columns != template.size()) {
+				throw new IOException("line " + lineNumber + ": expected values for " + template.size() + " headers, found " + columns);
+			}
+			remoteUsers.add(remoteUser);
+			rows.add(row);
+		}
+		if(template == null) {
+			template = HeaderOverrideTable.EMPTY;
+		}
+		String[] users = remoteUsers.toArray(new String[remoteUsers.size()]);
+		int capacity = 2;
+		while(capacity < users.length * 2) {
+			capacity <<= 1;
+		}
+		int[] slots = new int[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < users.length; i++) {
+			int slot = spread(users[i].hashCode()) & mask;
+			while(slots[slot] != 0) {
+				if(users[slots[slot] - 1].equals(users[i])) {
+					throw new IOException("REMOTE_USER '" + users[i] + "' is listed more than once");
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+		return new PreAuthenticationIdentityRegistry(template, users, rows.toArray(new String[rows.size()]), slots);
+	}
+	/**
+	 *
+	 * @return the number of identities in the registry
+	 */
+	public int size() {
+		return remoteUsers.length;
+	}
+	/**
+	 *
+	 * @return the names of the headers provided for each identity
+	 */
+	public List<String> getHeaderNames() {
+		return template.getNames();
+	}
+	/**
+	 *
+	 * @param remoteUser
+	 * @return the identity for the REMOTE_USER, or null if it is not in the registry
+	 */
+	public PreAuthenticationIdentity get(String remoteUser) {
+		int index = indexOf(remoteUser);
+		if(index < 0) {
+			return null;
+		}
+		PreAuthenticationIdentity identity = identities.get(index);
+		if(identity == null) {
+			// racing threads build equivalent instances; either may win
+			identity = new PreAuthenticationIdentity(remoteUsers[index], template.withValues(parseRow(rows[index])));
+			identities.lazySet(index, identity);
+		}
+		return identity;
+	}
+	/**
+	 *
+	 * @param remoteUser
+	 * @return the position of the REMOTE_USER, or -1 if not present
+	 */
+	private int indexOf(String remoteUser) {
+		if(remoteUser == null || remoteUsers.length == 0) {
+			return -1;
+		}
+		int mask = slots.length - 1;
+		int slot = spread(remoteUser.hashCode()) & mask;
+		int entry;
+		while((entry = slots[slot]) != 0) {
+			if(remoteUsers[entry - 1].equals(remoteUser)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	/**
+	 *
+	 * @param row
+	 * @return the values for each header in the row
+	 */
+	private List<List<String>> parseRow(String row) {
+		if(template.isEmpty()) {
+			return new ArrayList<>();
+		}
+		String[] columns = row.split(";", -1);
+		List<List<String>> result = new ArrayList<>(columns.length);
+		for(String column: columns) {
+			result.add(Arrays.asList(column.split(",", -1)));
+		}
+		return result;
+	}
+	/**
+	 *
+	 * @param row
+	 * @return the number of ';' separated columns in the row
+	 */
+	private static int countColumns(String row) {
+		int count = 1;
+		for(int i = 0; i < row.length(); i++) {
+			if(row.charAt(i) == ';') {
+				count++;
+			}
+		}
+		return count;
+	}
+	/**
+	 *
+	 * @param hash
+	 * @return the hash with its high bits mixed into the low bits
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.Locale;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Selects which simulated identity a request asks for, from a request header, cookie or parameter.
+ *
+ * Instances are described as "source:name", for example "header:X-Preauth-Identity",
+ * "cookie:preauth-identity" or "parameter:preauth-identity".
+ * Note that selecting by parameter may cause the container to read the body of form POSTs.
+ *
+ * @author Nicholas Blair
+ */
+public final class PreAuthenticationIdentitySelector {
+
+	/**
+	 * Where the selected identity is read from.
+	 */
+	public static enum Source {
+		HEADER,
+		COOKIE,
+		PARAMETER;
+	}
+
+	/**
+	 * Selector used when none is configured.
+	 */
+	public static final PreAuthenticationIdentitySelector DEFAULT = new PreAuthenticationIdentitySelector(Source.HEADER, "X-Preauth-Identity");
+
+	private final Source source;
+	private final String name;
+	/**
+	 *
+	 * @param source
+	 * @param name the name of the header, cookie or parameter
+	 */
+	public PreAuthenticationIdentitySelector(Source source, String name) {
+		if(source == null || name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("source and name are required");
+		}
+		this.source = source;
+		this.name = name;
+	}
+	/**
+	 *
+	 * @param specification "header:name", "cookie:name" or "parameter:name"
+	 * @return the corresponding selector
+	 * @throws IllegalArgumentException if the specification is not recognized
+	 */
+	public static PreAuthenticationIdentitySelector parse(String specification) {
+		int separator = specification.indexOf(':');
+		if(separator < 0) {
+			throw new IllegalArgumentException("Identity selector must be of the form 'header:name', 'cookie:name' or 'parameter:name', was: " + specification);
+		}
+		Source source;
+		try {
+			source = Source.valueOf(specification.substring(0, separator).trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown identity selector source in: " + specification, e);
+		}
+		return new PreAuthenticationIdentitySelector(source, specification.substring(separator + 1).trim());
+	}
+	/**
+	 * @return the source
+	 */
+	public Source getSource() {
+		return source;
+	}
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 *
+	 * @param request
+	 * @return the identity requested, or null if the request does not select one
+	 */
+	public String select(HttpServletRequest request) {
+		switch (source) {
+		case HEADER:
+			return request.getHeader(name);
+		case PARAMETER:
+			return request.getParameter(name);
+		case COOKIE:
+			Cookie[] cookies = request.getCookies();
+			if(cookies != null) {
+				for(Cookie cookie: cookies) {
+					if(name.equals(cookie.getName())) {
+						return cookie.getValue();
+					}
+				}
+			}
+			return null;
+		default:
+			throw new IllegalStateException("unexpected source " + source);
+		}
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return source.name().toLowerCase(Locale.ENGLISH) + ":" + name;
+	}
+}
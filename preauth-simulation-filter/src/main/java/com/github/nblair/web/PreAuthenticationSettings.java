@@ -0,0 +1,149 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+/**
+ * Immutable snapshot of everything {@link PreAuthenticationSimulationServletFilter} needs to pick the identity for a request.
+ *
+ * The filter publishes a single instance through a volatile field: request threads read it once per request without locking,
+ * and every change (setters, configuration file reloads) replaces it with a modified copy.
+ *
+ * @author Nicholas Blair
+ */
+public final class PreAuthenticationSettings {
+
+	/**
+	 * Settings that simulate nothing.
+	 */
+	public static final PreAuthenticationSettings DEFAULT = new PreAuthenticationSettings(PreAuthenticationIdentity.NONE, null, PreAuthenticationIdentitySelector.DEFAULT, null);
+
+	private final PreAuthenticationIdentity identity;
+	private final PreAuthenticationIdentityRegistry identityRegistry;
+	private final PreAuthenticationIdentitySelector identitySelector;
+	private final SyntheticIdentityGenerator syntheticIdentityGenerator;
+	private final LdifDirectory ldifDirectory;
+	/**
+	 *
+	 * @param identity the identity applied when a request doesn't get one from the registry or generator, null for none
+	 * @param identityRegistry may be null
+	 * @param identitySelector null for {@link PreAuthenticationIdentitySelector#DEFAULT}
+	 * @param syntheticIdentityGenerator may be null
+	 */
+	public PreAuthenticationSettings(PreAuthenticationIdentity identity,
+			PreAuthenticationIdentityRegistry identityRegistry,
+			PreAuthenticationIdentitySelector identitySelector,
+			SyntheticIdentityGenerator syntheticIdentityGenerator) {
+		this(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, null);
+	}
+	/**
+	 *
+	 * @param identity the identity applied when a request doesn't get one from the registry or generator, null for none
+	 * @param identityRegistry may be null
+	 * @param identitySelector null for {@link PreAuthenticationIdentitySelector#DEFAULT}
+	 * @param syntheticIdentityGenerator may be null
+	 * @param ldifDirectory provides the headers for the REMOTE_USERs it lists, may be null
+	 */
+	public PreAuthenticationSettings(PreAuthenticationIdentity identity,
+			PreAuthenticationIdentityRegistry identityRegistry,
+			PreAuthenticationIdentitySelector identitySelector,
+			SyntheticIdentityGenerator syntheticIdentityGenerator,
+			LdifDirectory ldifDirectory) {
+		this.identity = identity != null ? identity : PreAuthenticationIdentity.NONE;
+		this.identityRegistry = identityRegistry;
+		this.identitySelector = identitySelector != null ? identitySelector : PreAuthenticationIdentitySelector.DEFAULT;
+		this.syntheticIdentityGenerator = syntheticIdentityGenerator;
+		this.ldifDirectory = ldifDirectory;
+	}
+	/**
+	 * @return the identity, never null
+	 */
+	public PreAuthenticationIdentity getIdentity() {
+		return identity;
+	}
+	/**
+	 * @return the identityRegistry, may be null
+	 */
+	public PreAuthenticationIdentityRegistry getIdentityRegistry() {
+		return identityRegistry;
+	}
+	/**
+	 * @return the identitySelector, never null
+	 */
+	public PreAuthenticationIdentitySelector getIdentitySelector() {
+		return identitySelector;
+	}
+	/**
+	 * @return the syntheticIdentityGenerator, may be null
+	 */
+	public SyntheticIdentityGenerator getSyntheticIdentityGenerator() {
+		return syntheticIdentityGenerator;
+	}
+	/**
+	 * @return the ldifDirectory, may be null
+	 */
+	public LdifDirectory getLdifDirectory() {
+		return ldifDirectory;
+	}
+	/**
+	 *
+	 * @param identity
+	 * @return a copy of these settings with the identity replaced
+	 */
+	public PreAuthenticationSettings withIdentity(PreAuthenticationIdentity identity) {
+		return new PreAuthenticationSettings(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, ldifDirectory);
+	}
+	/**
+	 *
+	 * @param identityRegistry
+	 * @return a copy of these settings with the identityRegistry replaced
+	 */
+	public PreAuthenticationSettings withIdentityRegistry(PreAuthenticationIdentityRegistry identityRegistry) {
+		return new PreAuthenticationSettings(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, ldifDirectory);
+	}
+	/**
+	 *
+	 * @param identitySelector
+	 * @return a copy of these settings with the identitySelector replaced
+	 */
+	public PreAuthenticationSettings withIdentitySelector(PreAuthenticationIdentitySelector identitySelector) {
+		return new PreAuthenticationSettings(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, ldifDirectory);
+	}
+	/**
+	 *
+	 * @param syntheticIdentityGenerator
+	 * @return a copy of these settings with the syntheticIdentityGenerator replaced
+	 */
+	public PreAuthenticationSettings withSyntheticIdentityGenerator(SyntheticIdentityGenerator syntheticIdentityGenerator) {
+		return new PreAuthenticationSettings(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, ldifDirectory);
+	}
+	/**
+	 *
+	 * @param ldifDirectory
+	 * @return a copy of these settings with the ldifDirectory replaced
+	 */
+	public PreAuthenticationSettings withLdifDirectory(LdifDirectory ldifDirectory) {
+		return new PreAuthenticationSettings(identity, identityRegistry, identitySelector, syntheticIdentityGenerator, ldifDirectory);
+	}
+	/**
+	 * A directory alone changes nothing: it only provides headers for a REMOTE_USER simulated some other way.
+	 *
+	 * @return true if no request would be changed with these settings
+	 */
+	public boolean isEmpty() {
+		return identity.isEmpty() && identityRegistry == null && syntheticIdentityGenerator == null;
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Runtime admin surface for a {@link PreAuthenticationSimulationServletFilter}, exposed over JMX and/or HTTP.
+ * 
+ * Every change builds a new {@link PreAuthenticationIdentity} and publishes it with a single write to the filter's
+ * settings snapshot, so requests in flight keep the identity they started with and new requests see the change immediately.
+ * 
+ * Over HTTP, a GET returns the current identity and a POST replaces it, both using the init-param names:
+ * <pre>
+ preauth.remoteUser=jdoe
+ preauth.headerNames=mail;isMemberOf
+ preauth.headerValues=jdoe@example.edu;group1,group2
+ </pre>
+ * A POST with neither preauth.remoteUser nor preauth.headerNames clears the identity; preauth.headerNames and preauth.headerValues
+ * must be given together.
+ * 
+ * HTTP requests are refused (403) unless they carry the filter's preauth.adminToken in the {@link #ADMIN_TOKEN_HEADER} header or,
+ * when no token is configured, come from a loopback address. Requests from a browser page of another origin (per the Origin
+ * header) are refused either way.
+ *
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationSimulationAdmin implements PreAuthenticationSimulationAdminMBean {
+
+	/**
+	 * Name of the request header carrying the {@link PreAuthenticationSimulationServletFilter#INIT_PARAM_PREAUTH_ADMIN_TOKEN}.
+	 */
+	public static final String ADMIN_TOKEN_HEADER = "X-Preauth-Admin-Token";
+	
+	private final PreAuthenticationSimulationServletFilter filter;
+	/**
+	 * 
+	 * @param filter
+	 */
+	public PreAuthenticationSimulationAdmin(PreAuthenticationSimulationServletFilter filter) {
+		this.filter = filter;
+	}
+	/* (non-Javadoc)
+	 * @see com.github.nblair.web.PreAuthenticationSimulationAdminMBean#getRemoteUser()
+	 */
+	@Override
+	public String getRemoteUser() {
+		return filter.getRemoteUser();
+	}
+	/* (non-Javadoc)
+	 * @see com.github.nblair.web.PreAuthenticationSimulationAdminMBean#getHeaderNames()
+	 */
+	@Override
+	public String getHeaderNames() {
+		return headerNames(filter.getHeaderOverrides());
+	}
+	/* (non-Javadoc)
+	 * @see com.github.nblair.web.PreAuthenticationSimulationAdminMBean#getHeaderValues()
+	 */
+	@Override
+	public String getHeaderValues() {
+		return headerValues(filter.getHeaderOverrides());
+	}
+	/* (non-Javadoc)
+	 * @see com.github.nblair.web.PreAuthenticationSimulationAdminMBean#setIdentity(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void setIdentity(String remoteUser, String headerNames, String headerValues) {
+		try {
+			filter.setIdentity(remoteUser, headerNames, headerValues);
+		} catch (ServletException e) {
+			// JMX clients may not have the servlet api on their classpath
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+	/* (non-Javadoc)
+	 * @see com.github.nblair.web.PreAuthenticationSimulationAdminMBean#clearIdentity()
+	 */
+	@Override
+	public void clearIdentity() {
+		filter.setIdentity(PreAuthenticationIdentity.NONE);
+	}
+	/**
+	 * Handle a request to the filter's admin path.
+	 * 
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	public void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if(!isAuthorized(request)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		if("POST".equals(request.getMethod())) {
+			try {
+				filter.setIdentity(request.getParameter(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_REMOTE_USER), 
+						request.getParameter(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_HEADER_NAMES), 
+						request.getParameter(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_HEADER_VALUES));
+			} catch (ServletException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return;
+			}
+		} else if(!"GET".equals(request.getMethod())) {
+			response.setHeader("Allow", "GET, POST");
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		PreAuthenticationIdentity identity = filter.getIdentity();
+		PrintWriter writer = response.getWriter();
+		if(identity.getRemoteUser() != null) {
+			writer.print(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_REMOTE_USER + "=" + identity.getRemoteUser() + "\n");
+		}
+		if(!identity.getHeaderOverrides().isEmpty()) {
+			writer.print(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_HEADER_NAMES + "=" + headerNames(identity.getHeaderOverrides()) + "\n");
+			writer.print(PreAuthenticationSimulationServletFilter.INIT_PARAM_PREAUTH_HEADER_VALUES + "=" + headerValues(identity.getHeaderOverrides()) + "\n");
+		}
+		writer.flush();
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return true if the request carries the admin token (or, without one, comes from a loopback address), and isn't from a page of another origin
+	 */
+	boolean isAuthorized(HttpServletRequest request) {
+		String origin = request.getHeader("Origin");
+		if(origin != null) {
+			// browsers send Origin on cross-site POSTs; it must name the host the request was sent to
+			String host = request.getHeader("Host");
+			int scheme = origin.indexOf("://");
+			if(host == null || scheme < 0 || !origin.substring(scheme + 3).equalsIgnoreCase(host)) {
+				return false;
+			}
+		}
+		String token = filter.getAdminToken();
+		if(token != null) {
+			String presented = request.getHeader(ADMIN_TOKEN_HEADER);
+			return presented != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+		}
+		return isLoopback(request.getRemoteAddr());
+	}
+	/**
+	 * 
+	 * @param remoteAddress an IP address, as returned by {@link HttpServletRequest#getRemoteAddr()}
+	 * @return true if the address is a loopback address
+	 */
+	static boolean isLoopback(String remoteAddress) {
+		if(remoteAddress == null || remoteAddress.isEmpty()) {
+			return false;
+		}
+		try {
+			// an IP address literal is parsed, not looked up
+			return InetAddress.getByName(remoteAddress).isLoopbackAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+	/**
+	 * 
+	 * @param headerOverrides
+	 * @return the header names in init-param format
+	 */
+	static String headerNames(HeaderOverrideTable headerOverrides) {
+		return join(headerOverrides.getNames(), ';');
+	}
+	/**
+	 * 
+	 * @param headerOverrides
+	 * @return the header values in init-param format
+	 */
+	static String headerValues(HeaderOverrideTable headerOverrides) {
+		StringBuilder result = new StringBuilder();
+		List<String> names = headerOverrides.getNames();
+		for(int i = 0; i < names.size(); i++) {
+			if(i > 0) {
+				result.append(';');
+			}
+			result.append(join(headerOverrides.getValues(names.get(i)), ','));
+		}
+		return result.toString();
+	}
+	/**
+	 * 
+	 * @param values
+	 * @param delimiter
+	 * @return the values joined with the delimiter
+	 */
+	private static String join(List<String> values, char delimiter) {
+		StringBuilder result = new StringBuilder();
+		for(int i = 0; i < values.size(); i++) {
+			if(i > 0) {
+				result.append(delimiter);
+			}
+			result.append(values.get(i));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+/**
+ * JMX management interface for {@link PreAuthenticationSimulationAdmin}.
+ * 
+ * Header names and values use the same ';' and ',' delimited format as the filter's init-params.
+ *
+ * @author Nicholas Blair
+ */
+public interface PreAuthenticationSimulationAdminMBean {
+
+	/**
+	 * @return the simulated REMOTE_USER, may be null
+	 */
+	String getRemoteUser();
+	/**
+	 * @return the simulated header names, ';' separated
+	 */
+	String getHeaderNames();
+	/**
+	 * @return the simulated header values, ';' separated, each of which may be ',' separated
+	 */
+	String getHeaderValues();
+	/**
+	 * Replaces the simulated REMOTE_USER and headers in one step.
+	 * 
+	 * @param remoteUser the REMOTE_USER to simulate, may be null
+	 * @param headerNames ';' separated header names, may be null
+	 * @param headerValues ';' separated header values, each of which may be ',' separated
+	 * @throws IllegalArgumentException if the names and values don't match up
+	 */
+	void setIdentity(String remoteUser, String headerNames, String headerValues);
+	/**
+	 * Stop simulating a REMOTE_USER or headers.
+	 */
+	void clearIdentity();
+}
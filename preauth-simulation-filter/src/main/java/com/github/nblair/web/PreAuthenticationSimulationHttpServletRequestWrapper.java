@@ -21,17 +21,32 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 
 /**
  * {@link HttpServletRequestWrapper} that allows us to alter the return 
+ * 
+ * Instances are immutable, so the simulated identity may be read from any thread, including those completing
+ * asynchronous requests; see {@link #startAsync()}.
+ * 
  * @author Nicholas Blair
  */
 public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpServletRequestWrapper {
 
+	/**
+	 * Name of the request attribute set to the {@link PreAuthenticationIdentity} when asynchronous processing starts, so that
+	 * the ASYNC dispatch gets the same identity even if the container dispatches the original request rather than this wrapper.
+	 */
+	public static final String IDENTITY_ATTRIBUTE = PreAuthenticationSimulationHttpServletRequestWrapper.class.getName() + ".identity";
+	
+	private final PreAuthenticationIdentity identity;
 	private final String remoteUser;
-	private final Map<String, List<String>> additionalHeaders;
+	private final HeaderOverrideTable headerOverrides;
+	private final ServletResponse response;
 	/**
 	 * Constructs an instance with a value for {@link #getRemoteUser()} but no additional values for {@link #getHeader(String)} variants.
 	 * 
@@ -39,7 +54,7 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 * @param remoteUser
 	 */
 	public PreAuthenticationSimulationHttpServletRequestWrapper(HttpServletRequest request, String remoteUser) {
-		this(request, remoteUser, Collections.<String, List<String>>emptyMap());
+		this(request, remoteUser, HeaderOverrideTable.EMPTY);
 	}
 	/**
 	 * Constructs an instance with additional values for {@link #getHeader(String)} variants and null for {@link #getRemoteUser()}.
@@ -51,7 +66,8 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 		this(request, null, additionalHeaders);
 	}
 	/**
-	 * Primary constructor. 
+	 * Compiles the additionalHeaders for this instance only; prefer {@link #PreAuthenticationSimulationHttpServletRequestWrapper(HttpServletRequest, String, HeaderOverrideTable)}
+	 * to share one {@link HeaderOverrideTable} across requests.
 	 * 
 	 * @param request the wrapped {@link HttpServletRequest}.
 	 * @param remoteUser the value to return for {@link #getRemoteUser()}
@@ -60,9 +76,42 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	public PreAuthenticationSimulationHttpServletRequestWrapper(
 			HttpServletRequest request, String remoteUser,
 			Map<String, List<String>> additionalHeaders) {
+		this(request, remoteUser, HeaderOverrideTable.compile(additionalHeaders));
+	}
+	/**
+	 * 
+	 * @param request the wrapped {@link HttpServletRequest}.
+	 * @param remoteUser the value to return for {@link #getRemoteUser()}
+	 * @param headerOverrides the values to return for the {@link #getHeader(String)} variants
+	 */
+	public PreAuthenticationSimulationHttpServletRequestWrapper(
+			HttpServletRequest request, String remoteUser,
+			HeaderOverrideTable headerOverrides) {
+		this(request, new PreAuthenticationIdentity(remoteUser, headerOverrides));
+	}
+	/**
+	 * 
+	 * @param request the wrapped {@link HttpServletRequest}.
+	 * @param identity the values to return for {@link #getRemoteUser()} and the {@link #getHeader(String)} variants
+	 */
+	public PreAuthenticationSimulationHttpServletRequestWrapper(
+			HttpServletRequest request, PreAuthenticationIdentity identity) {
+		this(request, null, identity);
+	}
+	/**
+	 * Primary constructor. 
+	 * 
+	 * @param request the wrapped {@link HttpServletRequest}.
+	 * @param response the response passed along with this request, used by {@link #startAsync()}; may be null
+	 * @param identity the values to return for {@link #getRemoteUser()} and the {@link #getHeader(String)} variants
+	 */
+	public PreAuthenticationSimulationHttpServletRequestWrapper(
+			HttpServletRequest request, ServletResponse response, PreAuthenticationIdentity identity) {
 		super(request);
-		this.remoteUser = remoteUser;
-		this.additionalHeaders = additionalHeaders;
+		this.identity = identity;
+		this.remoteUser = identity.getRemoteUser();
+		this.headerOverrides = identity.getHeaderOverrides();
+		this.response = response;
 	}
 
 	/* (non-Javadoc)
@@ -79,19 +128,41 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 */
 	@Override
 	public Enumeration<String> getHeaders(String name) {
-		if(additionalHeaders.containsKey(name)) {
-			return new CompositeEnumeration<String>(super.getHeaders(name), additionalHeaders.get(name).iterator());
+		List<String> override = headerOverrides.getValues(name);
+		if(override != null) {
+			return new CompositeEnumeration<String>(super.getHeaders(name), override.iterator());
 		} else {
 			return super.getHeaders(name);
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.servlet.http.HttpServletRequestWrapper#getHeaderNames()
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Returns the overridden header names, then the names of the wrapped request that are not overridden;
+	 * each name is returned once, ignoring case.
 	 */
 	@Override
 	public Enumeration<String> getHeaderNames() {
-		return new CompositeEnumeration<String>(super.getHeaderNames(), additionalHeaders.keySet().iterator());
+		Enumeration<String> names = super.getHeaderNames();
+		if(headerOverrides.isEmpty()) {
+			return names;
+		}
+		if(names == null) {
+			// the container doesn't allow access to header names
+			return Collections.enumeration(headerOverrides.getNames());
+		}
+		return new CompositeEnumeration<String>(true, headerOverrides.size(), 
+				Collections.enumeration(headerOverrides.getNames()), names) {
+			@Override
+			protected int hash(String name) {
+				return HeaderOverrideTable.hash(name);
+			}
+			@Override
+			protected boolean equivalent(String name, String other) {
+				return name.equalsIgnoreCase(other);
+			}
+		};
 	}
 
 	/* (non-Javadoc)
@@ -99,8 +170,17 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	 */
 	@Override
 	public int getIntHeader(String name) {
-		String override = getOverrideHeaderValue(name);
-		return override != null ? Integer.parseInt(override) : super.getIntHeader(name);
+		int index = overrideIndex(name);
+		return index >= 0 ? headerOverrides.intValueAt(index) : super.getIntHeader(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServletRequestWrapper#getDateHeader(java.lang.String)
+	 */
+	@Override
+	public long getDateHeader(String name) {
+		int index = overrideIndex(name);
+		return index >= 0 ? headerOverrides.dateValueAt(index) : super.getDateHeader(name);
 	}
 
 	/* (non-Javadoc)
@@ -110,16 +190,59 @@ public class PreAuthenticationSimulationHttpServletRequestWrapper extends HttpSe
 	public String getRemoteUser() {
 		return this.remoteUser != null ? remoteUser : super.getRemoteUser();
 	}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Starts asynchronous processing with this wrapper (rather than the original request) when the response is known, so 
+	 * {@link AsyncContext#getRequest()} keeps the simulated identity on whatever thread completes the request. 
+	 * Either way the identity is stored in the {@link #IDENTITY_ATTRIBUTE} for the ASYNC dispatch.
+	 */
+	@Override
+	public AsyncContext startAsync() {
+		if(response == null) {
+			setAttribute(IDENTITY_ATTRIBUTE, identity);
+			return super.startAsync();
+		}
+		return startAsync(this, response);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletRequestWrapper#startAsync(javax.servlet.ServletRequest, javax.servlet.ServletResponse)
+	 */
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		setAttribute(IDENTITY_ATTRIBUTE, identity);
+		return super.startAsync(servletRequest, servletResponse);
+	}
+	/**
+	 * 
+	 * @return the {@link PreAuthenticationIdentity} applied by this instance
+	 */
+	public PreAuthenticationIdentity getIdentity() {
+		return identity;
+	}
+	/**
+	 * 
+	 * @return the {@link HeaderOverrideTable} used by this instance
+	 */
+	public HeaderOverrideTable getHeaderOverrides() {
+		return headerOverrides;
+	}
 	/**
 	 * 
 	 * @param name
 	 * @return the value of the overridden header, or null if not set.
 	 */
 	protected String getOverrideHeaderValue(String name) {
-		List<String> fromAdditional = additionalHeaders.get(name);
-		if(fromAdditional != null && !fromAdditional.isEmpty()) {
-			return fromAdditional.get(0);
-		}
-		return null;
+		return headerOverrides.getFirstValue(name);
+	}
+	/**
+	 * 
+	 * @param name
+	 * @return the position of the header in {@link #getHeaderOverrides()} if it has a value, otherwise -1
+	 */
+	private int overrideIndex(String name) {
+		int index = headerOverrides.indexOf(name);
+		return index >= 0 && headerOverrides.firstValueAt(index) != null ? index : -1;
 	}
 }
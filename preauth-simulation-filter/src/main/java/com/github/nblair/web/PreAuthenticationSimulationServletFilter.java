@@ -17,19 +17,33 @@
 package com.github.nblair.web;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Servlet {@link Filter} that allows a developer to simulate various "pre-authentication"
@@ -41,6 +55,7 @@ import javax.servlet.http.HttpServletRequest;
   &lt;filter&gt;
     &lt;filter-name&gt;PreAuthenticationSimulationServletFilter&lt;/filter-name&gt;
     &lt;filter-class&gt;com.github.nblair.web.PreAuthenticationSimulationServletFilter&lt;/filter-class&gt;
+    &lt;async-supported&gt;true&lt;/async-supported&gt;
     &lt;init-param&gt;
       &lt;param-name&gt;preauth.remoteUser&lt;/param-name&gt;
       &lt;param-value&gt;someusername&lt;/param-value&gt;
@@ -58,6 +73,8 @@ import javax.servlet.http.HttpServletRequest;
   &lt;filter-mapping&gt;
     &lt;filter-name&gt;PreAuthenticationSimulationServletFilter&lt;/filter-name&gt;
     &lt;url-pattern&gt;/*&lt;/url-pattern&gt;        
+    &lt;dispatcher&gt;REQUEST&lt;/dispatcher&gt;
+    &lt;dispatcher&gt;ASYNC&lt;/dispatcher&gt;
   &lt;/filter-mapping&gt;
   
  </pre>
@@ -80,61 +97,558 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 	 * Name of the filter init-param for specifying the value of REMOTE_USER.
 	 */
 	public static final String INIT_PARAM_PREAUTH_REMOTE_USER = "preauth.remoteUser";
+	/**
+	 * Name of the filter init-param for specifying the path to a {@link PreAuthenticationIdentityRegistry} file.
+	 */
+	public static final String INIT_PARAM_PREAUTH_IDENTITY_FILE = "preauth.identityFile";
+	/**
+	 * Name of the filter init-param for specifying how a request selects an identity from the {@link #INIT_PARAM_PREAUTH_IDENTITY_FILE}.
+	 * 
+	 * @see PreAuthenticationIdentitySelector#parse(String)
+	 */
+	public static final String INIT_PARAM_PREAUTH_IDENTITY_SELECTOR = "preauth.identitySelector";
+	/**
+	 * Name of the filter init-param for specifying the number of users a {@link SyntheticIdentityGenerator} simulates.
+	 * Synthetic identities are only generated when this init-param is set.
+	 */
+	public static final String INIT_PARAM_PREAUTH_SYNTHETIC_USERS = "preauth.syntheticUsers";
+	/**
+	 * Name of the filter init-param for specifying the seed of the {@link SyntheticIdentityGenerator}.
+	 */
+	public static final String INIT_PARAM_PREAUTH_SYNTHETIC_SEED = "preauth.syntheticSeed";
+	/**
+	 * Name of the filter init-param for specifying the template for synthetic REMOTE_USERs.
+	 * 
+	 * @see SyntheticIdentityGenerator#DEFAULT_REMOTE_USER_TEMPLATE
+	 */
+	public static final String INIT_PARAM_PREAUTH_SYNTHETIC_REMOTE_USER = "preauth.syntheticRemoteUser";
+	/**
+	 * Name of the filter init-param for specifying the synthetic header names, same format as {@link #INIT_PARAM_PREAUTH_HEADER_NAMES}.
+	 */
+	public static final String INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_NAMES = "preauth.syntheticHeaderNames";
+	/**
+	 * Name of the filter init-param for specifying the synthetic header value templates, same format as {@link #INIT_PARAM_PREAUTH_HEADER_VALUES}.
+	 */
+	public static final String INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_VALUES = "preauth.syntheticHeaderValues";
+	/**
+	 * Name of the filter init-param for specifying the path to an LDIF file; see {@link LdifDirectory}.
+	 * The simulated REMOTE_USERs found in it get their entry's attributes as headers.
+	 */
+	public static final String INIT_PARAM_PREAUTH_LDIF_FILE = "preauth.ldifFile";
+	/**
+	 * Name of the filter init-param for specifying the attribute holding the REMOTE_USER of each entry in the {@link #INIT_PARAM_PREAUTH_LDIF_FILE}.
+	 * 
+	 * @see LdifDirectory#DEFAULT_REMOTE_USER_ATTRIBUTE
+	 */
+	public static final String INIT_PARAM_PREAUTH_LDIF_REMOTE_USER_ATTRIBUTE = "preauth.ldifRemoteUserAttribute";
+	/**
+	 * Name of the filter init-param for specifying which attributes of the {@link #INIT_PARAM_PREAUTH_LDIF_FILE} entries become headers, 
+	 * semi-colon separated; all of them if not set.
+	 */
+	public static final String INIT_PARAM_PREAUTH_LDIF_ATTRIBUTES = "preauth.ldifAttributes";
 	
-	private String remoteUser;
-	private Map<String, List<String>> additionalHeaders = Collections.emptyMap();
+	/**
+	 * Name of the filter init-param for specifying a properties file, with any of the init-params above as keys, that
+	 * is watched for changes. Values in the file take precedence over the init-params.
+	 */
+	public static final String INIT_PARAM_PREAUTH_CONFIG_FILE = "preauth.configFile";
+	/**
+	 * Name of the filter init-param for specifying a path (within the web application, for example "/preauth-admin") at which the
+	 * filter answers GET and POST requests with a {@link PreAuthenticationSimulationAdmin} instead of passing them along.
+	 */
+	public static final String INIT_PARAM_PREAUTH_ADMIN_PATH = "preauth.adminPath";
+	/**
+	 * Name of the filter init-param for specifying a secret that requests to the {@link #INIT_PARAM_PREAUTH_ADMIN_PATH} must send in the
+	 * {@link PreAuthenticationSimulationAdmin#ADMIN_TOKEN_HEADER} header. Without it, only requests from a loopback address are answered.
+	 */
+	public static final String INIT_PARAM_PREAUTH_ADMIN_TOKEN = "preauth.adminToken";
+	/**
+	 * Name of the filter init-param for registering a {@link PreAuthenticationSimulationAdminMBean} with the platform MBeanServer ("true" or "false", default false).
+	 */
+	public static final String INIT_PARAM_PREAUTH_JMX = "preauth.jmx";
+	
+	private volatile PreAuthenticationSettings settings = PreAuthenticationSettings.DEFAULT;
+	private FilterConfig filterConfig;
+	private Properties initParameters = new Properties();
+	private ConfigurationFileWatcher configurationFileWatcher;
+	private final PreAuthenticationSimulationAdmin admin = new PreAuthenticationSimulationAdmin(this);
+	private String adminPath;
+	private String adminToken;
+	private ObjectName objectName;
 	/**
 	 * @return the remoteUser
 	 */
 	public String getRemoteUser() {
-		return remoteUser;
+		return settings.getIdentity().getRemoteUser();
 	}
 	/**
 	 * @param remoteUser the remoteUser to set
 	 */
-	public void setRemoteUser(String remoteUser) {
-		this.remoteUser = remoteUser;
+	public synchronized void setRemoteUser(String remoteUser) {
+		setIdentity(new PreAuthenticationIdentity(remoteUser, settings.getIdentity().getHeaderOverrides()));
 	}
 	/**
 	 * @return the additionalHeaders
 	 */
 	public Map<String, List<String>> getAdditionalHeaders() {
-		return additionalHeaders;
+		return settings.getIdentity().getHeaderOverrides().asMap();
 	}
 	/**
+	 * Compiles the additionalHeaders into the {@link HeaderOverrideTable} shared by every request.
+	 * 
 	 * @param additionalHeaders the additionalHeaders to set
+	 * @throws IllegalArgumentException if a header name is repeated (ignoring case)
 	 */
-	public void setAdditionalHeaders(Map<String, List<String>> additionalHeaders) {
-		this.additionalHeaders = additionalHeaders;
+	public synchronized void setAdditionalHeaders(Map<String, List<String>> additionalHeaders) {
+		setIdentity(new PreAuthenticationIdentity(settings.getIdentity().getRemoteUser(), HeaderOverrideTable.compile(additionalHeaders)));
 	}
+	/**
+	 * 
+	 * @param headerNames semi-colon separated header names
+	 * @param headerValues semi-colon separated header values, each of which may be comma separated to provide multiple values
+	 * @throws ServletException if the names and values don't match up
+	 */
 	public void setAdditionalHeaders(String headerNames, String headerValues) throws ServletException {
-		setAdditionalHeaders(toMap(headerNames, headerValues));
+		try {
+			setAdditionalHeaders(toMap(headerNames, headerValues));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+	}
+	/**
+	 * @return the compiled additionalHeaders
+	 */
+	public HeaderOverrideTable getHeaderOverrides() {
+		return settings.getIdentity().getHeaderOverrides();
+	}
+	/**
+	 * Replaces the REMOTE_USER and additional headers in one step, so no request sees one without the other.
+	 * 
+	 * @param remoteUser the remoteUser to set, may be null
+	 * @param headerNames semi-colon separated header names, may be null
+	 * @param headerValues semi-colon separated header values, each of which may be comma separated to provide multiple values;
+	 * null if and only if headerNames is
+	 * @throws ServletException if the names and values don't match up
+	 */
+	public void setIdentity(String remoteUser, String headerNames, String headerValues) throws ServletException {
+		if((headerNames == null) != (headerValues == null)) {
+			throw new ServletException("'" + INIT_PARAM_PREAUTH_HEADER_NAMES + "' and '" + INIT_PARAM_PREAUTH_HEADER_VALUES + "' must be given together");
+		}
+		HeaderOverrideTable headerOverrides;
+		try {
+			headerOverrides = HeaderOverrideTable.compile(toMap(headerNames, headerValues));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+		setIdentity(new PreAuthenticationIdentity(remoteUser, headerOverrides));
+	}
+	/**
+	 * @return the identity applied to each request
+	 */
+	public PreAuthenticationIdentity getIdentity() {
+		return settings.getIdentity();
+	}
+	/**
+	 * @param identity the identity to apply to each request, null for none
+	 */
+	public synchronized void setIdentity(PreAuthenticationIdentity identity) {
+		setSettings(settings.withIdentity(identity));
+	}
+	/**
+	 * @return the identityRegistry, may be null
+	 */
+	public PreAuthenticationIdentityRegistry getIdentityRegistry() {
+		return settings.getIdentityRegistry();
+	}
+	/**
+	 * @param identityRegistry identities that requests may select with the {@link #getIdentitySelector()}, null for none
+	 */
+	public synchronized void setIdentityRegistry(PreAuthenticationIdentityRegistry identityRegistry) {
+		setSettings(settings.withIdentityRegistry(identityRegistry));
+	}
+	/**
+	 * @return the identitySelector
+	 */
+	public PreAuthenticationIdentitySelector getIdentitySelector() {
+		return settings.getIdentitySelector();
+	}
+	/**
+	 * @param identitySelector the identitySelector to set
+	 */
+	public synchronized void setIdentitySelector(PreAuthenticationIdentitySelector identitySelector) {
+		setSettings(settings.withIdentitySelector(identitySelector));
+	}
+	/**
+	 * @return the syntheticIdentityGenerator, may be null
+	 */
+	public SyntheticIdentityGenerator getSyntheticIdentityGenerator() {
+		return settings.getSyntheticIdentityGenerator();
+	}
+	/**
+	 * @param syntheticIdentityGenerator generates identities for requests that don't select one from the {@link #getIdentityRegistry()}, null for none
+	 */
+	public synchronized void setSyntheticIdentityGenerator(SyntheticIdentityGenerator syntheticIdentityGenerator) {
+		setSettings(settings.withSyntheticIdentityGenerator(syntheticIdentityGenerator));
+	}
+	/**
+	 * @return the ldifDirectory, may be null
+	 */
+	public LdifDirectory getLdifDirectory() {
+		return settings.getLdifDirectory();
+	}
+	/**
+	 * @param ldifDirectory provides the headers for the simulated REMOTE_USERs it lists, null for none
+	 */
+	public synchronized void setLdifDirectory(LdifDirectory ldifDirectory) {
+		setSettings(settings.withLdifDirectory(ldifDirectory));
+	}
+	/**
+	 * @return the current settings snapshot
+	 */
+	public PreAuthenticationSettings getSettings() {
+		return settings;
+	}
+	/**
+	 * Replaces all settings at once; requests already in progress keep the snapshot they started with.
+	 * 
+	 * @param settings the settings to set, null for {@link PreAuthenticationSettings#DEFAULT}
+	 */
+	public synchronized void setSettings(PreAuthenticationSettings settings) {
+		this.settings = settings != null ? settings : PreAuthenticationSettings.DEFAULT;
+	}
+	/**
+	 * @return the watched configuration file, or null if {@link #INIT_PARAM_PREAUTH_CONFIG_FILE} is not set
+	 */
+	public Path getConfigurationFile() {
+		ConfigurationFileWatcher watcher = configurationFileWatcher;
+		return watcher != null ? watcher.getFile() : null;
 	}
 
 	/* (non-Javadoc)
 	 * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
 	 */
 	public void init(FilterConfig filterConfig) throws ServletException {
-		setRemoteUser(filterConfig.getInitParameter(INIT_PARAM_PREAUTH_REMOTE_USER));
+		this.filterConfig = filterConfig;
+		Properties parameters = new Properties();
+		Enumeration<String> names = filterConfig.getInitParameterNames();
+		while(names != null && names.hasMoreElements()) {
+			String name = names.nextElement();
+			parameters.setProperty(name, filterConfig.getInitParameter(name));
+		}
+		// getInitParameterNames is not always available (mocks, some wrappers), so read the known names directly as well
+		for(String name: new String[] { INIT_PARAM_PREAUTH_REMOTE_USER, INIT_PARAM_PREAUTH_HEADER_NAMES, INIT_PARAM_PREAUTH_HEADER_VALUES,
+				INIT_PARAM_PREAUTH_IDENTITY_FILE, INIT_PARAM_PREAUTH_IDENTITY_SELECTOR, INIT_PARAM_PREAUTH_SYNTHETIC_USERS, 
+				INIT_PARAM_PREAUTH_SYNTHETIC_SEED, INIT_PARAM_PREAUTH_SYNTHETIC_REMOTE_USER, INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_NAMES,
+				INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_VALUES, INIT_PARAM_PREAUTH_LDIF_FILE, INIT_PARAM_PREAUTH_LDIF_REMOTE_USER_ATTRIBUTE,
+				INIT_PARAM_PREAUTH_LDIF_ATTRIBUTES, INIT_PARAM_PREAUTH_CONFIG_FILE, INIT_PARAM_PREAUTH_ADMIN_PATH, INIT_PARAM_PREAUTH_ADMIN_TOKEN,
+				INIT_PARAM_PREAUTH_JMX }) {
+			String value = filterConfig.getInitParameter(name);
+			if(value != null) {
+				parameters.setProperty(name, value);
+			}
+		}
+		this.initParameters = parameters;
+		this.adminPath = parameters.getProperty(INIT_PARAM_PREAUTH_ADMIN_PATH);
+		this.adminToken = parameters.getProperty(INIT_PARAM_PREAUTH_ADMIN_TOKEN);
 		
-		String names = filterConfig.getInitParameter(INIT_PARAM_PREAUTH_HEADER_NAMES);
-		String values = filterConfig.getInitParameter(INIT_PARAM_PREAUTH_HEADER_VALUES);
+		String configFile = parameters.getProperty(INIT_PARAM_PREAUTH_CONFIG_FILE);
+		if(configFile == null) {
+			setSettings(toSettings(parameters));
+		} else {
+			final Path path = Paths.get(configFile);
+			reloadConfigurationFile(path);
+			try {
+				configurationFileWatcher = new ConfigurationFileWatcher(path, new Runnable() {
+					@Override
+					public void run() {
+						try {
+							reloadConfigurationFile(path);
+							log("Reloaded " + path, null);
+						} catch (ServletException | RuntimeException e) {
+							// keep watching: an exception escaping here would end the watcher thread
+							log("Failed to reload " + path + ", keeping previous settings", e);
+						}
+					}
+				});
+			} catch (IOException e) {
+				throw new ServletException("Failed to watch '" + INIT_PARAM_PREAUTH_CONFIG_FILE + "' " + configFile, e);
+			}
+		}
+		if(Boolean.parseBoolean(parameters.getProperty(INIT_PARAM_PREAUTH_JMX))) {
+			try {
+				objectName = new ObjectName("com.github.nblair.web:type=" + PreAuthenticationSimulationServletFilter.class.getSimpleName() 
+						+ ",name=" + ObjectName.quote(String.valueOf(filterConfig.getFilterName())));
+				ManagementFactory.getPlatformMBeanServer().registerMBean(admin, objectName);
+			} catch (JMException e) {
+				objectName = null;
+				throw new ServletException("Failed to register " + PreAuthenticationSimulationAdminMBean.class.getSimpleName(), e);
+			}
+		}
+	}
+	/**
+	 * @return the admin surface for this filter
+	 */
+	public PreAuthenticationSimulationAdmin getAdmin() {
+		return admin;
+	}
+	/**
+	 * @return the {@link #INIT_PARAM_PREAUTH_ADMIN_TOKEN}, or null if not set
+	 */
+	String getAdminToken() {
+		return adminToken;
+	}
+	/**
+	 * @return the name the {@link #getAdmin()} is registered under with the platform MBeanServer, or null if not registered
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+	/**
+	 * Parses the file (overlaid on the init-params) and publishes the result as the new {@link #getSettings()}.
+	 * The previous settings are kept if the file cannot be read or parsed.
+	 * 
+	 * @param file a properties file
+	 * @throws ServletException if the file cannot be read or contains invalid settings
+	 */
+	protected void reloadConfigurationFile(Path file) throws ServletException {
+		Properties parameters = new Properties();
+		parameters.putAll(initParameters);
+		if(Files.exists(file)) {
+			try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				parameters.load(reader);
+			} catch (IOException e) {
+				throw new ServletException("Failed to read '" + INIT_PARAM_PREAUTH_CONFIG_FILE + "' " + file, e);
+			}
+		}
+		setSettings(toSettings(parameters));
+	}
+	/**
+	 * 
+	 * @param parameters the init-params (or configuration file properties)
+	 * @return the settings described by the parameters
+	 * @throws ServletException if any of the parameters are invalid
+	 */
+	protected PreAuthenticationSettings toSettings(Properties parameters) throws ServletException {
+		HeaderOverrideTable headerOverrides;
+		try {
+			headerOverrides = HeaderOverrideTable.compile(toMap(parameters.getProperty(INIT_PARAM_PREAUTH_HEADER_NAMES), 
+					parameters.getProperty(INIT_PARAM_PREAUTH_HEADER_VALUES)));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+		PreAuthenticationIdentity identity = new PreAuthenticationIdentity(parameters.getProperty(INIT_PARAM_PREAUTH_REMOTE_USER), headerOverrides);
 		
-		setAdditionalHeaders(names, values);
+		PreAuthenticationIdentityRegistry registry = null;
+		String identityFile = parameters.getProperty(INIT_PARAM_PREAUTH_IDENTITY_FILE);
+		if(identityFile != null) {
+			try {
+				registry = PreAuthenticationIdentityRegistry.load(Paths.get(identityFile));
+			} catch (IOException e) {
+				throw new ServletException("Failed to load '" + INIT_PARAM_PREAUTH_IDENTITY_FILE + "' " + identityFile, e);
+			}
+		}
+		PreAuthenticationIdentitySelector selector = null;
+		String selectorParameter = parameters.getProperty(INIT_PARAM_PREAUTH_IDENTITY_SELECTOR);
+		if(selectorParameter != null) {
+			try {
+				selector = PreAuthenticationIdentitySelector.parse(selectorParameter);
+			} catch (IllegalArgumentException e) {
+				throw new ServletException(e.getMessage(), e);
+			}
+		}
+		SyntheticIdentityGenerator generator = null;
+		String syntheticUsers = parameters.getProperty(INIT_PARAM_PREAUTH_SYNTHETIC_USERS);
+		if(syntheticUsers != null) {
+			String seed = parameters.getProperty(INIT_PARAM_PREAUTH_SYNTHETIC_SEED);
+			try {
+				generator = new SyntheticIdentityGenerator(
+						Integer.parseInt(syntheticUsers.trim()),
+						seed != null ? Long.parseLong(seed.trim()) : 0L,
+						parameters.getProperty(INIT_PARAM_PREAUTH_SYNTHETIC_REMOTE_USER),
+						toMap(parameters.getProperty(INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_NAMES), 
+								parameters.getProperty(INIT_PARAM_PREAUTH_SYNTHETIC_HEADER_VALUES)));
+			} catch (IllegalArgumentException e) {
+				throw new ServletException(e.getMessage(), e);
+			}
+		}
+		LdifDirectory directory = null;
+		String ldifFile = parameters.getProperty(INIT_PARAM_PREAUTH_LDIF_FILE);
+		if(ldifFile != null) {
+			String attributes = parameters.getProperty(INIT_PARAM_PREAUTH_LDIF_ATTRIBUTES);
+			try {
+				directory = LdifDirectory.load(Paths.get(ldifFile), parameters.getProperty(INIT_PARAM_PREAUTH_LDIF_REMOTE_USER_ATTRIBUTE), 
+						attributes != null ? Arrays.asList(attributes.split(";")) : null);
+			} catch (IOException e) {
+				throw new ServletException("Failed to load '" + INIT_PARAM_PREAUTH_LDIF_FILE + "' " + ldifFile, e);
+			}
+		}
+		return new PreAuthenticationSettings(identity, registry, selector, generator, directory);
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The request is passed along untouched when there is nothing to simulate, or when it
+	 * (or a request it wraps) is already a {@link PreAuthenticationSimulationHttpServletRequestWrapper} for
+	 * the same identity, as happens on FORWARD, INCLUDE and ERROR dispatches.
+	 * 
+	 * An ASYNC dispatch keeps the identity the request started with, even if the settings changed in the meantime: the
+	 * request is passed along as is if it is still wrapped, otherwise the identity recorded in the
+	 * {@link PreAuthenticationSimulationHttpServletRequestWrapper#IDENTITY_ATTRIBUTE} is applied again.
 	 */
 	public void doFilter(ServletRequest request, ServletResponse response,
 			FilterChain chain) throws IOException, ServletException {
-		chain.doFilter(new PreAuthenticationSimulationHttpServletRequestWrapper((HttpServletRequest) request, remoteUser, additionalHeaders),  response);
+		if(adminPath != null && isAdminRequest((HttpServletRequest) request)) {
+			admin.service((HttpServletRequest) request, (HttpServletResponse) response);
+			return;
+		}
+		PreAuthenticationSimulationHttpServletRequestWrapper wrapped = findWrapper(request);
+		if(DispatcherType.ASYNC == request.getDispatcherType()) {
+			if(wrapped != null) {
+				chain.doFilter(request, response);
+				return;
+			}
+			Object started = request.getAttribute(PreAuthenticationSimulationHttpServletRequestWrapper.IDENTITY_ATTRIBUTE);
+			if(started instanceof PreAuthenticationIdentity) {
+				chain.doFilter(new PreAuthenticationSimulationHttpServletRequestWrapper((HttpServletRequest) request, response, (PreAuthenticationIdentity) started), response);
+				return;
+			}
+		}
+		PreAuthenticationSettings current = this.settings;
+		if(current.isEmpty()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		PreAuthenticationIdentity identity = resolveIdentity(current, (HttpServletRequest) request, wrapped);
+		if(identity.isEmpty() || (wrapped != null && wrapped.getIdentity() == identity)) {
+			chain.doFilter(request, response);
+		} else {
+			chain.doFilter(new PreAuthenticationSimulationHttpServletRequestWrapper((HttpServletRequest) request, response, identity),  response);
+		}
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return true if the request is for the {@link #INIT_PARAM_PREAUTH_ADMIN_PATH}
+	 */
+	protected boolean isAdminRequest(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		String contextPath = request.getContextPath();
+		if(uri == null) {
+			return false;
+		}
+		if(contextPath != null && uri.startsWith(contextPath)) {
+			uri = uri.substring(contextPath.length());
+		}
+		return adminPath.equals(uri);
+	}
+	/**
+	 * Resolution order:
+	 * <ol>
+	 * <li>the identity the request selects from the {@link #getIdentityRegistry()},</li>
+	 * <li>a synthetic identity from the {@link #getSyntheticIdentityGenerator()}; keyed by the {@link #getIdentitySelector()} value if present,
+	 * and kept for the remaining dispatches of a request that already has one,</li>
+	 * <li>{@link #getIdentity()}.</li>
+	 * </ol>
+	 * If the {@link #getLdifDirectory()} lists the REMOTE_USER of that identity, the directory's identity (with the
+	 * entry's attributes as headers) is used instead.
+	 * 
+	 * @param settings the settings snapshot for this request
+	 * @param request
+	 * @param wrapped the {@link PreAuthenticationSimulationHttpServletRequestWrapper} already applied to the request, may be null
+	 * @return the identity to simulate for the request
+	 */
+	protected PreAuthenticationIdentity resolveIdentity(PreAuthenticationSettings settings, HttpServletRequest request, PreAuthenticationSimulationHttpServletRequestWrapper wrapped) {
+		PreAuthenticationIdentity identity = selectIdentity(settings, request, wrapped);
+		LdifDirectory directory = settings.getLdifDirectory();
+		if(directory != null) {
+			PreAuthenticationIdentity entry = directory.get(identity.getRemoteUser());
+			if(entry != null) {
+				return entry;
+			}
+		}
+		return identity;
+	}
+	/**
+	 * 
+	 * @param settings the settings snapshot for this request
+	 * @param request
+	 * @param wrapped the {@link PreAuthenticationSimulationHttpServletRequestWrapper} already applied to the request, may be null
+	 * @return the identity from the registry, generator or settings, per {@link #resolveIdentity(PreAuthenticationSettings, HttpServletRequest, PreAuthenticationSimulationHttpServletRequestWrapper)}
+	 */
+	private PreAuthenticationIdentity selectIdentity(PreAuthenticationSettings settings, HttpServletRequest request, PreAuthenticationSimulationHttpServletRequestWrapper wrapped) {
+		PreAuthenticationIdentityRegistry registry = settings.getIdentityRegistry();
+		SyntheticIdentityGenerator generator = settings.getSyntheticIdentityGenerator();
+		if(registry == null && generator == null) {
+			return settings.getIdentity();
+		}
+		String key = settings.getIdentitySelector().select(request);
+		if(registry != null) {
+			PreAuthenticationIdentity selected = registry.get(key);
+			if(selected != null) {
+				return selected;
+			}
+		}
+		if(generator != null) {
+			if(wrapped != null) {
+				return wrapped.getIdentity();
+			}
+			return key != null ? generator.forKey(key) : generator.next();
+		}
+		return settings.getIdentity();
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return the request, or the nearest request it wraps, that is a {@link PreAuthenticationSimulationHttpServletRequestWrapper}; null if none
+	 */
+	protected PreAuthenticationSimulationHttpServletRequestWrapper findWrapper(ServletRequest request) {
+		while(request instanceof ServletRequestWrapper) {
+			if(request instanceof PreAuthenticationSimulationHttpServletRequestWrapper) {
+				return (PreAuthenticationSimulationHttpServletRequestWrapper) request;
+			}
+			request = ((ServletRequestWrapper) request).getRequest();
+		}
+		return null;
 	}
 
 	/* (non-Javadoc)
 	 * @see javax.servlet.Filter#destroy()
 	 */
 	public void destroy() {
+		ConfigurationFileWatcher watcher = configurationFileWatcher;
+		if(watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				log("Failed to stop watching " + watcher.getFile(), e);
+			}
+			configurationFileWatcher = null;
+		}
+		if(objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				log("Failed to unregister " + objectName, e);
+			}
+			objectName = null;
+		}
+	}
+	/**
+	 * Logs to the {@link ServletContext}, when available.
+	 * 
+	 * @param message
+	 * @param throwable may be null
+	 */
+	protected void log(String message, Throwable throwable) {
+		ServletContext servletContext = filterConfig != null ? filterConfig.getServletContext() : null;
+		if(servletContext != null) {
+			if(throwable != null) {
+				servletContext.log(message, throwable);
+			} else {
+				servletContext.log(message);
+			}
+		}
 	}
 
 	/**
@@ -165,7 +679,7 @@ public class PreAuthenticationSimulationServletFilter implements Filter {
 			throw new ServletException("Length of 'preauth.headerNames' (" + headerNames.length + ") and 'preauth.headerValues (" + headerValues.length + ") does not match");
 		}
 		
-		Map<String, List<String>> result = new HashMap<>();
+		Map<String, List<String>> result = new LinkedHashMap<>();
 		for(int i = 0; i < headerNames.length; i++) {			
 			result.put(headerNames[i], Arrays.asList(headerValues[i].split(",", -1)));
 		}
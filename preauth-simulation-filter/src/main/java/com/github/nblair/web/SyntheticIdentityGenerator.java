@@ -0,0 +1,243 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates {@link PreAuthenticationIdentity}s for a fixed number of synthetic users, without storing them.
+ *
+ * User numbers run from 0 to userCount - 1. The REMOTE_USER and every header value are templates in which
+ * "{n}" is replaced with the user number and "{n%K}" with the user number modulo K, for example:
+ * <pre>
+ remoteUser: user-{n}
+ mail:       user-{n}@example.edu
+ isMemberOf: group-{n%10},everyone
+ </pre>
+ *
+ * {@link #next()} picks users from a per-thread SplitMix64 sequence derived from the seed and the thread id, so it
+ * is deterministic per thread and shares no state between request threads.
+ * {@link #forKey(String)} maps a key (for example a value sent by the load test client) to the same user every time.
+ *
+ * @author Nicholas Blair
+ */
+public final class SyntheticIdentityGenerator {
+
+	/**
+	 * Default template for REMOTE_USER.
+	 */
+	public static final String DEFAULT_REMOTE_USER_TEMPLATE = "user-{n}";
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final int userCount;
+	private final long seed;
+	private final Template remoteUser;
+	private final HeaderOverrideTable headerNames;
+	private final Template[][] headerValues;
+	private final ThreadLocal<long[]> sequence = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { mix(seed + Thread.currentThread().getId() * GOLDEN_GAMMA) };
+		}
+	};
+	/**
+	 *
+	 * @param userCount the number of distinct users to generate
+	 * @param seed
+	 * @param remoteUserTemplate template for REMOTE_USER, null for {@link #DEFAULT_REMOTE_USER_TEMPLATE}
+	 * @param headerTemplates header names mapped to their value templates, may be null
+	 * @throws IllegalArgumentException if userCount is not positive or a template is malformed
+	 */
+	public SyntheticIdentityGenerator(int userCount, long seed, String remoteUserTemplate, Map<String, List<String>> headerTemplates) {
+		if(userCount < 1) {
+			throw new IllegalArgumentException("userCount must be positive, was " + userCount);
+		}
+		this.userCount = userCount;
+		this.seed = seed;
+		this.remoteUser = new Template(remoteUserTemplate != null ? remoteUserTemplate : DEFAULT_REMOTE_USER_TEMPLATE);
+		if(headerTemplates == null) {
+			headerTemplates = Collections.emptyMap();
+		}
+		String[] names = new String[headerTemplates.size()];
+		this.headerValues = new Template[names.length][];
+		int i = 0;
+		for(Map.Entry<String, List<String>> entry: headerTemplates.entrySet()) {
+			names[i] = entry.getKey();
+			List<String> values = entry.getValue();
+			headerValues[i] = new Template[values.size()];
+			for(int j = 0; j < values.size(); j++) {
+				headerValues[i][j] = new Template(values.get(j));
+			}
+			i++;
+		}
+		this.headerNames = HeaderOverrideTable.forNames(names);
+	}
+	/**
+	 * @return the number of distinct users
+	 */
+	public int getUserCount() {
+		return userCount;
+	}
+	/**
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	/**
+	 *
+	 * @return the identity for the next user in the current thread's sequence
+	 */
+	public PreAuthenticationIdentity next() {
+		long[] state = sequence.get();
+		state[0] += GOLDEN_GAMMA;
+		return generate(userNumber(mix(state[0])));
+	}
+	/**
+	 *
+	 * @param key
+	 * @return the identity of the user the key maps to; the same key always maps to the same user
+	 */
+	public PreAuthenticationIdentity forKey(String key) {
+		return generate(userNumber(mix(seed ^ key.hashCode())));
+	}
+	/**
+	 *
+	 * @param n the user number, 0 to {@link #getUserCount()} - 1
+	 * @return the identity for the user number
+	 */
+	public PreAuthenticationIdentity generate(int n) {
+		if(n < 0 || n >= userCount) {
+			throw new IllegalArgumentException("user number must be between 0 and " + (userCount - 1) + ", was " + n);
+		}
+		if(headerValues.length == 0) {
+			return new PreAuthenticationIdentity(remoteUser.render(n), HeaderOverrideTable.EMPTY);
+		}
+		String[][] values = new String[headerValues.length][];
+		for(int i = 0; i < headerValues.length; i++) {
+			Template[] templates = headerValues[i];
+			String[] rendered = new String[templates.length];
+			for(int j = 0; j < templates.length; j++) {
+				rendered[j] = templates[j].render(n);
+			}
+			values[i] = rendered;
+		}
+		return new PreAuthenticationIdentity(remoteUser.render(n), headerNames.withRenderedValues(values));
+	}
+	/**
+	 *
+	 * @param hash
+	 * @return a user number derived from the hash
+	 */
+	private int userNumber(long hash) {
+		return (int) ((hash >>> 1) % userCount);
+	}
+	/**
+	 * SplitMix64 finalizer.
+	 *
+	 * @param z
+	 * @return the mixed value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * A string with "{n}" and "{n%K}" placeholders, split into literal segments once.
+	 */
+	static final class Template {
+		private final String source;
+		private final String[] literals;
+		/**
+		 * Modulus for the placeholder following each literal: 0 for "{n}", K for "{n%K}".
+		 */
+		private final int[] moduli;
+		/**
+		 *
+		 * @param source
+		 */
+		Template(String source) {
+			this.source = source;
+			List<String> literalList = new ArrayList<>();
+			List<Integer> moduliList = new ArrayList<>();
+			int start = 0;
+			int open;
+			while((open = source.indexOf("{n", start)) >= 0) {
+				int close = source.indexOf('}', open);
+				if(close < 0) {
+					break;
+				}
+				String placeholder = source.substring(open + 2, close);
+				int modulus;
+				if(placeholder.isEmpty()) {
+					modulus = 0;
+				} else if(placeholder.startsWith("%")) {
+					try {
+						modulus = Integer.parseInt(placeholder.substring(1));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid placeholder in template: " + source, e);
+					}
+					if(modulus < 1) {
+						throw new IllegalArgumentException("Modulus must be positive in template: " + source);
+					}
+				} else {
+					// not a placeholder, keep as literal text
+					literalList.add(source.substring(start, open + 2));
+					moduliList.add(-1);
+					start = open + 2;
+					continue;
+				}
+				literalList.add(source.substring(start, open));
+				moduliList.add(modulus);
+				start = close + 1;
+			}
+			literalList.add(source.substring(start));
+			moduliList.add(-1);
+			this.literals = literalList.toArray(new String[literalList.size()]);
+			this.moduli = new int[moduliList.size()];
+			for(int i = 0; i < moduli.length; i++) {
+				moduli[i] = moduliList.get(i);
+			}
+		}
+		/**
+		 *
+		 * @param n
+		 * @return the template with placeholders replaced for the user number
+		 */
+		String render(int n) {
+			if(literals.length == 1) {
+				return source;
+			}
+			StringBuilder result = new StringBuilder(source.length() + 8);
+			for(int i = 0; i < literals.length; i++) {
+				result.append(literals[i]);
+				if(moduli[i] == 0) {
+					result.append(n);
+				} else if(moduli[i] > 0) {
+					result.append(n % moduli[i]);
+				}
+			}
+			return result.toString();
+		}
+	}
+}
@@ -19,9 +19,11 @@ package com.github.nblair.web;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.junit.Test;
@@ -59,4 +61,67 @@ public class CompositeEnumerationTest {
 		
 		assertEquals("DEFABC", results.toString());
 	}
+	/**
+	 * Verify elements of every source are returned in order.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void n_way() {
+		CompositeEnumeration<String> composite = new CompositeEnumeration<String>(false, 0, 
+				Collections.enumeration(Arrays.asList("A", "B")), Collections.<String>emptyEnumeration(), Collections.enumeration(Arrays.asList("C", "A")));
+		assertEquals("ABCA", join(composite));
+	}
+	/**
+	 * Verify distinct mode skips repeats, including across many elements.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void distinct() {
+		CompositeEnumeration<String> composite = new CompositeEnumeration<String>(true, 2, 
+				Collections.enumeration(Arrays.asList("A", "B", "A")), Collections.enumeration(Arrays.asList("C", "B", null, null)));
+		assertEquals("ABCnull", join(composite));
+		
+		List<Integer> many = new ArrayList<Integer>();
+		for(int i = 0; i < 1000; i++) {
+			many.add(i % 300);
+		}
+		CompositeEnumeration<Integer> numbers = new CompositeEnumeration<Integer>(true, 1, Collections.enumeration(many), Collections.enumeration(many));
+		int count = 0;
+		while(numbers.hasMoreElements()) {
+			assertEquals(Integer.valueOf(count++), numbers.nextElement());
+		}
+		assertEquals(300, count);
+	}
+	/**
+	 * Verify the hooks control what counts as a repeat.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void distinct_ignoring_case() {
+		CompositeEnumeration<String> composite = new CompositeEnumeration<String>(true, 2, 
+				Collections.enumeration(Arrays.asList("Accept", "X-Custom")), Collections.enumeration(Arrays.asList("accept", "Host", "x-CUSTOM"))) {
+			@Override
+			protected int hash(String element) {
+				return HeaderOverrideTable.hash(element);
+			}
+			@Override
+			protected boolean equivalent(String element, String other) {
+				return element.equalsIgnoreCase(other);
+			}
+		};
+		assertEquals("AcceptX-CustomHost", join(composite));
+		assertFalse(composite.hasMoreElements());
+	}
+	/**
+	 * 
+	 * @param enumeration
+	 * @return the elements concatenated
+	 */
+	private static String join(Enumeration<?> enumeration) {
+		StringBuilder results = new StringBuilder();
+		while(enumeration.hasMoreElements()) {
+			results.append(enumeration.nextElement());
+		}
+		return results.toString();
+	}
 }
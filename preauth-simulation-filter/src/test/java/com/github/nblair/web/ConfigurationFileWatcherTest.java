@@ -0,0 +1,83 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ConfigurationFileWatcher}.
+ *
+ * @author Nicholas Blair
+ */
+public class ConfigurationFileWatcherTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Verify the callback runs after the watched file is modified.
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void modify_triggers_callback() throws IOException, InterruptedException {
+		Path file = temporaryFolder.newFile("preauth.properties").toPath();
+		final CountDownLatch changed = new CountDownLatch(1);
+		try (ConfigurationFileWatcher watcher = new ConfigurationFileWatcher(file, new Runnable() {
+			@Override
+			public void run() {
+				changed.countDown();
+			}
+		})) {
+			Files.write(file, "preauth.remoteUser=changed\n".getBytes(StandardCharsets.UTF_8));
+			// some platforms poll for changes, so allow plenty of time
+			assertTrue(changed.await(30, TimeUnit.SECONDS));
+		}
+	}
+	/**
+	 * Verify the callback runs after the watched file is deleted.
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void delete_triggers_callback() throws IOException, InterruptedException {
+		Path file = temporaryFolder.newFile("preauth.properties").toPath();
+		final CountDownLatch changed = new CountDownLatch(1);
+		try (ConfigurationFileWatcher watcher = new ConfigurationFileWatcher(file, new Runnable() {
+			@Override
+			public void run() {
+				changed.countDown();
+			}
+		})) {
+			Files.delete(file);
+			assertTrue(changed.await(30, TimeUnit.SECONDS));
+		}
+	}
+}
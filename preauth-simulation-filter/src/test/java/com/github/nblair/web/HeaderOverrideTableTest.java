@@ -0,0 +1,143 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link HeaderOverrideTable}.
+ *
+ * @author Nicholas Blair
+ */
+public class HeaderOverrideTableTest {
+
+	/**
+	 * Verify null or empty input results in {@link HeaderOverrideTable#EMPTY}.
+	 */
+	@Test
+	public void compile_empty() {
+		assertSame(HeaderOverrideTable.EMPTY, HeaderOverrideTable.compile(null));
+		assertSame(HeaderOverrideTable.EMPTY, HeaderOverrideTable.compile(Collections.<String, List<String>>emptyMap()));
+		assertTrue(HeaderOverrideTable.EMPTY.isEmpty());
+		assertNull(HeaderOverrideTable.EMPTY.getFirstValue("foo"));
+		assertNull(HeaderOverrideTable.EMPTY.getValues("foo"));
+	}
+	/**
+	 * Verify header names are matched ignoring case.
+	 */
+	@Test
+	public void lookup_case_insensitive() {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		headers.put("Shib-Identity-Provider", Arrays.asList("https://idp.example.edu"));
+		headers.put("isMemberOf", Arrays.asList("group1", "group2"));
+		HeaderOverrideTable table = HeaderOverrideTable.compile(headers);
+
+		assertEquals(2, table.size());
+		assertEquals("https://idp.example.edu", table.getFirstValue("shib-identity-provider"));
+		assertEquals("https://idp.example.edu", table.getFirstValue("SHIB-IDENTITY-PROVIDER"));
+		assertEquals(Arrays.asList("group1", "group2"), table.getValues("ISMEMBEROF"));
+		assertTrue(table.contains("ismemberof"));
+		assertFalse(table.contains("ismemberof2"));
+		assertNull(table.getFirstValue("unknown"));
+		assertEquals(Arrays.asList("Shib-Identity-Provider", "isMemberOf"), table.getNames());
+	}
+	/**
+	 * Verify repeated names (ignoring case) are rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void compile_duplicate_names() {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		headers.put("foo", Arrays.asList("a"));
+		headers.put("FOO", Arrays.asList("b"));
+		HeaderOverrideTable.compile(headers);
+	}
+	/**
+	 * Verify integer and date values are pre-parsed.
+	 */
+	@Test
+	public void parsed_values() {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		headers.put("int", Arrays.asList("-42"));
+		headers.put("rfc1123", Arrays.asList("Sun, 06 Nov 1994 08:49:37 GMT"));
+		headers.put("rfc1036", Arrays.asList("Sunday, 06-Nov-94 08:49:37 GMT"));
+		headers.put("asctime", Arrays.asList("Sun Nov  6 08:49:37 1994"));
+		HeaderOverrideTable table = HeaderOverrideTable.compile(headers);
+
+		assertEquals(-42, table.intValueAt(table.indexOf("INT")));
+		assertEquals(784111777000L, table.dateValueAt(table.indexOf("rfc1123")));
+		assertEquals(784111777000L, table.dateValueAt(table.indexOf("rfc1036")));
+		assertEquals(784111777000L, table.dateValueAt(table.indexOf("asctime")));
+	}
+	/**
+	 * Verify {@link NumberFormatException} for a value that is not an integer.
+	 */
+	@Test(expected=NumberFormatException.class)
+	public void intValue_not_a_number() {
+		HeaderOverrideTable table = HeaderOverrideTable.compile(Collections.singletonMap("foo", Arrays.asList("bar")));
+		table.intValueAt(table.indexOf("foo"));
+	}
+	/**
+	 * Verify {@link IllegalArgumentException} for a value that is not a date.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void dateValue_not_a_date() {
+		HeaderOverrideTable table = HeaderOverrideTable.compile(Collections.singletonMap("foo", Arrays.asList("bar")));
+		table.dateValueAt(table.indexOf("foo"));
+	}
+	/**
+	 * Verify identical value lists are shared within a table.
+	 */
+	@Test
+	public void values_shared() {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		headers.put("a", Arrays.asList("x", "y"));
+		headers.put("b", Arrays.asList("x", "y"));
+		HeaderOverrideTable table = HeaderOverrideTable.compile(headers);
+		assertSame(table.getValues("a"), table.getValues("b"));
+	}
+	/**
+	 * Verify the fingerprint ignores the case of names, but not of values, and depends on every value.
+	 */
+	@Test
+	public void fingerprint() {
+		HeaderOverrideTable table = HeaderOverrideTable.compile(ImmutableMap.<String, List<String>>of("mail", Arrays.asList("jdoe@example.edu"), 
+				"isMemberOf", Arrays.asList("group1", "group2")));
+		String fingerprint = table.fingerprint();
+		assertEquals(16, fingerprint.length());
+		assertEquals(fingerprint, HeaderOverrideTable.compile(ImmutableMap.<String, List<String>>of("MAIL", Arrays.asList("jdoe@example.edu"), 
+				"ISMEMBEROF", Arrays.asList("group1", "group2"))).fingerprint());
+		assertFalse(fingerprint.equals(HeaderOverrideTable.compile(ImmutableMap.<String, List<String>>of("mail", Arrays.asList("jdoe@example.edu"), 
+				"isMemberOf", Arrays.asList("group1", "GROUP2"))).fingerprint()));
+		assertFalse(fingerprint.equals(HeaderOverrideTable.compile(ImmutableMap.<String, List<String>>of("mail", Arrays.asList("jdoe@example.edu"), 
+				"isMemberOf", Arrays.asList("group1,group2"))).fingerprint()));
+		assertFalse(HeaderOverrideTable.EMPTY.fingerprint().equals(fingerprint));
+	}
+}
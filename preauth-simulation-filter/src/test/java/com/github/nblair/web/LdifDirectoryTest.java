@@ -0,0 +1,145 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LdifDirectory}.
+ *
+ * @author Nicholas Blair
+ */
+public class LdifDirectoryTest {
+
+	private static final String EXAMPLE = "version: 1\n"
+			+ "\n"
+			+ "# people\n"
+			+ "dn: ou=people,dc=example,dc=edu\n"
+			+ "objectClass: organizationalUnit\n"
+			+ "ou: people\n"
+			+ "\n"
+			+ "dn: uid=jdoe,ou=people,dc=example,dc=edu\n"
+			+ "objectClass: person\n"
+			+ "uid: jdoe\n"
+			+ "mail: jdoe@example.edu\n"
+			+ "isMemberOf: group1\n"
+			+ "ISMEMBEROF: group2\n"
+			+ "eduPersonEntitlement: urn:mace:example.edu:\n"
+			+ " entitlement:1\n"
+			+ "\n"
+			+ "dn:: dWlkPWFzbWl0aCxvdT1wZW9wbGUsZGM9ZXhhbXBsZSxkYz1lZHU=\n"
+			+ "uid: asmith\n"
+			+ "cn;lang-en:: w4FsdmFybyBTbWl0aA==\n"
+			+ "isMemberOf: group1\n";
+
+	/**
+	 * Confirm expected result for a sample file, with every attribute as a header.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_example() throws IOException {
+		LdifDirectory directory = LdifDirectory.load(new StringReader(EXAMPLE), null, null);
+		assertEquals(2, directory.size());
+
+		PreAuthenticationIdentity jdoe = directory.get("jdoe");
+		assertEquals("jdoe", jdoe.getRemoteUser());
+		assertEquals(Arrays.asList("objectClass", "uid", "mail", "isMemberOf", "eduPersonEntitlement"), jdoe.getHeaderOverrides().getNames());
+		assertEquals(Arrays.asList("group1", "group2"), jdoe.getHeaderOverrides().getValues("ismemberof"));
+		assertEquals("urn:mace:example.edu:entitlement:1", jdoe.getHeaderOverrides().getFirstValue("eduPersonEntitlement"));
+		assertSame(jdoe, directory.get("jdoe"));
+
+		PreAuthenticationIdentity asmith = directory.get("asmith");
+		assertEquals("\u00c1lvaro Smith", asmith.getHeaderOverrides().getFirstValue("cn"));
+		// values repeated across entries are stored once
+		assertSame(jdoe.getHeaderOverrides().getFirstValue("isMemberOf"), asmith.getHeaderOverrides().getFirstValue("isMemberOf"));
+
+		assertNull(directory.get("unknown"));
+		assertNull(directory.get(null));
+	}
+	/**
+	 * Verify only the requested attributes become headers, named as requested, and the REMOTE_USER attribute can be changed.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_attributes() throws IOException {
+		LdifDirectory directory = LdifDirectory.load(new StringReader(EXAMPLE), "mail", Arrays.asList("IsMemberOf", "eduPersonEntitlement"));
+		assertEquals(1, directory.size());
+		assertNull(directory.get("jdoe"));
+		HeaderOverrideTable headers = directory.get("jdoe@example.edu").getHeaderOverrides();
+		assertEquals(Arrays.asList("IsMemberOf", "eduPersonEntitlement"), headers.getNames());
+		assertEquals(Arrays.asList("group1", "group2"), headers.getValues("isMemberOf"));
+
+		directory = LdifDirectory.load(new StringReader(EXAMPLE), null, Arrays.asList("eduPersonEntitlement"));
+		assertTrue(directory.get("asmith").getHeaderOverrides().isEmpty());
+	}
+	/**
+	 * Verify many entries can be loaded and found.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_many() throws IOException {
+		StringBuilder ldif = new StringBuilder();
+		for(int i = 0; i < 5000; i++) {
+			ldif.append("dn: uid=user").append(i).append(",ou=people,dc=example,dc=edu\n")
+				.append("uid: user").append(i).append('\n')
+				.append("isMemberOf: group").append(i % 10).append('\n')
+				.append("isMemberOf: everyone\n\n");
+		}
+		LdifDirectory directory = LdifDirectory.load(new StringReader(ldif.toString()), null, Collections.singletonList("isMemberOf"));
+		assertEquals(5000, directory.size());
+		assertEquals(Arrays.asList("group7", "everyone"), directory.get("user4567").getHeaderOverrides().getValues("isMemberOf"));
+	}
+	/**
+	 * Verify malformed files are rejected with the line number.
+	 */
+	@Test
+	public void load_malformed() {
+		assertMalformed("uid: jdoe\n", "line 1: expected 'dn:' to start an entry");
+		assertMalformed("dn: uid=jdoe\nuid jdoe\n", "line 2: expected 'attribute: value'");
+		assertMalformed(" uid: jdoe\n", "line 1: continuation without a preceding line");
+		assertMalformed("dn: uid=jdoe\nuid: jdoe\n\ndn: uid=jdoe,ou=other\nuid: jdoe\n", "line 4: REMOTE_USER 'jdoe' is listed more than once");
+		assertMalformed("dn: uid=jdoe\nchangetype: delete\n", "line 2: change records are not supported");
+		assertMalformed("dn: uid=jdoe\njpegPhoto:< file:///tmp/jdoe.jpg\n", "line 2: URL values are not supported");
+	}
+	/**
+	 *
+	 * @param ldif
+	 * @param message
+	 */
+	private static void assertMalformed(String ldif, String message) {
+		try {
+			LdifDirectory.load(new StringReader(ldif), null, null);
+			fail("expected IOException for " + ldif);
+		} catch (IOException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PreAuthenticationIdentityRegistry}.
+ *
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationIdentityRegistryTest {
+
+	/**
+	 * Confirm expected result for a sample file.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_example() throws IOException {
+		PreAuthenticationIdentityRegistry registry = PreAuthenticationIdentityRegistry.load(new StringReader(
+				"# sample\n"
+				+ "REMOTE_USER;mail;isMemberOf\n"
+				+ "\n"
+				+ "jdoe;jdoe@example.edu;group1,group2\n"
+				+ "asmith;asmith@example.edu;\n"));
+		assertEquals(2, registry.size());
+		assertEquals(Arrays.asList("mail", "isMemberOf"), registry.getHeaderNames());
+
+		PreAuthenticationIdentity jdoe = registry.get("jdoe");
+		assertEquals("jdoe", jdoe.getRemoteUser());
+		assertEquals("jdoe@example.edu", jdoe.getHeaderOverrides().getFirstValue("mail"));
+		assertEquals(Arrays.asList("group1", "group2"), jdoe.getHeaderOverrides().getValues("ismemberof"));
+		assertSame(jdoe, registry.get("jdoe"));
+
+		assertEquals("", registry.get("asmith").getHeaderOverrides().getFirstValue("isMemberOf"));
+		assertNull(registry.get("unknown"));
+		assertNull(registry.get(null));
+	}
+	/**
+	 * Verify a file listing only REMOTE_USERs.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_remoteUsers_only() throws IOException {
+		PreAuthenticationIdentityRegistry registry = PreAuthenticationIdentityRegistry.load(new StringReader("REMOTE_USER\nuser1\nuser2\n"));
+		assertEquals(2, registry.size());
+		assertEquals("user2", registry.get("user2").getRemoteUser());
+		assertTrue(registry.get("user2").getHeaderOverrides().isEmpty());
+	}
+	/**
+	 * Verify many identities can be loaded and found.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void load_many() throws IOException {
+		StringBuilder file = new StringBuilder("REMOTE_USER;mail\n");
+		for(int i = 0; i < 10000; i++) {
+			file.append("user-").append(i).append(';').append("user-").append(i).append("@example.edu\n");
+		}
+		PreAuthenticationIdentityRegistry registry = PreAuthenticationIdentityRegistry.load(new StringReader(file.toString()));
+		assertEquals(10000, registry.size());
+		for(int i = 0; i < 10000; i++) {
+			assertEquals("user-" + i + "@example.edu", registry.get("user-" + i).getHeaderOverrides().getFirstValue("MAIL"));
+		}
+	}
+	/**
+	 * Verify a row with the wrong number of values is rejected.
+	 *
+	 * @throws IOException
+	 */
+	@Test(expected=IOException.class)
+	public void load_mismatched_columns() throws IOException {
+		PreAuthenticationIdentityRegistry.load(new StringReader("REMOTE_USER;mail;isMemberOf\njdoe;jdoe@example.edu\n"));
+	}
+	/**
+	 * Verify a REMOTE_USER listed twice is rejected.
+	 *
+	 * @throws IOException
+	 */
+	@Test(expected=IOException.class)
+	public void load_duplicate_remoteUser() throws IOException {
+		PreAuthenticationIdentityRegistry.load(new StringReader("REMOTE_USER;mail\njdoe;a\njdoe;b\n"));
+	}
+}
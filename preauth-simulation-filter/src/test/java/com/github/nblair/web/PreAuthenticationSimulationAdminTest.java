@@ -0,0 +1,269 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PreAuthenticationSimulationAdmin}.
+ *
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationSimulationAdminTest {
+
+	/**
+	 * Verify setIdentity replaces the REMOTE_USER and headers together, and the getters round trip.
+	 */
+	@Test
+	public void setIdentity_round_trip() {
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		PreAuthenticationSimulationAdmin admin = new PreAuthenticationSimulationAdmin(filter);
+		PreAuthenticationIdentity before = filter.getIdentity();
+		admin.setIdentity("jdoe", "mail;isMemberOf;empty", "jdoe@example.edu;group1,group2;");
+		
+		assertEquals("jdoe", filter.getRemoteUser());
+		assertEquals(Arrays.asList("group1", "group2"), filter.getHeaderOverrides().getValues("ISMEMBEROF"));
+		assertEquals("jdoe", admin.getRemoteUser());
+		assertEquals("mail;isMemberOf;empty", admin.getHeaderNames());
+		assertEquals("jdoe@example.edu;group1,group2;", admin.getHeaderValues());
+		assertTrue(before.isEmpty());
+		
+		admin.clearIdentity();
+		assertNull(admin.getRemoteUser());
+		assertEquals("", admin.getHeaderNames());
+		assertSame(PreAuthenticationIdentity.NONE, filter.getIdentity());
+	}
+	/**
+	 * Verify mismatched names and values are rejected and the identity is unchanged.
+	 */
+	@Test
+	public void setIdentity_mismatched() {
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		PreAuthenticationSimulationAdmin admin = new PreAuthenticationSimulationAdmin(filter);
+		admin.setIdentity("jdoe", null, null);
+		PreAuthenticationIdentity before = filter.getIdentity();
+		try {
+			admin.setIdentity("asmith", "a;b", "1");
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertSame(before, filter.getIdentity());
+	}
+	/**
+	 * Verify a POST to the admin path replaces the identity and the response describes it.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_admin_post() throws IOException, ServletException {
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.adminPath")).thenReturn("/preauth-admin");
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getContextPath()).thenReturn("/app");
+		when(request.getRequestURI()).thenReturn("/app/preauth-admin");
+		when(request.getMethod()).thenReturn("POST");
+		when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+		when(request.getParameter("preauth.remoteUser")).thenReturn("jdoe");
+		when(request.getParameter("preauth.headerNames")).thenReturn("mail");
+		when(request.getParameter("preauth.headerValues")).thenReturn("jdoe@example.edu");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		StringWriter body = new StringWriter();
+		when(response.getWriter()).thenReturn(new PrintWriter(body));
+		FilterChain chain = mock(FilterChain.class);
+		
+		filter.doFilter(request, response, chain);
+		verify(chain, never()).doFilter(request, response);
+		assertEquals("jdoe", filter.getRemoteUser());
+		assertEquals("preauth.remoteUser=jdoe\npreauth.headerNames=mail\npreauth.headerValues=jdoe@example.edu\n", body.toString());
+	}
+	/**
+	 * Verify an invalid POST is answered with 400.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void service_invalid() throws IOException {
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getMethod()).thenReturn("POST");
+		when(request.getRemoteAddr()).thenReturn("::1");
+		when(request.getParameter("preauth.headerNames")).thenReturn("a;b");
+		when(request.getParameter("preauth.headerValues")).thenReturn("1");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		
+		new PreAuthenticationSimulationAdmin(filter).service(request, response);
+		verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+		assertTrue(filter.getIdentity().isEmpty());
+	}
+	/**
+	 * Verify a POST with header names but no values is answered with 400, rather than clearing the headers.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void service_names_without_values() throws IOException {
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		PreAuthenticationSimulationAdmin admin = new PreAuthenticationSimulationAdmin(filter);
+		admin.setIdentity("jdoe", "mail", "jdoe@example.edu");
+		PreAuthenticationIdentity before = filter.getIdentity();
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getMethod()).thenReturn("POST");
+		when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+		when(request.getParameter("preauth.remoteUser")).thenReturn("asmith");
+		when(request.getParameter("preauth.headerNames")).thenReturn("mail");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		
+		admin.service(request, response);
+		verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+		assertSame(before, filter.getIdentity());
+	}
+	/**
+	 * Verify requests from other hosts, or from a page of another origin, are refused when no token is configured.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void service_forbidden() throws IOException {
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		PreAuthenticationSimulationAdmin admin = new PreAuthenticationSimulationAdmin(filter);
+		HttpServletRequest remote = post("192.0.2.10", "asmith");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		admin.service(remote, response);
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+		
+		HttpServletRequest crossOrigin = post("127.0.0.1", "asmith");
+		when(crossOrigin.getHeader("Host")).thenReturn("localhost:8080");
+		when(crossOrigin.getHeader("Origin")).thenReturn("https://attacker.example.com");
+		response = mock(HttpServletResponse.class);
+		admin.service(crossOrigin, response);
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+		assertTrue(filter.getIdentity().isEmpty());
+		
+		HttpServletRequest sameOrigin = post("127.0.0.1", "asmith");
+		when(sameOrigin.getHeader("Host")).thenReturn("localhost:8080");
+		when(sameOrigin.getHeader("Origin")).thenReturn("http://localhost:8080");
+		response = mock(HttpServletResponse.class);
+		when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+		admin.service(sameOrigin, response);
+		assertEquals("asmith", filter.getRemoteUser());
+	}
+	/**
+	 * Verify that with preauth.adminToken set, only requests carrying the token are answered, from any address.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void service_admin_token() throws IOException, ServletException {
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.adminToken")).thenReturn("s3cret");
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		PreAuthenticationSimulationAdmin admin = filter.getAdmin();
+		
+		HttpServletRequest missing = post("127.0.0.1", "asmith");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		admin.service(missing, response);
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+		
+		HttpServletRequest wrong = post("192.0.2.10", "asmith");
+		when(wrong.getHeader(PreAuthenticationSimulationAdmin.ADMIN_TOKEN_HEADER)).thenReturn("guess");
+		response = mock(HttpServletResponse.class);
+		admin.service(wrong, response);
+		verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+		assertTrue(filter.getIdentity().isEmpty());
+		
+		HttpServletRequest valid = post("192.0.2.10", "asmith");
+		when(valid.getHeader(PreAuthenticationSimulationAdmin.ADMIN_TOKEN_HEADER)).thenReturn("s3cret");
+		response = mock(HttpServletResponse.class);
+		when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+		admin.service(valid, response);
+		assertEquals("asmith", filter.getRemoteUser());
+	}
+	/**
+	 * 
+	 * @param remoteAddress
+	 * @param remoteUser
+	 * @return a POST setting the REMOTE_USER, from the remoteAddress
+	 */
+	private static HttpServletRequest post(String remoteAddress, String remoteUser) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getMethod()).thenReturn("POST");
+		when(request.getRemoteAddr()).thenReturn(remoteAddress);
+		when(request.getParameter("preauth.remoteUser")).thenReturn(remoteUser);
+		return request;
+	}
+	/**
+	 * Verify the MBean is registered while the filter is in service, and can change the identity.
+	 * 
+	 * @throws ServletException
+	 * @throws JMException
+	 */
+	@Test
+	public void init_jmx() throws ServletException, JMException {
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getFilterName()).thenReturn("jmxTest");
+		when(filterConfig.getInitParameter("preauth.jmx")).thenReturn("true");
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertTrue(server.isRegistered(filter.getObjectName()));
+			server.invoke(filter.getObjectName(), "setIdentity", new Object[] { "jdoe", "mail", "jdoe@example.edu" }, 
+					new String[] { String.class.getName(), String.class.getName(), String.class.getName() });
+			assertEquals("jdoe", filter.getRemoteUser());
+			assertEquals("mail", server.getAttribute(filter.getObjectName(), "HeaderNames"));
+		} finally {
+			ObjectName objectName = filter.getObjectName();
+			filter.destroy();
+			assertFalse(server.isRegistered(objectName));
+		}
+	}
+}
@@ -18,11 +18,18 @@ package com.github.nblair.web;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,16 +37,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -50,6 +64,9 @@ import com.google.common.collect.ImmutableMap;
  */
 public class PreAuthenticationSimulationServletFilterTest {
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	/**
 	 * Setup an instance of {@link PreAuthenticationSimulationServletFilter} with nothing
 	 * provided for username or additionalHeaders; confirm expected request behavior unmodified.
@@ -67,6 +84,114 @@ public class PreAuthenticationSimulationServletFilterTest {
 		
 		new PreAuthenticationSimulationServletFilter().doFilter(request, response, chain);
 	}
+	/**
+	 * Verify the request itself (not a wrapper) is passed along when the filter has nothing to simulate.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_no_overrides_passthrough() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		
+		new PreAuthenticationSimulationServletFilter().doFilter(request, response, chain);
+		verify(chain).doFilter(request, response);
+	}
+	/**
+	 * Verify a request that was already wrapped by the filter (directly, or beneath another wrapper) is not wrapped again,
+	 * as happens on FORWARD/INCLUDE/ERROR dispatches.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_already_wrapped() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setRemoteUser("override-remoteUser");
+		
+		FilterChain chain = mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+		ArgumentCaptor<ServletRequest> captor = ArgumentCaptor.forClass(ServletRequest.class);
+		verify(chain).doFilter(captor.capture(), eq(response));
+		ServletRequest wrapped = captor.getValue();
+		assertTrue(wrapped instanceof PreAuthenticationSimulationHttpServletRequestWrapper);
+		
+		FilterChain dispatchChain = mock(FilterChain.class);
+		filter.doFilter(wrapped, response, dispatchChain);
+		verify(dispatchChain).doFilter(wrapped, response);
+		
+		HttpServletRequestWrapper outer = new HttpServletRequestWrapper((HttpServletRequest) wrapped);
+		filter.doFilter(outer, response, dispatchChain);
+		verify(dispatchChain).doFilter(outer, response);
+		
+		// a new identity must be applied on top of the previous one
+		filter.setRemoteUser("another-remoteUser");
+		filter.doFilter(wrapped, response, new SimpleAssertionFilterChain("another-remoteUser", Collections.<String, String>emptyMap()));
+	}
+	/**
+	 * Verify starting asynchronous processing on the wrapper keeps the wrapper (and so the identity) in the {@link AsyncContext},
+	 * and records the identity in the request attribute.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_startAsync() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setRemoteUser("override-remoteUser");
+		
+		FilterChain chain = mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+		ArgumentCaptor<ServletRequest> captor = ArgumentCaptor.forClass(ServletRequest.class);
+		verify(chain).doFilter(captor.capture(), eq(response));
+		PreAuthenticationSimulationHttpServletRequestWrapper wrapped = (PreAuthenticationSimulationHttpServletRequestWrapper) captor.getValue();
+		when(request.startAsync(wrapped, response)).thenReturn(asyncContext);
+		
+		assertSame(asyncContext, wrapped.startAsync());
+		verify(request).startAsync(wrapped, response);
+		verify(request).setAttribute(PreAuthenticationSimulationHttpServletRequestWrapper.IDENTITY_ATTRIBUTE, wrapped.getIdentity());
+	}
+	/**
+	 * Verify an ASYNC dispatch keeps the identity the request started with, whether the container dispatches the wrapper 
+	 * or the original request, even after the filter's identity changes.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_async_dispatch() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setRemoteUser("override-remoteUser");
+		PreAuthenticationIdentity started = filter.getIdentity();
+		filter.setRemoteUser("another-remoteUser");
+		
+		HttpServletRequest asyncRequest = mock(HttpServletRequest.class);
+		when(asyncRequest.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+		PreAuthenticationSimulationHttpServletRequestWrapper wrapped = new PreAuthenticationSimulationHttpServletRequestWrapper(asyncRequest, response, started);
+		FilterChain chain = mock(FilterChain.class);
+		filter.doFilter(wrapped, response, chain);
+		verify(chain).doFilter(wrapped, response);
+		
+		when(asyncRequest.getAttribute(PreAuthenticationSimulationHttpServletRequestWrapper.IDENTITY_ATTRIBUTE)).thenReturn(started);
+		FilterChain dispatchChain = mock(FilterChain.class);
+		filter.doFilter(asyncRequest, response, dispatchChain);
+		ArgumentCaptor<ServletRequest> captor = ArgumentCaptor.forClass(ServletRequest.class);
+		verify(dispatchChain).doFilter(captor.capture(), eq(response));
+		assertSame(started, ((PreAuthenticationSimulationHttpServletRequestWrapper) captor.getValue()).getIdentity());
+		assertEquals("override-remoteUser", ((HttpServletRequest) captor.getValue()).getRemoteUser());
+		
+		// a REQUEST dispatch gets the current identity
+		filter.doFilter(request, response, new SimpleAssertionFilterChain("another-remoteUser", Collections.<String, String>emptyMap()));
+	}
 	/**
 	 * Populate {@link PreAuthenticationSimulationServletFilter#setRemoteUser(String)} and verify that the
 	 * {@link HttpServletRequest#getRemoteUser()} reflects the value.
@@ -106,6 +231,117 @@ public class PreAuthenticationSimulationServletFilterTest {
 		FilterChain chain = new SimpleAssertionFilterChain(null, ImmutableMap.of("foo1", "bar1", "foo2", "bar2"));
 		filter.doFilter(request, response, chain);
 	}
+	/**
+	 * Verify that overridden headers are found regardless of the case of the requested name.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_override_header_case_insensitive() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setAdditionalHeaders("Shib-Identity-Provider;Content-Length", "https://idp.example.edu;42");
+		
+		FilterChain chain = new SimpleAssertionFilterChain(null, ImmutableMap.of("shib-identity-provider", "https://idp.example.edu", "SHIB-IDENTITY-PROVIDER", "https://idp.example.edu")) {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				super.doFilter(request, response);
+				assertEquals(42, ((HttpServletRequest)request).getIntHeader("content-length"));
+			}
+		};
+		filter.doFilter(request, response, chain);
+	}
+	/**
+	 * Verify getHeaderNames returns each name once when the request already has an overridden header.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_header_names_distinct() throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeaderNames()).thenReturn(Collections.enumeration(Arrays.asList("host", "shib-identity-provider")));
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setAdditionalHeaders("Shib-Identity-Provider;mail", "https://idp.example.edu;jdoe@example.edu");
+		
+		FilterChain chain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				assertEquals(Arrays.asList("Shib-Identity-Provider", "mail", "host"), Collections.list(((HttpServletRequest)request).getHeaderNames()));
+			}
+		};
+		filter.doFilter(request, response, chain);
+	}
+	/**
+	 * Verify requests select their identity from the {@link PreAuthenticationIdentityRegistry}, and fall back to
+	 * the configured remoteUser when they don't select a known identity.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_identity_registry() throws IOException, ServletException {
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.setRemoteUser("default-remoteUser");
+		filter.setIdentityRegistry(PreAuthenticationIdentityRegistry.load(new StringReader("REMOTE_USER;mail\njdoe;jdoe@example.edu\n")));
+		filter.setIdentitySelector(PreAuthenticationIdentitySelector.parse("header:X-Load-Test-User"));
+		
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("X-Load-Test-User")).thenReturn("jdoe");
+		filter.doFilter(request, response, new SimpleAssertionFilterChain("jdoe", ImmutableMap.of("mail", "jdoe@example.edu")));
+		
+		HttpServletRequest unknown = mock(HttpServletRequest.class);
+		when(unknown.getHeader("X-Load-Test-User")).thenReturn("unknown");
+		filter.doFilter(unknown, response, new SimpleAssertionFilterChain("default-remoteUser", Collections.<String, String>emptyMap()));
+	}
+	/**
+	 * Verify synthetic identities configured through init-params, and that a synthetic identity is kept
+	 * when the request is dispatched through the filter again.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_synthetic_identities() throws IOException, ServletException {
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.syntheticUsers")).thenReturn("50");
+		when(filterConfig.getInitParameter("preauth.syntheticSeed")).thenReturn("12345");
+		when(filterConfig.getInitParameter("preauth.syntheticHeaderNames")).thenReturn("mail");
+		when(filterConfig.getInitParameter("preauth.syntheticHeaderValues")).thenReturn("user-{n}@example.edu");
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		filter.doFilter(mock(HttpServletRequest.class), response, chain);
+		ArgumentCaptor<ServletRequest> captor = ArgumentCaptor.forClass(ServletRequest.class);
+		verify(chain).doFilter(captor.capture(), eq(response));
+		HttpServletRequest wrapped = (HttpServletRequest) captor.getValue();
+		assertTrue(wrapped.getRemoteUser().startsWith("user-"));
+		assertEquals(wrapped.getRemoteUser() + "@example.edu", wrapped.getHeader("mail"));
+		
+		FilterChain dispatchChain = mock(FilterChain.class);
+		filter.doFilter(wrapped, response, dispatchChain);
+		verify(dispatchChain).doFilter(wrapped, response);
+	}
+	/**
+	 * Verify {@link PreAuthenticationIdentitySelector} for cookies and parameters.
+	 */
+	@Test
+	public void identitySelector_cookie_parameter() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getCookies()).thenReturn(new Cookie[] { new Cookie("other", "x"), new Cookie("preauth-identity", "jdoe") });
+		when(request.getParameter("as")).thenReturn("asmith");
+		assertEquals("jdoe", PreAuthenticationIdentitySelector.parse("cookie:preauth-identity").select(request));
+		assertEquals("asmith", PreAuthenticationIdentitySelector.parse("parameter:as").select(request));
+		assertNull(PreAuthenticationIdentitySelector.parse("header:as").select(request));
+	}
 	/**
 	 * Verify behavior of {@link PreAuthenticationSimulationServletFilter#init(FilterConfig)} when no init-params
 	 * are provided.
@@ -168,6 +404,127 @@ public class PreAuthenticationSimulationServletFilterTest {
 		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
 		filter.init(filterConfig);
 	}
+	/**
+	 * Verify the headers for the simulated REMOTE_USER come from the LDIF file, and the configured headers are used for
+	 * REMOTE_USERs it doesn't list.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void doFilter_ldif_directory() throws IOException, ServletException {
+		Path file = temporaryFolder.newFile("directory.ldif").toPath();
+		Files.write(file, ("dn: uid=jdoe,ou=people,dc=example,dc=edu\nuid: jdoe\nmail: jdoe@example.edu\nisMemberOf: group1\nisMemberOf: group2\n\n"
+				+ "dn: uid=asmith,ou=people,dc=example,dc=edu\nuid: asmith\nmail: asmith@example.edu\n").getBytes(StandardCharsets.UTF_8));
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.remoteUser")).thenReturn("jdoe");
+		when(filterConfig.getInitParameter("preauth.headerNames")).thenReturn("isMemberOf");
+		when(filterConfig.getInitParameter("preauth.headerValues")).thenReturn("configured");
+		when(filterConfig.getInitParameter("preauth.ldifFile")).thenReturn(file.toString());
+		when(filterConfig.getInitParameter("preauth.ldifAttributes")).thenReturn("isMemberOf");
+		final PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		assertEquals(2, filter.getLdifDirectory().size());
+		
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		filter.doFilter(mock(HttpServletRequest.class), response, new SimpleAssertionFilterChain("jdoe", ImmutableMap.of("isMemberOf", "group1")));
+		filter.doFilter(mock(HttpServletRequest.class), response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				PreAuthenticationSimulationHttpServletRequestWrapper simulated = (PreAuthenticationSimulationHttpServletRequestWrapper) request;
+				assertEquals(Arrays.asList("group1", "group2"), simulated.getHeaderOverrides().getValues("isMemberOf"));
+				assertNull(simulated.getHeader("mail"));
+				assertSame(filter.getLdifDirectory().get("jdoe"), simulated.getIdentity());
+			}
+		});
+		
+		filter.setRemoteUser("unlisted");
+		filter.doFilter(mock(HttpServletRequest.class), response, new SimpleAssertionFilterChain("unlisted", ImmutableMap.of("isMemberOf", "configured")));
+		filter.setRemoteUser("asmith");
+		filter.doFilter(mock(HttpServletRequest.class), response, new SimpleAssertionFilterChain("asmith", Collections.<String, String>singletonMap("isMemberOf", null)));
+	}
+	/**
+	 * Verify settings from the configuration file override the init-params, and are replaced when the file is reloaded.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void reloadConfigurationFile() throws IOException, ServletException {
+		Path file = temporaryFolder.newFile("preauth.properties").toPath();
+		Files.write(file, "preauth.remoteUser=first\npreauth.headerNames=mail\npreauth.headerValues=first@example.edu\n".getBytes(StandardCharsets.UTF_8));
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.remoteUser")).thenReturn("fromInitParam");
+		when(filterConfig.getInitParameter("preauth.configFile")).thenReturn(file.toString());
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		try {
+			assertEquals("first", filter.getRemoteUser());
+			assertEquals("first@example.edu", filter.getHeaderOverrides().getFirstValue("mail"));
+			PreAuthenticationSettings before = filter.getSettings();
+			
+			Files.write(file, "preauth.headerNames=mail\npreauth.headerValues=second@example.edu\n".getBytes(StandardCharsets.UTF_8));
+			filter.reloadConfigurationFile(file);
+			assertEquals("fromInitParam", filter.getRemoteUser());
+			assertEquals("second@example.edu", filter.getHeaderOverrides().getFirstValue("mail"));
+			// the previous snapshot is untouched for requests still using it
+			assertEquals("first", before.getIdentity().getRemoteUser());
+		} finally {
+			filter.destroy();
+		}
+	}
+	/**
+	 * Verify deleting the configuration file falls back to the init-params.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void reloadConfigurationFile_deleted() throws IOException, ServletException {
+		Path file = temporaryFolder.newFile("preauth.properties").toPath();
+		Files.write(file, "preauth.remoteUser=first\n".getBytes(StandardCharsets.UTF_8));
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.remoteUser")).thenReturn("fromInitParam");
+		when(filterConfig.getInitParameter("preauth.configFile")).thenReturn(file.toString());
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		try {
+			assertEquals("first", filter.getRemoteUser());
+			Files.delete(file);
+			filter.reloadConfigurationFile(file);
+			assertEquals("fromInitParam", filter.getRemoteUser());
+		} finally {
+			filter.destroy();
+		}
+	}
+	/**
+	 * Verify an invalid configuration file leaves the previous settings in place.
+	 * 
+	 * @throws IOException
+	 * @throws ServletException
+	 */
+	@Test
+	public void reloadConfigurationFile_invalid() throws IOException, ServletException {
+		Path file = temporaryFolder.newFile("preauth.properties").toPath();
+		Files.write(file, "preauth.remoteUser=first\n".getBytes(StandardCharsets.UTF_8));
+		FilterConfig filterConfig = mock(FilterConfig.class);
+		when(filterConfig.getInitParameter("preauth.configFile")).thenReturn(file.toString());
+		PreAuthenticationSimulationServletFilter filter = new PreAuthenticationSimulationServletFilter();
+		filter.init(filterConfig);
+		try {
+			PreAuthenticationSettings before = filter.getSettings();
+			Files.write(file, "preauth.headerNames=a;b\npreauth.headerValues=1\n".getBytes(StandardCharsets.UTF_8));
+			try {
+				filter.reloadConfigurationFile(file);
+				Assert.fail("expected ServletException");
+			} catch (ServletException e) {
+				// expected
+			}
+			assertSame(before, filter.getSettings());
+		} finally {
+			filter.destroy();
+		}
+	}
 	/**
 	 * Simple {@link FilterChain} to perform our {@link Assert}ions.
 	 * 
@@ -0,0 +1,113 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SyntheticIdentityGenerator}.
+ *
+ * @author Nicholas Blair
+ */
+public class SyntheticIdentityGeneratorTest {
+
+	/**
+	 * Verify the placeholders in the templates are replaced for a user number.
+	 */
+	@Test
+	public void generate_templates() {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		headers.put("mail", Arrays.asList("user-{n}@example.edu"));
+		headers.put("isMemberOf", Arrays.asList("group-{n%10}", "everyone", "{nope}"));
+		SyntheticIdentityGenerator generator = new SyntheticIdentityGenerator(100, 0L, null, headers);
+
+		PreAuthenticationIdentity identity = generator.generate(42);
+		assertEquals("user-42", identity.getRemoteUser());
+		assertEquals("user-42@example.edu", identity.getHeaderOverrides().getFirstValue("mail"));
+		assertEquals(Arrays.asList("group-2", "everyone", "{nope}"), identity.getHeaderOverrides().getValues("ismemberof"));
+	}
+	/**
+	 * Verify the generated headers behave like a compiled table: values are read-only, and numbers and dates are parsed when requested.
+	 */
+	@Test
+	public void generate_header_values() {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		headers.put("X-Number", Arrays.asList("{n}"));
+		headers.put("X-Date", Arrays.asList("Sun, 18 Oct 2026 12:00:0{n%10} GMT"));
+		headers.put("eduPersonEntitlement", Arrays.asList("urn:mace:example.edu:{n}"));
+		SyntheticIdentityGenerator generator = new SyntheticIdentityGenerator(100, 0L, null, headers);
+
+		HeaderOverrideTable table = generator.generate(42).getHeaderOverrides();
+		assertEquals(42, table.intValueAt(table.indexOf("x-number")));
+		assertEquals(1792324802000L, table.dateValueAt(table.indexOf("X-Date")));
+		try {
+			table.dateValueAt(table.indexOf("eduPersonEntitlement"));
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			table.getValues("X-Number").set(0, "0");
+			fail("expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(HeaderOverrideTable.compile(table.asMap()).fingerprint(), table.fingerprint());
+	}
+	/**
+	 * Verify the same key always maps to the same user.
+	 */
+	@Test
+	public void forKey_sticky() {
+		SyntheticIdentityGenerator generator = new SyntheticIdentityGenerator(1000, 7L, "u{n}", null);
+		assertEquals(generator.forKey("client-1").getRemoteUser(), generator.forKey("client-1").getRemoteUser());
+		assertEquals(generator.forKey("client-1").getRemoteUser(), new SyntheticIdentityGenerator(1000, 7L, "u{n}", null).forKey("client-1").getRemoteUser());
+	}
+	/**
+	 * Verify {@link SyntheticIdentityGenerator#next()} spreads requests across the users.
+	 */
+	@Test
+	public void next_spread() {
+		SyntheticIdentityGenerator generator = new SyntheticIdentityGenerator(10, 0L, null, null);
+		Set<String> users = new HashSet<>();
+		for(int i = 0; i < 1000; i++) {
+			String remoteUser = generator.next().getRemoteUser();
+			int n = Integer.parseInt(remoteUser.substring("user-".length()));
+			assertTrue(n >= 0 && n < 10);
+			users.add(remoteUser);
+		}
+		assertEquals(10, users.size());
+	}
+	/**
+	 * Verify user numbers outside the range are rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void generate_out_of_range() {
+		new SyntheticIdentityGenerator(10, 0L, null, null).generate(10);
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.core.userdetails.AuthenticationUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+/**
+ * {@link AuthenticationUserDetailsService} that remembers the {@link UserDetails} its delegate loads for each simulated identity, 
+ * so repeated requests as the same simulated user don't repeat the (database, LDAP) lookup.
+ * 
+ * Entries are keyed by the name of the token's principal and {@link PreAuthenticationSimulationDetails#getIdentityKey()} (the
+ * REMOTE_USER plus a fingerprint of the overridden headers), so switching a user's simulated attributes loads them again, and
+ * a principal read from somewhere the filter doesn't simulate (a header like SM_USER, or getUserPrincipal()) is never answered
+ * with another principal's details. Tokens without an identity key (the 
+ * {@link PreAuthenticationSimulationDetailsSource} isn't configured, or the request wasn't simulated) are always passed to the delegate.
+ * Entries expire after the time-to-live, and at most maxSize are kept: when full, expired entries are dropped first, then the
+ * entries closest to expiring. Concurrent lookups of an identity that isn't cached may each call the delegate. Failed lookups aren't cached.
+ * 
+ * @author Nicholas Blair
+ */
+public class CachingAuthenticationUserDetailsService implements AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	
+	/**
+	 * Cached details, and when they expire.
+	 */
+	static final class Entry {
+		private final UserDetails userDetails;
+		private final long expiresAtNanos;
+		/**
+		 * 
+		 * @param userDetails
+		 * @param expiresAtNanos
+		 */
+		Entry(UserDetails userDetails, long expiresAtNanos) {
+			this.userDetails = userDetails;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+		/**
+		 * 
+		 * @param now {@link System#nanoTime()}
+		 * @return true if the entry has expired
+		 */
+		boolean isExpired(long now) {
+			return now - expiresAtNanos >= 0;
+		}
+	}
+	
+	private final AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate;
+	private final int maxSize;
+	private final long timeToLiveNanos;
+	private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	/**
+	 * 
+	 * @param delegate
+	 */
+	public CachingAuthenticationUserDetailsService(AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate) {
+		this(delegate, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * 
+	 * @param delegate
+	 * @param maxSize the most identities to keep
+	 * @param timeToLive how long to keep each identity's details
+	 * @param unit the unit of timeToLive
+	 * @throws IllegalArgumentException if maxSize or timeToLive isn't positive
+	 */
+	public CachingAuthenticationUserDetailsService(AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate, 
+			int maxSize, long timeToLive, TimeUnit unit) {
+		if(delegate == null) {
+			throw new IllegalArgumentException("delegate cannot be null");
+		}
+		if(maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		if(timeToLive <= 0) {
+			throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
+		}
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.security.core.userdetails.AuthenticationUserDetailsService#loadUserDetails(org.springframework.security.core.Authentication)
+	 */
+	@Override
+	public UserDetails loadUserDetails(PreAuthenticatedAuthenticationToken token) throws UsernameNotFoundException {
+		String key = identityKey(token);
+		if(key == null) {
+			return delegate.loadUserDetails(token);
+		}
+		long now = System.nanoTime();
+		Entry entry = cache.get(key);
+		if(entry != null && !entry.isExpired(now)) {
+			hits.incrementAndGet();
+			return entry.userDetails;
+		}
+		misses.incrementAndGet();
+		UserDetails userDetails = delegate.loadUserDetails(token);
+		cache.put(key, new Entry(userDetails, now + timeToLiveNanos));
+		if(cache.size() > maxSize) {
+			evict(now);
+		}
+		return userDetails;
+	}
+	/**
+	 * Forget every identity, for example after changing the data the delegate reads.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+	/**
+	 * @return the number of identities currently cached, including any that have expired but not been evicted yet
+	 */
+	public int size() {
+		return cache.size();
+	}
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	/**
+	 * @return the number of lookups passed to the delegate because the identity wasn't cached (or had expired)
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	/**
+	 * 
+	 * @param token
+	 * @return the length and name of the token's principal, then the {@link PreAuthenticationSimulationDetails#getIdentityKey()}
+	 * of the token, or null if it has no identity key
+	 */
+	static String identityKey(PreAuthenticatedAuthenticationToken token) {
+		Object details = token.getDetails();
+		String identityKey = details instanceof PreAuthenticationSimulationDetails ? ((PreAuthenticationSimulationDetails) details).getIdentityKey() : null;
+		if(identityKey == null) {
+			return null;
+		}
+		// the length keeps names containing '#' from running into the REMOTE_USER
+		String name = token.getName();
+		return name.length() + ":" + name + "#" + identityKey;
+	}
+	/**
+	 * Drops the expired entries, then (if still over maxSize) the entries closest to expiring, down to 15/16 of maxSize
+	 * so the sort is only repeated after that many more identities.
+	 * 
+	 * @param now {@link System#nanoTime()}
+	 */
+	private void evict(long now) {
+		for(Iterator<Entry> i = cache.values().iterator(); i.hasNext();) {
+			if(i.next().isExpired(now)) {
+				i.remove();
+			}
+		}
+		if(cache.size() <= maxSize) {
+			return;
+		}
+		int excess = cache.size() - (maxSize - maxSize / 16);
+		List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(cache.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Entry>>() {
+			@Override
+			public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+				long difference = o1.getValue().expiresAtNanos - o2.getValue().expiresAtNanos;
+				return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+		for(int i = 0; i < excess && i < entries.size(); i++) {
+			cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+		}
+	}
+}
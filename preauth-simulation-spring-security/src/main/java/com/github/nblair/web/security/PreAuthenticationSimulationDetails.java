@@ -0,0 +1,94 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web.security;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import com.github.nblair.web.PreAuthenticationSimulationHttpServletRequestWrapper;
+
+/**
+ * {@link WebAuthenticationDetails} that also carry the key of the simulated identity the request was made with,
+ * for {@link CachingAuthenticationUserDetailsService}.
+ * 
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationSimulationDetails extends WebAuthenticationDetails {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final String identityKey;
+	/**
+	 * 
+	 * @param request
+	 */
+	public PreAuthenticationSimulationDetails(HttpServletRequest request) {
+		super(request);
+		this.identityKey = identityKey(request);
+	}
+	/**
+	 * @return the key of the simulated identity, or null if the request wasn't simulated
+	 */
+	public String getIdentityKey() {
+		return identityKey;
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return {@link HttpServletRequest#getRemoteUser()} and the fingerprint of the overridden headers, or null if the request
+	 * isn't wrapped by the PreAuthenticationSimulationServletFilter
+	 */
+	public static String identityKey(HttpServletRequest request) {
+		ServletRequest current = request;
+		while(current instanceof ServletRequestWrapper) {
+			if(current instanceof PreAuthenticationSimulationHttpServletRequestWrapper) {
+				PreAuthenticationSimulationHttpServletRequestWrapper wrapper = (PreAuthenticationSimulationHttpServletRequestWrapper) current;
+				return request.getRemoteUser() + "#" + wrapper.getHeaderOverrides().fingerprint();
+			}
+			current = ((ServletRequestWrapper) current).getRequest();
+		}
+		return null;
+	}
+	/* (non-Javadoc)
+	 * @see org.springframework.security.web.authentication.WebAuthenticationDetails#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(!super.equals(obj) || !(obj instanceof PreAuthenticationSimulationDetails)) {
+			return false;
+		}
+		String other = ((PreAuthenticationSimulationDetails) obj).identityKey;
+		return identityKey == null ? other == null : identityKey.equals(other);
+	}
+	/* (non-Javadoc)
+	 * @see org.springframework.security.web.authentication.WebAuthenticationDetails#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + (identityKey == null ? 0 : identityKey.hashCode());
+	}
+	/* (non-Javadoc)
+	 * @see org.springframework.security.web.authentication.WebAuthenticationDetails#toString()
+	 */
+	@Override
+	public String toString() {
+		return super.toString() + "; IdentityKey: " + identityKey;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web.security;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.authentication.AuthenticationDetailsSource;
+
+/**
+ * {@link AuthenticationDetailsSource} for the pre-authentication filter (like Spring Security's RequestHeaderAuthenticationFilter) 
+ * that records the simulated identity of each request, so a {@link CachingAuthenticationUserDetailsService} can cache by it.
+ * 
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationSimulationDetailsSource implements AuthenticationDetailsSource<HttpServletRequest, PreAuthenticationSimulationDetails> {
+
+	/* (non-Javadoc)
+	 * @see org.springframework.security.authentication.AuthenticationDetailsSource#buildDetails(java.lang.Object)
+	 */
+	@Override
+	public PreAuthenticationSimulationDetails buildDetails(HttpServletRequest context) {
+		return new PreAuthenticationSimulationDetails(context);
+	}
+}
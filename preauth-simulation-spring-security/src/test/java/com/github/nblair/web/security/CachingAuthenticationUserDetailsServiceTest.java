@@ -0,0 +1,190 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.AuthenticationUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import com.github.nblair.web.PreAuthenticationSimulationHttpServletRequestWrapper;
+
+/**
+ * Tests for {@link CachingAuthenticationUserDetailsService}.
+ * 
+ * @author Nicholas Blair
+ */
+public class CachingAuthenticationUserDetailsServiceTest {
+
+	/**
+	 * Verify the same simulated identity is loaded once, and a different header fingerprint is loaded again.
+	 */
+	@Test
+	public void loadUserDetails_cached() {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = delegate();
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate);
+		
+		UserDetails first = service.loadUserDetails(token("jdoe", "group1"));
+		assertSame(first, service.loadUserDetails(token("jdoe", "group1")));
+		verify(delegate, times(1)).loadUserDetails(any(PreAuthenticatedAuthenticationToken.class));
+		
+		service.loadUserDetails(token("jdoe", "group2"));
+		verify(delegate, times(2)).loadUserDetails(any(PreAuthenticatedAuthenticationToken.class));
+		assertEquals(1, service.getHitCount());
+		assertEquals(2, service.getMissCount());
+		assertEquals(2, service.size());
+	}
+	/**
+	 * Verify requests with the same simulated identity but different principals (read from a header the filter doesn't
+	 * override) are loaded separately.
+	 */
+	@Test
+	public void loadUserDetails_principal_from_header() {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = delegate();
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate);
+		
+		assertEquals("alice", service.loadUserDetails(headerToken("alice")).getUsername());
+		assertEquals("bob", service.loadUserDetails(headerToken("bob")).getUsername());
+		assertEquals("alice", service.loadUserDetails(headerToken("alice")).getUsername());
+		verify(delegate, times(2)).loadUserDetails(any(PreAuthenticatedAuthenticationToken.class));
+		assertEquals(2, service.size());
+	}
+	/**
+	 * Verify tokens without a simulated identity key always go to the delegate.
+	 */
+	@Test
+	public void loadUserDetails_not_simulated() {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = delegate();
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate);
+		PreAuthenticatedAuthenticationToken token = new PreAuthenticatedAuthenticationToken("jdoe", "N/A");
+		service.loadUserDetails(token);
+		service.loadUserDetails(token);
+		verify(delegate, times(2)).loadUserDetails(token);
+		assertEquals(0, service.size());
+	}
+	/**
+	 * Verify entries expire after the time-to-live.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void loadUserDetails_expired() throws InterruptedException {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = delegate();
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate, 10, 20, TimeUnit.MILLISECONDS);
+		service.loadUserDetails(token("jdoe", "group1"));
+		Thread.sleep(50);
+		service.loadUserDetails(token("jdoe", "group1"));
+		verify(delegate, times(2)).loadUserDetails(any(PreAuthenticatedAuthenticationToken.class));
+	}
+	/**
+	 * Verify the cache never holds more than maxSize identities, keeping the most recently loaded.
+	 */
+	@Test
+	public void loadUserDetails_bounded() {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = delegate();
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate, 32, 1, TimeUnit.HOURS);
+		for(int i = 0; i < 100; i++) {
+			service.loadUserDetails(token("user-" + i, "group1"));
+			assertTrue(service.size() <= 32);
+		}
+		service.loadUserDetails(token("user-99", "group1"));
+		assertEquals(1, service.getHitCount());
+	}
+	/**
+	 * Verify failed lookups aren't cached.
+	 */
+	@Test
+	public void loadUserDetails_not_found() {
+		@SuppressWarnings("unchecked")
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = mock(AuthenticationUserDetailsService.class);
+		when(delegate.loadUserDetails(any(PreAuthenticatedAuthenticationToken.class))).thenThrow(new UsernameNotFoundException("jdoe"));
+		CachingAuthenticationUserDetailsService service = new CachingAuthenticationUserDetailsService(delegate);
+		for(int i = 0; i < 2; i++) {
+			try {
+				service.loadUserDetails(token("jdoe", "group1"));
+			} catch (UsernameNotFoundException e) {
+				// expected
+			}
+		}
+		verify(delegate, times(2)).loadUserDetails(any(PreAuthenticatedAuthenticationToken.class));
+		assertEquals(0, service.size());
+	}
+	/**
+	 * 
+	 * @return a mock delegate returning a new {@link User} for each call
+	 */
+	@SuppressWarnings("unchecked")
+	private static AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate() {
+		AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> delegate = mock(AuthenticationUserDetailsService.class);
+		when(delegate.loadUserDetails(any(PreAuthenticatedAuthenticationToken.class))).thenAnswer(new Answer<UserDetails>() {
+			@Override
+			public UserDetails answer(InvocationOnMock invocation) throws Throwable {
+				PreAuthenticatedAuthenticationToken token = (PreAuthenticatedAuthenticationToken) invocation.getArguments()[0];
+				return new User(token.getName(), "N/A", Collections.<GrantedAuthority>emptyList());
+			}
+		});
+		return delegate;
+	}
+	/**
+	 * 
+	 * @param remoteUser
+	 * @param group the value of the simulated isMemberOf header
+	 * @return a token with details built from a request the filter would have wrapped
+	 */
+	private static PreAuthenticatedAuthenticationToken token(String remoteUser, String group) {
+		HttpServletRequest request = new PreAuthenticationSimulationHttpServletRequestWrapper(mock(HttpServletRequest.class), remoteUser, 
+				Collections.<String, List<String>>singletonMap("isMemberOf", Collections.singletonList(group)));
+		PreAuthenticatedAuthenticationToken token = new PreAuthenticatedAuthenticationToken(remoteUser, "N/A");
+		token.setDetails(new PreAuthenticationSimulationDetailsSource().buildDetails(request));
+		return token;
+	}
+	/**
+	 * 
+	 * @param smUser the value of the SM_USER header of the underlying request
+	 * @return a token for the SM_USER principal (as RequestHeaderAuthenticationFilter would create it), with details from a request
+	 * the filter wrapped with the same REMOTE_USER and headers for every principal
+	 */
+	private static PreAuthenticatedAuthenticationToken headerToken(String smUser) {
+		HttpServletRequest original = mock(HttpServletRequest.class);
+		when(original.getHeader("SM_USER")).thenReturn(smUser);
+		HttpServletRequest request = new PreAuthenticationSimulationHttpServletRequestWrapper(original, "jdoe", 
+				Collections.<String, List<String>>singletonMap("isMemberOf", Collections.singletonList("group1")));
+		PreAuthenticatedAuthenticationToken token = new PreAuthenticatedAuthenticationToken(request.getHeader("SM_USER"), "N/A");
+		token.setDetails(new PreAuthenticationSimulationDetailsSource().buildDetails(request));
+		return token;
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.junit.Test;
+
+import com.github.nblair.web.HeaderOverrideTable;
+import com.github.nblair.web.PreAuthenticationSimulationHttpServletRequestWrapper;
+
+/**
+ * Tests for {@link PreAuthenticationSimulationDetailsSource}.
+ * 
+ * @author Nicholas Blair
+ */
+public class PreAuthenticationSimulationDetailsSourceTest {
+
+	/**
+	 * Verify the key combines the REMOTE_USER and the header fingerprint, and is found beneath other wrappers.
+	 */
+	@Test
+	public void buildDetails_simulated() {
+		HeaderOverrideTable headers = HeaderOverrideTable.compile(Collections.<String, List<String>>singletonMap("isMemberOf", Arrays.asList("group1", "group2")));
+		HttpServletRequest wrapped = new PreAuthenticationSimulationHttpServletRequestWrapper(mock(HttpServletRequest.class), "jdoe", headers);
+		PreAuthenticationSimulationDetails details = new PreAuthenticationSimulationDetailsSource().buildDetails(new HttpServletRequestWrapper(wrapped));
+		assertEquals("jdoe#" + headers.fingerprint(), details.getIdentityKey());
+		
+		Map<String, List<String>> other = Collections.<String, List<String>>singletonMap("isMemberOf", Arrays.asList("group1"));
+		String otherKey = PreAuthenticationSimulationDetails.identityKey(new PreAuthenticationSimulationHttpServletRequestWrapper(mock(HttpServletRequest.class), "jdoe", other));
+		assertNotNull(otherKey);
+		assertTrue(!otherKey.equals(details.getIdentityKey()));
+	}
+	/**
+	 * Verify requests that weren't simulated have no key.
+	 */
+	@Test
+	public void buildDetails_not_simulated() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRemoteUser()).thenReturn("jdoe");
+		assertNull(new PreAuthenticationSimulationDetailsSource().buildDetails(request).getIdentityKey());
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * The cached outcome of a condition, shared by the conditional filter proxies: it is computed on first use and kept
+ * until {@link #invalidate()}, which by default happens whenever the {@link WebApplicationContext} publishes a {@link ContextRefreshedEvent}.
+ * 
+ * An evaluation that races with {@link #invalidate()} returns its outcome but doesn't cache it, so a stale outcome is never kept.
+ * 
+ * @param <T> the outcome
+ * @author Nicholas Blair
+ */
+abstract class CachedCondition<T> {
+
+	/**
+	 * Cached result of {@link #compute()}; null until evaluated.
+	 */
+	private volatile T value;
+	/**
+	 * The last outcome cached, kept across {@link #invalidate()} to detect changes; guarded by this.
+	 */
+	private T lastValue;
+	private volatile boolean listeningForRefresh;
+	/**
+	 * Incremented each time the cache is discarded, so an evaluation racing with it doesn't cache a stale outcome.
+	 */
+	private volatile int generation;
+	/**
+	 * 
+	 * @return the outcome; called without holding any lock
+	 */
+	protected abstract T compute();
+	/**
+	 * Called, outside any lock, when an evaluation caches an outcome different from the previous one. Does nothing by default.
+	 * 
+	 * @param value the new outcome
+	 */
+	protected void changed(T value) {
+	}
+	/**
+	 * Called when the {@link WebApplicationContext} publishes a {@link ContextRefreshedEvent}; {@link #invalidate()} by default.
+	 */
+	protected void refreshed() {
+		invalidate();
+	}
+	/**
+	 * 
+	 * @return the cached outcome, or null if it must be evaluated
+	 */
+	T cached() {
+		return value;
+	}
+	/**
+	 * Discard the cached outcome; the condition is evaluated again on next use.
+	 */
+	synchronized void invalidate() {
+		this.generation++;
+		this.value = null;
+	}
+	/**
+	 * Evaluates {@link #compute()} and caches the result until the next {@link #invalidate()}.
+	 * 
+	 * @param refreshSource the context whose {@link ContextRefreshedEvent}s invalidate the outcome, registered with once; may be null
+	 * @return the outcome
+	 */
+	T evaluate(WebApplicationContext refreshSource) {
+		listenForRefresh(refreshSource);
+		int before = generation;
+		T current = compute();
+		T previous = null;
+		synchronized (this) {
+			if(generation == before) {
+				this.value = current;
+				previous = lastValue;
+				this.lastValue = current;
+			}
+		}
+		if(previous != null && !previous.equals(current)) {
+			changed(current);
+		}
+		return current;
+	}
+	/**
+	 * Register (once) for {@link ContextRefreshedEvent}s, if the context allows listeners to be added.
+	 * 
+	 * @param wac may be null
+	 */
+	private void listenForRefresh(WebApplicationContext wac) {
+		if(!listeningForRefresh && wac instanceof ConfigurableApplicationContext) {
+			synchronized (this) {
+				if(!listeningForRefresh) {
+					((ConfigurableApplicationContext) wac).addApplicationListener(new ApplicationListener<ContextRefreshedEvent>() {
+						@Override
+						public void onApplicationEvent(ContextRefreshedEvent event) {
+							refreshed();
+						}
+					});
+					listeningForRefresh = true;
+				}
+			}
+		}
+	}
+}
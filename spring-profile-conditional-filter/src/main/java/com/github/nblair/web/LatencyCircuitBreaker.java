@@ -0,0 +1,210 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sheds an optional call when it gets slow: tracks the latency of recent calls and, when a percentile of them exceeds a budget,
+ * refuses calls for a cool-down period. After the cool-down one probe call is let through; if it is within budget
+ * the breaker closes again, otherwise it stays open for another cool-down.
+ * 
+ * Latencies are kept in a fixed size ring that request threads write to without locking. The percentile is computed
+ * from a copy of the ring every few calls rather than on every call.
+ * 
+ * Usage:
+ * <pre>
+ * LatencyCircuitBreaker.State admittedIn = breaker.tryAcquire();
+ * if(admittedIn == null) {
+ *   // skip the call
+ * } else {
+ *   long start = System.nanoTime();
+ *   try {
+ *     // make the call
+ *   } finally {
+ *     breaker.record(admittedIn, System.nanoTime() - start);
+ *   }
+ * }
+ * </pre>
+ * 
+ * @author Nicholas Blair
+ */
+public final class LatencyCircuitBreaker {
+
+	/**
+	 * 
+	 */
+	public enum State {
+		/**
+		 * Calls are allowed and their latency is tracked.
+		 */
+		CLOSED,
+		/**
+		 * Calls are refused until the cool-down ends.
+		 */
+		OPEN,
+		/**
+		 * A single probe call is in progress; other calls are refused until it finishes.
+		 */
+		HALF_OPEN;
+	}
+	
+	public static final double DEFAULT_PERCENTILE = 0.99;
+	public static final int DEFAULT_WINDOW_SIZE = 128;
+	public static final long DEFAULT_COOL_DOWN_MILLISECONDS = 30000;
+	
+	private final long budgetNanos;
+	private final double percentile;
+	private final long coolDownNanos;
+	private final AtomicLongArray window;
+	private final int mask;
+	/**
+	 * The percentile is computed each time this many calls (a power of 2) have been recorded.
+	 */
+	private final int evaluateEvery;
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+	private final AtomicLong trips = new AtomicLong();
+	private volatile long openUntil;
+	/**
+	 * Uses the {@link #DEFAULT_PERCENTILE}, {@link #DEFAULT_WINDOW_SIZE} and {@link #DEFAULT_COOL_DOWN_MILLISECONDS}.
+	 * 
+	 * @param budget
+	 * @param unit
+	 */
+	public LatencyCircuitBreaker(long budget, TimeUnit unit) {
+		this(budget, unit, DEFAULT_PERCENTILE, DEFAULT_WINDOW_SIZE, DEFAULT_COOL_DOWN_MILLISECONDS, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * 
+	 * @param budget the latency the percentile must stay within
+	 * @param unit of the budget
+	 * @param percentile between 0 (exclusive) and 1, for example 0.99
+	 * @param windowSize the number of recent calls tracked, rounded up to a power of 2
+	 * @param coolDown how long to refuse calls after tripping
+	 * @param coolDownUnit of the coolDown
+	 * @throws IllegalArgumentException if any argument is out of range
+	 */
+	public LatencyCircuitBreaker(long budget, TimeUnit unit, double percentile, int windowSize, long coolDown, TimeUnit coolDownUnit) {
+		if(budget <= 0) {
+			throw new IllegalArgumentException("budget must be positive: " + budget);
+		}
+		if(!(percentile > 0d && percentile <= 1d)) {
+			throw new IllegalArgumentException("percentile must be greater than 0 and at most 1: " + percentile);
+		}
+		if(windowSize < 1 || windowSize > (1 << 20)) {
+			throw new IllegalArgumentException("windowSize must be between 1 and 2^20: " + windowSize);
+		}
+		if(coolDown < 0) {
+			throw new IllegalArgumentException("coolDown must not be negative: " + coolDown);
+		}
+		this.budgetNanos = unit.toNanos(budget);
+		this.percentile = percentile;
+		this.coolDownNanos = coolDownUnit.toNanos(coolDown);
+		int size = windowSize == 1 ? 1 : Integer.highestOneBit(windowSize - 1) << 1;
+		this.window = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.evaluateEvery = Math.max(1, size / 8);
+	}
+	/**
+	 * 
+	 * @return the state the call was admitted in, to pass to {@link #record(State, long)}; or null if the call should be skipped
+	 */
+	public State tryAcquire() {
+		State current = state.get();
+		if(current == State.CLOSED) {
+			return State.CLOSED;
+		}
+		if(current == State.OPEN && System.nanoTime() - openUntil >= 0 && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+			return State.HALF_OPEN;
+		}
+		return null;
+	}
+	/**
+	 * Record the latency of a call admitted by {@link #tryAcquire()}.
+	 * 
+	 * @param admittedIn the value {@link #tryAcquire()} returned
+	 * @param elapsedNanos
+	 */
+	public void record(State admittedIn, long elapsedNanos) {
+		if(admittedIn == State.HALF_OPEN) {
+			if(elapsedNanos <= budgetNanos) {
+				recorded.set(0);
+				state.set(State.CLOSED);
+			} else {
+				open();
+			}
+			return;
+		}
+		if(admittedIn != State.CLOSED || state.get() != State.CLOSED) {
+			// finished after the breaker opened; its latency is already accounted for
+			return;
+		}
+		long n = recorded.getAndIncrement();
+		window.set((int) (n & mask), elapsedNanos);
+		long count = n + 1;
+		if(count >= window.length() && (count & (evaluateEvery - 1)) == 0 && percentileNanos() > budgetNanos) {
+			if(state.get() == State.CLOSED) {
+				trips.incrementAndGet();
+				open();
+			}
+		}
+	}
+	/**
+	 * Refuse calls for the cool-down period.
+	 */
+	private void open() {
+		openUntil = System.nanoTime() + coolDownNanos;
+		state.set(State.OPEN);
+	}
+	/**
+	 * 
+	 * @return the configured percentile of the latencies in the window, in nanoseconds
+	 */
+	long percentileNanos() {
+		int size = window.length();
+		long[] copy = new long[size];
+		for(int i = 0; i < size; i++) {
+			copy[i] = window.get(i);
+		}
+		Arrays.sort(copy);
+		int index = (int) Math.ceil(percentile * size) - 1;
+		return copy[Math.max(0, index)];
+	}
+	/**
+	 * @return the current state
+	 */
+	public State getState() {
+		return state.get();
+	}
+	/**
+	 * @return the number of times the breaker has opened because the window was over budget
+	 */
+	public long getTripCount() {
+		return trips.get();
+	}
+	/**
+	 * @return the budget, in nanoseconds
+	 */
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+}
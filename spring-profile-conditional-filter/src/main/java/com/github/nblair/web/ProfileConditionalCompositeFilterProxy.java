@@ -0,0 +1,229 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.filter.GenericFilterBean;
+
+/**
+ * A single servlet {@link Filter} hosting many profile-conditional delegates, each a {@link Filter} bean (or instance)
+ * paired with a {@link ProfileExpression}.
+ * 
+ * The delegates whose expressions are true are resolved once, on the first request, into a flat array; every request 
+ * then runs that array as a chain of its own before continuing with the container's {@link FilterChain}, with no
+ * per-delegate condition checks. Delegates whose expressions are false are never looked up. The array is resolved again 
+ * after a {@link ContextRefreshedEvent} or a call to {@link #reevaluateRequiredProfiles()}.
+ * 
+ * Example:
+ * <pre>
+ servletContext.addFilter("developerFilters", new ProfileConditionalCompositeFilterProxy()
+ 		.addFilter("preauth-dev", "preAuthenticationSimulationFilter")
+ 		.addFilter("dev | local", "requestLoggingFilter"))
+ 	.addMappingForUrlPatterns(null, false, "/*");
+ </pre>
+ * 
+ * @author Nicholas Blair
+ */
+public class ProfileConditionalCompositeFilterProxy extends GenericFilterBean {
+
+	private static final Filter[] NONE = new Filter[0];
+	
+	private final List<Delegate> delegates = new ArrayList<>();
+	private WebApplicationContext webApplicationContext;
+	/**
+	 * Cached result of {@link #resolveActiveFilters()}.
+	 */
+	private final CachedCondition<Filter[]> activeFilters = new CachedCondition<Filter[]>() {
+		@Override
+		protected Filter[] compute() {
+			return resolveActiveFilters();
+		}
+	};
+	/**
+	 * 
+	 */
+	public ProfileConditionalCompositeFilterProxy() {
+		super();
+	}
+	/**
+	 * @param webApplicationContext the context to find delegate beans and the {@link Environment} in
+	 */
+	public ProfileConditionalCompositeFilterProxy(WebApplicationContext webApplicationContext) {
+		super();
+		this.webApplicationContext = webApplicationContext;
+	}
+	/**
+	 * Delegates run in the order they are added.
+	 * 
+	 * @param profileExpression see {@link ProfileExpression}; null to always run the delegate
+	 * @param targetBeanName the name of a {@link Filter} bean in the {@link WebApplicationContext}
+	 * @return this
+	 * @throws IllegalArgumentException if the expression is malformed
+	 */
+	public ProfileConditionalCompositeFilterProxy addFilter(String profileExpression, String targetBeanName) {
+		return add(new Delegate(profileExpression, targetBeanName, null));
+	}
+	/**
+	 * Delegates run in the order they are added.
+	 * 
+	 * @param profileExpression see {@link ProfileExpression}; null to always run the delegate
+	 * @param filter the delegate
+	 * @return this
+	 * @throws IllegalArgumentException if the expression is malformed
+	 */
+	public ProfileConditionalCompositeFilterProxy addFilter(String profileExpression, Filter filter) {
+		return add(new Delegate(profileExpression, null, filter));
+	}
+	/**
+	 * 
+	 * @param delegate
+	 * @return this
+	 */
+	private synchronized ProfileConditionalCompositeFilterProxy add(Delegate delegate) {
+		delegates.add(delegate);
+		reevaluateRequiredProfiles();
+		return this;
+	}
+	/**
+	 * Discard the resolved delegates; they are resolved again on the next request.
+	 */
+	public void reevaluateRequiredProfiles() {
+		activeFilters.invalidate();
+	}
+	/**
+	 * @return the delegates whose profile expressions are currently true, in order
+	 */
+	public Filter[] getActiveFilters() {
+		return activeFilters().clone();
+	}
+	/* (non-Javadoc)
+	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+		Filter[] filters = activeFilters();
+		if(filters.length == 0) {
+			chain.doFilter(request, response);
+		} else {
+			new VirtualFilterChain(filters, chain).doFilter(request, response);
+		}
+	}
+	/**
+	 * 
+	 * @return the cached active delegates, resolving them if needed
+	 */
+	private Filter[] activeFilters() {
+		Filter[] filters = activeFilters.cached();
+		return filters != null ? filters : activeFilters.evaluate(findWebApplicationContext());
+	}
+	/**
+	 * Evaluates each delegate's profile expression, and looks up the beans of those that are true.
+	 * 
+	 * @return the active delegates
+	 */
+	protected Filter[] resolveActiveFilters() {
+		WebApplicationContext wac = findWebApplicationContext();
+		List<Delegate> snapshot;
+		synchronized (this) {
+			snapshot = new ArrayList<>(delegates);
+		}
+		List<Filter> active = new ArrayList<>(snapshot.size());
+		for(Delegate delegate: snapshot) {
+			if(delegate.expression == null || delegate.expression.matches(wac.getEnvironment())) {
+				active.add(delegate.filter != null ? delegate.filter : wac.getBean(delegate.targetBeanName, Filter.class));
+			}
+		}
+		return active.isEmpty() ? NONE : active.toArray(new Filter[active.size()]);
+	}
+	/**
+	 * 
+	 * @return the {@link WebApplicationContext} given to the constructor, or the root context of the servlet context
+	 * @throws IllegalStateException if there is none
+	 */
+	protected WebApplicationContext findWebApplicationContext() {
+		if(webApplicationContext != null) {
+			return webApplicationContext;
+		}
+		WebApplicationContext wac = getServletContext() != null ? WebApplicationContextUtils.getWebApplicationContext(getServletContext()) : null;
+		if(wac == null) {
+			throw new IllegalStateException("No WebApplicationContext found: no ContextLoaderListener registered?");
+		}
+		return wac;
+	}
+	
+	/**
+	 * A profile condition and the bean name or instance of its {@link Filter}.
+	 */
+	private static final class Delegate {
+		private final ProfileExpression expression;
+		private final String targetBeanName;
+		private final Filter filter;
+		/**
+		 * 
+		 * @param profileExpression
+		 * @param targetBeanName
+		 * @param filter
+		 */
+		Delegate(String profileExpression, String targetBeanName, Filter filter) {
+			this.expression = profileExpression != null ? ProfileExpression.parse(profileExpression) : null;
+			this.targetBeanName = targetBeanName;
+			this.filter = filter;
+		}
+	}
+	
+	/**
+	 * Runs the active delegates in order, then continues with the container's chain.
+	 */
+	private static final class VirtualFilterChain implements FilterChain {
+		private final Filter[] filters;
+		private final FilterChain original;
+		private int position;
+		/**
+		 * 
+		 * @param filters
+		 * @param original
+		 */
+		VirtualFilterChain(Filter[] filters, FilterChain original) {
+			this.filters = filters;
+			this.original = original;
+		}
+		/* (non-Javadoc)
+		 * @see javax.servlet.FilterChain#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse)
+		 */
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+			if(position == filters.length) {
+				original.doFilter(request, response);
+			} else {
+				filters[position++].doFilter(request, response, this);
+			}
+		}
+	}
+}
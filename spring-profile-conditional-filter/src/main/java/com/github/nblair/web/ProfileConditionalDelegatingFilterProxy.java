@@ -17,17 +17,25 @@
 package com.github.nblair.web;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.env.Environment;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.filter.DelegatingFilterProxy;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 /**
  * Subclass of {@link DelegatingFilterProxy} that allows for conditional execution of the 
@@ -35,6 +43,18 @@ import org.springframework.web.filter.DelegatingFilterProxy;
  * 
  * If any or all of the required profiles are not active, the delegate {@link Filter#doFilter(ServletRequest, ServletResponse, FilterChain)} 
  * is not invoked ({@link FilterChain#doFilter(ServletRequest, ServletResponse)} is allowed to proceed).
+ * Alternatively, the condition may be any boolean {@link ProfileExpression}, see {@link #setRequiredProfileExpression(String)}.
+ * 
+ * The delegate can be further limited to some request paths and dispatcher types, and to once per request; see
+ * {@link #setIncludePatterns(String...)}, {@link #setExcludePatterns(String...)}, {@link #setDispatcherTypes(DispatcherType...)}
+ * and {@link #setOncePerRequest(boolean)}. To keep an expensive delegate deployed at a bounded cost, it can be invoked for a sample
+ * of the remaining requests; see {@link #setSampleRate(double, RequestSampler.Stickiness)}. An optional delegate can also shed itself
+ * while it is slow; see {@link #setLatencyBudget(long, TimeUnit)}.
+ * 
+ * The delegate bean is not resolved at startup while the required profiles are inactive.
+ * 
+ * Active profiles don't change after the context is refreshed, so the decision is made on the first request and cached;
+ * it is made again after a {@link ContextRefreshedEvent} or a call to {@link #reevaluateRequiredProfiles()}.
  * 
  * @see Environment#acceptsProfiles(String...)
  * @author Nicholas Blair
@@ -43,6 +63,23 @@ public class ProfileConditionalDelegatingFilterProxy extends
 		DelegatingFilterProxy {
 
 	private String[] requiredProfiles = new String[0];
+	private ProfileExpression requiredProfileExpression;
+	private RequestPathMatcher includePatterns;
+	private RequestPathMatcher excludePatterns;
+	private EnumSet<DispatcherType> dispatcherTypes;
+	private boolean oncePerRequest;
+	private String alreadyFilteredAttributeName;
+	private volatile RequestSampler sampler;
+	private volatile LatencyCircuitBreaker circuitBreaker;
+	/**
+	 * Cached result of {@link #requiredProfilesAreActive()}.
+	 */
+	private final CachedCondition<Boolean> active = new CachedCondition<Boolean>() {
+		@Override
+		protected Boolean compute() {
+			return requiredProfilesAreActive();
+		}
+	};
 	/**
 	 * 
 	 */
@@ -76,6 +113,8 @@ public class ProfileConditionalDelegatingFilterProxy extends
 	 */
 	public ProfileConditionalDelegatingFilterProxy setRequiredProfile(String requiredProfile) {
 		this.requiredProfiles = new String[] { requiredProfile };
+		this.requiredProfileExpression = null;
+		reevaluateRequiredProfiles();
 		return this;
 	}
 	/**
@@ -85,27 +124,320 @@ public class ProfileConditionalDelegatingFilterProxy extends
 	 */
 	public ProfileConditionalDelegatingFilterProxy setRequiredProfiles(String... requiredProfiles) {
 		this.requiredProfiles = requiredProfiles;
+		this.requiredProfileExpression = null;
+		reevaluateRequiredProfiles();
+		return this;
+	}
+	/**
+	 * Alternative to {@link #setRequiredProfiles(String...)}: the delegate is invoked only when the expression
+	 * (for example "prod &amp; !canary" or "dev | local") is true. See {@link ProfileExpression} for the syntax.
+	 * 
+	 * @param requiredProfileExpression
+	 * @return this
+	 * @throws IllegalArgumentException if the expression is malformed
+	 */
+	public ProfileConditionalDelegatingFilterProxy setRequiredProfileExpression(String requiredProfileExpression) {
+		ProfileExpression expression = ProfileExpression.parse(requiredProfileExpression);
+		this.requiredProfileExpression = expression;
+		this.requiredProfiles = expression.getProfiles();
+		reevaluateRequiredProfiles();
 		return this;
 	}
+	/**
+	 * @return the requiredProfileExpression, or null if {@link #getRequiredProfiles()} must all be active
+	 */
+	public ProfileExpression getRequiredProfileExpression() {
+		return requiredProfileExpression;
+	}
 	
 	/**
-	 * @return the requiredProfiles
+	 * Only invoke the delegate for requests whose path (within the application) matches one of the patterns.
+	 * 
+	 * @param includePatterns "/exact", "/prefix/*" or "*.extension"; none to include every path
+	 * @return this
+	 * @throws IllegalArgumentException if a pattern is malformed
+	 * @see RequestPathMatcher
+	 */
+	public ProfileConditionalDelegatingFilterProxy setIncludePatterns(String... includePatterns) {
+		this.includePatterns = includePatterns.length == 0 ? null : RequestPathMatcher.compile(includePatterns);
+		return this;
+	}
+	/**
+	 * Never invoke the delegate for requests whose path (within the application) matches one of the patterns, for example static assets or health checks.
+	 * 
+	 * @param excludePatterns "/exact", "/prefix/*" or "*.extension"
+	 * @return this
+	 * @throws IllegalArgumentException if a pattern is malformed
+	 * @see RequestPathMatcher
+	 */
+	public ProfileConditionalDelegatingFilterProxy setExcludePatterns(String... excludePatterns) {
+		this.excludePatterns = excludePatterns.length == 0 ? null : RequestPathMatcher.compile(excludePatterns);
+		return this;
+	}
+	/**
+	 * Only invoke the delegate for these dispatches.
+	 * 
+	 * @param dispatcherTypes none to invoke the delegate for every dispatch (the default)
+	 * @return this
+	 */
+	public ProfileConditionalDelegatingFilterProxy setDispatcherTypes(DispatcherType... dispatcherTypes) {
+		this.dispatcherTypes = dispatcherTypes.length == 0 ? null : EnumSet.copyOf(Arrays.asList(dispatcherTypes));
+		return this;
+	}
+	/**
+	 * When true, the delegate is invoked at most once per request: it is skipped for FORWARD, INCLUDE or ERROR dispatches 
+	 * made while it is still in progress. Marked with a request attribute, like {@link OncePerRequestFilter}.
+	 * 
+	 * @param oncePerRequest
+	 * @return this
+	 */
+	public ProfileConditionalDelegatingFilterProxy setOncePerRequest(boolean oncePerRequest) {
+		this.oncePerRequest = oncePerRequest;
+		return this;
+	}
+	/**
+	 * @return the oncePerRequest
+	 */
+	public boolean isOncePerRequest() {
+		return oncePerRequest;
+	}
+	/**
+	 * Invoke the delegate for a random share of the requests it would otherwise see.
+	 * 
+	 * @param sampleRate between 0 and 1, for example 0.01 for 1%
+	 * @return this
+	 * @throws IllegalArgumentException if the rate is out of range
+	 * @see #setSampleRate(double, RequestSampler.Stickiness)
+	 */
+	public ProfileConditionalDelegatingFilterProxy setSampleRate(double sampleRate) {
+		return setSampleRate(sampleRate, RequestSampler.Stickiness.NONE);
+	}
+	/**
+	 * Invoke the delegate for a share of the requests it would otherwise see. With {@link RequestSampler.Stickiness#SESSION} 
+	 * or {@link RequestSampler.Stickiness#USER}, all of a sampled session's (or user's) requests go to the delegate.
+	 * 
+	 * @param sampleRate between 0 and 1, for example 0.01 for 1%
+	 * @param stickiness
+	 * @return this
+	 * @throws IllegalArgumentException if the rate is out of range
+	 */
+	public ProfileConditionalDelegatingFilterProxy setSampleRate(double sampleRate, RequestSampler.Stickiness stickiness) {
+		this.sampler = new RequestSampler(sampleRate, stickiness);
+		return this;
+	}
+	/**
+	 * Stop sampling: every applicable request goes to the delegate.
+	 * 
+	 * @return this
+	 */
+	public ProfileConditionalDelegatingFilterProxy clearSampleRate() {
+		this.sampler = null;
+		return this;
+	}
+	/**
+	 * @return the sampler, with the counts of sampled and bypassed requests; null when not sampling
+	 */
+	public RequestSampler getSampler() {
+		return sampler;
+	}
+	/**
+	 * Bypass the delegate for a while when its 99th percentile latency exceeds the budget, using a {@link LatencyCircuitBreaker}
+	 * with the default window and cool-down.
+	 * 
+	 * @param budget
+	 * @param unit
+	 * @return this
+	 * @see #setCircuitBreaker(LatencyCircuitBreaker)
+	 */
+	public ProfileConditionalDelegatingFilterProxy setLatencyBudget(long budget, TimeUnit unit) {
+		return setCircuitBreaker(new LatencyCircuitBreaker(budget, unit));
+	}
+	/**
+	 * 
+	 * @param circuitBreaker tracks the delegate's latency and decides when to bypass it; null to always invoke the delegate
+	 * @return this
+	 */
+	public ProfileConditionalDelegatingFilterProxy setCircuitBreaker(LatencyCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+		return this;
+	}
+	/**
+	 * @return the circuitBreaker, may be null
+	 */
+	public LatencyCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	/**
+	 * @return the requiredProfiles (with an expression, the profiles it mentions)
 	 */
 	public String[] getRequiredProfiles() {
 		return requiredProfiles;
 	}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * When the required profiles are inactive at startup, the delegate bean is not looked up (or created, if lazy);
+	 * {@link DelegatingFilterProxy} resolves it on the first request after the profiles become active.
+	 */
+	@Override
+	protected void initFilterBean() throws ServletException {
+		if(requiredProfiles.length > 0 && findWebApplicationContext() != null && !evaluateRequiredProfiles()) {
+			if(getTargetBeanName() == null) {
+				setTargetBeanName(getFilterName());
+			}
+			return;
+		}
+		super.initFilterBean();
+	}
 	/* (non-Javadoc)
 	 * @see org.springframework.web.filter.DelegatingFilterProxy#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
 	 */
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response,
 			FilterChain filterChain) throws ServletException, IOException {
-		if(requiredProfilesAreActive()) {
-			super.doFilter(request, response, filterChain);
+		Boolean decision = active.cached();
+		if(decision == null) {
+			decision = evaluateRequiredProfiles();
+		}
+		RequestSampler currentSampler = sampler;
+		if(!decision || !appliesTo(request) || (currentSampler != null && !currentSampler.sample(request))) {
+			filterChain.doFilter(request, response);
+		} else if(oncePerRequest) {
+			String attributeName = getAlreadyFilteredAttributeName();
+			if(request.getAttribute(attributeName) != null) {
+				filterChain.doFilter(request, response);
+				return;
+			}
+			request.setAttribute(attributeName, Boolean.TRUE);
+			try {
+				invokeDelegateWithinBudget(request, response, filterChain);
+			} finally {
+				request.removeAttribute(attributeName);
+			}
 		} else {
+			invokeDelegateWithinBudget(request, response, filterChain);
+		}
+	}
+	/**
+	 * Invoke the delegate, unless the {@link #getCircuitBreaker()} is open.
+	 * 
+	 * The latency recorded is the delegate's own: time spent in the rest of the chain is left out.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param filterChain
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	private void invokeDelegateWithinBudget(ServletRequest request, ServletResponse response,
+			FilterChain filterChain) throws ServletException, IOException {
+		LatencyCircuitBreaker breaker = circuitBreaker;
+		if(breaker == null) {
+			super.doFilter(request, response, filterChain);
+			return;
+		}
+		LatencyCircuitBreaker.State admittedIn = breaker.tryAcquire();
+		if(admittedIn == null) {
 			filterChain.doFilter(request, response);
+			return;
+		}
+		TimedFilterChain timedChain = new TimedFilterChain(filterChain);
+		long start = System.nanoTime();
+		try {
+			super.doFilter(request, response, timedChain);
+		} finally {
+			breaker.record(admittedIn, System.nanoTime() - start - timedChain.elapsedNanos);
+		}
+	}
+	/**
+	 * {@link FilterChain} that measures the time spent downstream of the delegate.
+	 */
+	private static final class TimedFilterChain implements FilterChain {
+		private final FilterChain filterChain;
+		private long elapsedNanos;
+		/**
+		 * @param filterChain
+		 */
+		TimedFilterChain(FilterChain filterChain) {
+			this.filterChain = filterChain;
+		}
+		/* (non-Javadoc)
+		 * @see javax.servlet.FilterChain#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse)
+		 */
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response)
+				throws IOException, ServletException {
+			long start = System.nanoTime();
+			try {
+				filterChain.doFilter(request, response);
+			} finally {
+				elapsedNanos += System.nanoTime() - start;
+			}
 		}
 	}
+	/**
+	 * 
+	 * @param request
+	 * @return true if the request's dispatcher type and path are not filtered out
+	 */
+	protected boolean appliesTo(ServletRequest request) {
+		if(dispatcherTypes != null && !dispatcherTypes.contains(request.getDispatcherType())) {
+			return false;
+		}
+		if((includePatterns != null || excludePatterns != null) && request instanceof HttpServletRequest) {
+			String path = pathWithinApplication((HttpServletRequest) request);
+			if(includePatterns != null && !includePatterns.matches(path)) {
+				return false;
+			}
+			if(excludePatterns != null && excludePatterns.matches(path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return the request URI without the context path
+	 */
+	static String pathWithinApplication(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		String contextPath = request.getContextPath();
+		if(uri != null && contextPath != null && !contextPath.isEmpty() && uri.startsWith(contextPath)) {
+			return uri.substring(contextPath.length());
+		}
+		return uri;
+	}
+	/**
+	 * 
+	 * @return the name of the request attribute marking a request the delegate is already processing
+	 */
+	protected String getAlreadyFilteredAttributeName() {
+		String name = alreadyFilteredAttributeName;
+		if(name == null) {
+			String filterName = getFilterName() != null ? getFilterName() : getTargetBeanName();
+			name = getClass().getName() + "." + (filterName != null ? filterName : Integer.toHexString(System.identityHashCode(this))) + OncePerRequestFilter.ALREADY_FILTERED_SUFFIX;
+			alreadyFilteredAttributeName = name;
+		}
+		return name;
+	}
+	/**
+	 * Discard the cached decision; the required profiles are checked against the {@link Environment} again on the next request.
+	 * 
+	 * This happens automatically when the {@link WebApplicationContext} publishes a {@link ContextRefreshedEvent} 
+	 * (if it is a {@link ConfigurableApplicationContext}), so only call this after changing the active profiles by other means.
+	 */
+	public void reevaluateRequiredProfiles() {
+		active.invalidate();
+	}
+	/**
+	 * Evaluates {@link #requiredProfilesAreActive()} and caches the result until {@link #reevaluateRequiredProfiles()}.
+	 * 
+	 * @return the decision
+	 */
+	protected boolean evaluateRequiredProfiles() {
+		return active.evaluate(requiredProfiles.length > 0 ? findWebApplicationContext() : null);
+	}
 	/**
 	 * Returns true if all the required profiles are active in the environment.
 	 * 
@@ -114,13 +446,21 @@ public class ProfileConditionalDelegatingFilterProxy extends
 	 * are valid (not necessarily all).
 	 * 
 	 * @see Environment#acceptsProfiles(String...)
-	 * @return true if all {@link #getRequiredProfiles()} are active
+	 * @return true if all {@link #getRequiredProfiles()} are active, or the {@link #getRequiredProfileExpression()} is true
 	 */
 	protected boolean requiredProfilesAreActive() {
 		if(requiredProfiles.length == 0) {
 			return true;
 		}
-		Environment environment = findWebApplicationContext().getEnvironment();
+		WebApplicationContext wac = findWebApplicationContext();
+		if(wac == null) {
+			throw new IllegalStateException("No WebApplicationContext found: no ContextLoaderListener registered?");
+		}
+		Environment environment = wac.getEnvironment();
+		ProfileExpression expression = requiredProfileExpression;
+		if(expression != null) {
+			return expression.matches(environment);
+		}
 		for(String profile: requiredProfiles) {
 			if(!environment.acceptsProfiles(profile)) {
 				return false;
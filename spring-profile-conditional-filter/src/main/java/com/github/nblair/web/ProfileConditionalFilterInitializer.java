@@ -0,0 +1,112 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+import org.springframework.core.env.Environment;
+import org.springframework.web.WebApplicationInitializer;
+import org.springframework.web.context.support.StandardServletEnvironment;
+
+/**
+ * {@link WebApplicationInitializer} that registers a {@link Filter} only when a {@link ProfileExpression} is true, so
+ * that in environments where it is off the container never sees the filter at all (no startup cost, no chain hop per request).
+ * 
+ * The profiles are those active before any application context exists: the "spring.profiles.active" system property,
+ * environment variable, JNDI entry or servlet context init-param. Profiles activated programmatically on an application context
+ * are not visible here; use {@link ProfileConditionalDelegatingFilterProxy} for those.
+ * 
+ * Subclass it, or call {@link #addFilterIfActive(ServletContext, String, String, Filter)} from an existing initializer.
+ * 
+ * @author Nicholas Blair
+ */
+public abstract class ProfileConditionalFilterInitializer implements WebApplicationInitializer {
+
+	/**
+	 * @return the {@link ProfileExpression} that must be true for the filter to be registered
+	 */
+	protected abstract String getRequiredProfileExpression();
+	/**
+	 * @return the name to register the filter under
+	 */
+	protected abstract String getFilterName();
+	/**
+	 * Only called when the filter is to be registered.
+	 * 
+	 * @return the filter, for example a {@link org.springframework.web.filter.DelegatingFilterProxy}
+	 */
+	protected abstract Filter createFilter();
+	/**
+	 * @return the url patterns the filter is mapped to, default "/*"
+	 */
+	protected String[] getUrlPatterns() {
+		return new String[] { "/*" };
+	}
+	/**
+	 * @return the dispatcher types the filter is mapped for, default REQUEST only
+	 */
+	protected EnumSet<DispatcherType> getDispatcherTypes() {
+		return EnumSet.of(DispatcherType.REQUEST);
+	}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException if a filter with the same name is already registered (for example in web.xml)
+	 */
+	@Override
+	public void onStartup(ServletContext servletContext) throws ServletException {
+		if(ProfileExpression.parse(getRequiredProfileExpression()).matches(createEnvironment(servletContext))) {
+			FilterRegistration.Dynamic registration = servletContext.addFilter(getFilterName(), createFilter());
+			if(registration == null) {
+				throw new IllegalStateException("a filter named '" + getFilterName() + "' is already registered with the servlet context");
+			}
+			registration.addMappingForUrlPatterns(getDispatcherTypes(), false, getUrlPatterns());
+		}
+	}
+	/**
+	 * Register the filter only if the expression is true.
+	 * 
+	 * @param servletContext
+	 * @param requiredProfileExpression see {@link ProfileExpression}
+	 * @param filterName
+	 * @param filter
+	 * @return the registration to add mappings to, or null if the filter was not registered (the expression is false, or a
+	 * filter with the same name already is)
+	 */
+	public static FilterRegistration.Dynamic addFilterIfActive(ServletContext servletContext, String requiredProfileExpression, String filterName, Filter filter) {
+		if(!ProfileExpression.parse(requiredProfileExpression).matches(createEnvironment(servletContext))) {
+			return null;
+		}
+		return servletContext.addFilter(filterName, filter);
+	}
+	/**
+	 * 
+	 * @param servletContext
+	 * @return an {@link Environment} reading active profiles from the usual sources, including servlet context init-params
+	 */
+	static Environment createEnvironment(ServletContext servletContext) {
+		StandardServletEnvironment environment = new StandardServletEnvironment();
+		environment.initPropertySources(servletContext, null);
+		return environment;
+	}
+}
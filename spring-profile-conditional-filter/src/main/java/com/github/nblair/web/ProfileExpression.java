@@ -0,0 +1,255 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * A boolean expression over Spring profile names, for example "prod &amp; !canary" or "(dev | local) &amp; !ci".
+ * 
+ * Operators, from highest to lowest precedence: '!' (not), '&amp;' (and), '|' (or); parentheses group.
+ * Any other run of characters (excluding whitespace) is a profile name.
+ * 
+ * The expression is parsed once into postfix form over the distinct profile names it mentions (at most 64). 
+ * Evaluation first asks the {@link Environment} about each of those profiles, building a bitmask of the active ones,
+ * then evaluates the expression over the bitmask. When the expression mentions few profiles 
+ * the result for every possible bitmask is precomputed, and evaluation is a single table lookup.
+ * 
+ * @author Nicholas Blair
+ */
+public final class ProfileExpression {
+
+	/**
+	 * Precompute the result for every combination when the expression mentions at most this many profiles.
+	 */
+	static final int MAX_TABLE_PROFILES = 10;
+	
+	private static final int OP_NOT = -1;
+	private static final int OP_AND = -2;
+	private static final int OP_OR = -3;
+	
+	private final String source;
+	private final String[] profiles;
+	/**
+	 * Postfix program: values &gt;= 0 push the bit for that profile index, negative values are operators.
+	 */
+	private final int[] program;
+	/**
+	 * Result for each bitmask, or null when there are too many profiles.
+	 */
+	private final long[] table;
+	/**
+	 * 
+	 * @param source
+	 * @param profiles
+	 * @param program
+	 */
+	private ProfileExpression(String source, String[] profiles, int[] program) {
+		this.source = source;
+		this.profiles = profiles;
+		this.program = program;
+		if(profiles.length <= MAX_TABLE_PROFILES) {
+			int combinations = 1 << profiles.length;
+			long[] results = new long[(combinations + 63) >>> 6];
+			for(int mask = 0; mask < combinations; mask++) {
+				if(execute(mask)) {
+					results[mask >>> 6] |= 1L << mask;
+				}
+			}
+			this.table = results;
+		} else {
+			this.table = null;
+		}
+	}
+	/**
+	 * 
+	 * @param expression
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the expression is empty, malformed, or mentions more than 64 profiles
+	 */
+	public static ProfileExpression parse(String expression) {
+		if(expression == null) {
+			throw new IllegalArgumentException("profile expression must not be null");
+		}
+		Parser parser = new Parser(expression);
+		parser.parseOr();
+		if(parser.peek() != Parser.END) {
+			throw parser.error("unexpected '" + expression.charAt(parser.position) + "'");
+		}
+		int[] program = new int[parser.program.size()];
+		for(int i = 0; i < program.length; i++) {
+			program[i] = parser.program.get(i);
+		}
+		return new ProfileExpression(expression, parser.profiles.keySet().toArray(new String[parser.profiles.size()]), program);
+	}
+	/**
+	 * @return the distinct profile names in the expression, in order of first appearance
+	 */
+	public String[] getProfiles() {
+		return profiles.clone();
+	}
+	/**
+	 * 
+	 * @param environment
+	 * @return true if the expression is true for the profiles active in the environment
+	 * @see Environment#acceptsProfiles(String...)
+	 */
+	public boolean matches(Environment environment) {
+		long mask = 0;
+		for(int i = 0; i < profiles.length; i++) {
+			if(environment.acceptsProfiles(profiles[i])) {
+				mask |= 1L << i;
+			}
+		}
+		return evaluate(mask);
+	}
+	/**
+	 * 
+	 * @param activeMask bit i is set if {@link #getProfiles()}[i] is active
+	 * @return the value of the expression
+	 */
+	public boolean evaluate(long activeMask) {
+		if(table != null) {
+			int index = (int) (activeMask & ((1L << profiles.length) - 1));
+			return (table[index >>> 6] & (1L << index)) != 0;
+		}
+		return execute(activeMask);
+	}
+	/**
+	 * Run the postfix program.
+	 * 
+	 * @param activeMask
+	 * @return the value of the expression
+	 */
+	private boolean execute(long activeMask) {
+		// the parser guarantees the depth never exceeds the program length
+		boolean[] stack = new boolean[program.length];
+		int depth = 0;
+		for(int instruction: program) {
+			if(instruction >= 0) {
+				stack[depth++] = (activeMask & (1L << instruction)) != 0;
+			} else if(instruction == OP_NOT) {
+				stack[depth - 1] = !stack[depth - 1];
+			} else {
+				boolean right = stack[--depth];
+				stack[depth - 1] = instruction == OP_AND ? stack[depth - 1] && right : stack[depth - 1] || right;
+			}
+		}
+		return stack[0];
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return source;
+	}
+	
+	/**
+	 * Recursive descent parser emitting postfix instructions.
+	 */
+	private static final class Parser {
+		static final char END = '\0';
+		
+		private final String source;
+		private int position;
+		private final List<Integer> program = new ArrayList<>();
+		private final Map<String, Integer> profiles = new LinkedHashMap<>();
+		/**
+		 * 
+		 * @param source
+		 */
+		Parser(String source) {
+			this.source = source;
+		}
+		void parseOr() {
+			parseAnd();
+			while(peek() == '|') {
+				position++;
+				parseAnd();
+				program.add(OP_OR);
+			}
+		}
+		void parseAnd() {
+			parseNot();
+			while(peek() == '&') {
+				position++;
+				parseNot();
+				program.add(OP_AND);
+			}
+		}
+		void parseNot() {
+			if(peek() == '!') {
+				position++;
+				parseNot();
+				program.add(OP_NOT);
+			} else {
+				parsePrimary();
+			}
+		}
+		void parsePrimary() {
+			char c = peek();
+			if(c == '(') {
+				position++;
+				parseOr();
+				if(peek() != ')') {
+					throw error("expected ')'");
+				}
+				position++;
+			} else if(c == END || isOperator(c) || c == ')') {
+				throw error("expected a profile name");
+			} else {
+				int start = position;
+				while(position < source.length() && !isOperator(source.charAt(position)) && !Character.isWhitespace(source.charAt(position))) {
+					position++;
+				}
+				String profile = source.substring(start, position);
+				Integer index = profiles.get(profile);
+				if(index == null) {
+					if(profiles.size() == Long.SIZE) {
+						throw error("more than " + Long.SIZE + " distinct profiles");
+					}
+					index = profiles.size();
+					profiles.put(profile, index);
+				}
+				program.add(index);
+			}
+		}
+		/**
+		 * Skips whitespace.
+		 * 
+		 * @return the next significant character, or {@link #END}
+		 */
+		char peek() {
+			while(position < source.length() && Character.isWhitespace(source.charAt(position))) {
+				position++;
+			}
+			return position < source.length() ? source.charAt(position) : END;
+		}
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Invalid profile expression \"" + source + "\" at position " + position + ": " + message);
+		}
+		static boolean isOperator(char c) {
+			return c == '!' || c == '&' || c == '|' || c == '(' || c == ')';
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.filter.DelegatingFilterProxy;
+
+/**
+ * Sibling of {@link ProfileConditionalDelegatingFilterProxy} that invokes the delegate {@link Filter} 
+ * if and only if an {@link Environment} property has the required value, much like Spring Boot's ConditionalOnProperty.
+ * 
+ * By default the condition is true when the property is present and not "false"; see {@link #setHavingValue(String)}
+ * and {@link #setMatchIfMissing(boolean)}. When the condition is false, {@link FilterChain#doFilter(ServletRequest, ServletResponse)} 
+ * is allowed to proceed without the delegate.
+ * 
+ * Resolving a property walks every {@link PropertySource}, so the condition is evaluated on the first request and cached.
+ * It is evaluated again after a {@link ContextRefreshedEvent} or a call to {@link #refresh()}, for instance after
+ * adding a property source; {@link ConditionListener}s are told when the outcome changes.
+ * 
+ * @author Nicholas Blair
+ */
+public class PropertyConditionalDelegatingFilterProxy extends
+		DelegatingFilterProxy {
+
+	/**
+	 * Notified when a re-evaluation changes the outcome of the condition.
+	 */
+	public interface ConditionListener {
+		/**
+		 * 
+		 * @param proxy
+		 * @param active the new outcome
+		 */
+		void conditionChanged(PropertyConditionalDelegatingFilterProxy proxy, boolean active);
+	}
+	
+	private String propertyName;
+	private String havingValue;
+	private boolean matchIfMissing;
+	private final List<ConditionListener> listeners = new CopyOnWriteArrayList<ConditionListener>();
+	/**
+	 * Cached result of {@link #conditionMatches()}.
+	 */
+	private final CachedCondition<Boolean> condition = new CachedCondition<Boolean>() {
+		@Override
+		protected Boolean compute() {
+			return conditionMatches();
+		}
+		@Override
+		protected void changed(Boolean active) {
+			for(ConditionListener listener: listeners) {
+				listener.conditionChanged(PropertyConditionalDelegatingFilterProxy.this, active);
+			}
+		}
+		@Override
+		protected void refreshed() {
+			refresh();
+		}
+	};
+	/**
+	 * 
+	 */
+	public PropertyConditionalDelegatingFilterProxy() {
+		super();
+	}
+	/**
+	 * @param delegate
+	 */
+	public PropertyConditionalDelegatingFilterProxy(Filter delegate) {
+		super(delegate);
+	}
+	/**
+	 * @param targetBeanName
+	 * @param wac
+	 */
+	public PropertyConditionalDelegatingFilterProxy(String targetBeanName,
+			WebApplicationContext wac) {
+		super(targetBeanName, wac);
+	}
+	/**
+	 * @param targetBeanName
+	 */
+	public PropertyConditionalDelegatingFilterProxy(String targetBeanName) {
+		super(targetBeanName);
+	}
+	/**
+	 * 
+	 * @param propertyName the property to check, null to always invoke the delegate
+	 * @return this
+	 */
+	public PropertyConditionalDelegatingFilterProxy setPropertyName(String propertyName) {
+		this.propertyName = propertyName;
+		condition.invalidate();
+		return this;
+	}
+	/**
+	 * @return the propertyName
+	 */
+	public String getPropertyName() {
+		return propertyName;
+	}
+	/**
+	 * 
+	 * @param havingValue the value (compared ignoring case) the property must have; null to accept any value other than "false"
+	 * @return this
+	 */
+	public PropertyConditionalDelegatingFilterProxy setHavingValue(String havingValue) {
+		this.havingValue = havingValue;
+		condition.invalidate();
+		return this;
+	}
+	/**
+	 * @return the havingValue
+	 */
+	public String getHavingValue() {
+		return havingValue;
+	}
+	/**
+	 * 
+	 * @param matchIfMissing true to invoke the delegate when the property isn't set (default is false)
+	 * @return this
+	 */
+	public PropertyConditionalDelegatingFilterProxy setMatchIfMissing(boolean matchIfMissing) {
+		this.matchIfMissing = matchIfMissing;
+		condition.invalidate();
+		return this;
+	}
+	/**
+	 * @return the matchIfMissing
+	 */
+	public boolean isMatchIfMissing() {
+		return matchIfMissing;
+	}
+	/**
+	 * 
+	 * @param listener
+	 * @return this
+	 */
+	public PropertyConditionalDelegatingFilterProxy addConditionListener(ConditionListener listener) {
+		this.listeners.add(listener);
+		return this;
+	}
+	/**
+	 * 
+	 * @param listener
+	 */
+	public void removeConditionListener(ConditionListener listener) {
+		this.listeners.remove(listener);
+	}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * When the condition is false at startup, the delegate bean is not looked up (or created, if lazy);
+	 * {@link DelegatingFilterProxy} resolves it on the first request after the condition becomes true.
+	 */
+	@Override
+	protected void initFilterBean() throws ServletException {
+		if(propertyName != null && findWebApplicationContext() != null && !evaluateCondition()) {
+			if(getTargetBeanName() == null) {
+				setTargetBeanName(getFilterName());
+			}
+			return;
+		}
+		super.initFilterBean();
+	}
+	/* (non-Javadoc)
+	 * @see org.springframework.web.filter.DelegatingFilterProxy#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain filterChain) throws ServletException, IOException {
+		Boolean decision = condition.cached();
+		if(decision == null) {
+			decision = evaluateCondition();
+		}
+		if(decision) {
+			super.doFilter(request, response, filterChain);
+		} else {
+			filterChain.doFilter(request, response);
+		}
+	}
+	/**
+	 * Discard the cached outcome and, if the {@link WebApplicationContext} is available, evaluate the condition again now,
+	 * notifying the {@link ConditionListener}s if it changed.
+	 * 
+	 * This happens automatically when the {@link WebApplicationContext} publishes a {@link ContextRefreshedEvent} 
+	 * (if it is a {@link ConfigurableApplicationContext}), so only call this after changing the property sources by other means.
+	 */
+	public void refresh() {
+		condition.invalidate();
+		if(findWebApplicationContext() != null) {
+			evaluateCondition();
+		}
+	}
+	/**
+	 * Evaluates {@link #conditionMatches()} and caches the result until the next {@link #refresh()}.
+	 * 
+	 * @return the outcome
+	 */
+	protected boolean evaluateCondition() {
+		return condition.evaluate(propertyName != null ? findWebApplicationContext() : null);
+	}
+	/**
+	 * Resolves the property from the {@link Environment}; this walks the property sources, so prefer the cached outcome.
+	 * 
+	 * @return true if there is no {@link #getPropertyName()}, or the property matches
+	 */
+	protected boolean conditionMatches() {
+		String name = propertyName;
+		if(name == null) {
+			return true;
+		}
+		WebApplicationContext wac = findWebApplicationContext();
+		if(wac == null) {
+			throw new IllegalStateException("No WebApplicationContext found: no ContextLoaderListener registered?");
+		}
+		String value = wac.getEnvironment().getProperty(name);
+		if(value == null) {
+			return matchIfMissing;
+		}
+		String required = havingValue;
+		if(required == null || required.isEmpty()) {
+			return !"false".equalsIgnoreCase(value);
+		}
+		return required.equalsIgnoreCase(value);
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Matches request paths (within the application, i.e. without the context path) against a set of
+ * servlet-mapping style patterns, compiled once:
+ * <ul>
+ * <li>"/health" - exact match, kept in a {@link Set}</li>
+ * <li>"/static/*" - "/static" and anything beneath it, kept in a character trie so a path is walked once for all prefixes</li>
+ * <li>"*.css" - extension match, compared in place against the end of the path</li>
+ * <li>"/*" - everything</li>
+ * </ul>
+ * Matching does not allocate.
+ * 
+ * @author Nicholas Blair
+ */
+public final class RequestPathMatcher {
+
+	private final String[] patterns;
+	private final boolean matchAll;
+	private final Set<String> exact = new HashSet<>();
+	/**
+	 * Extensions, including the leading '.'.
+	 */
+	private final String[] extensions;
+	private final Node prefixes = new Node();
+	/**
+	 * 
+	 * @param patterns
+	 */
+	private RequestPathMatcher(String[] patterns) {
+		this.patterns = patterns.clone();
+		boolean all = false;
+		Set<String> extensionSet = new HashSet<>();
+		for(String pattern: patterns) {
+			if(pattern == null || pattern.isEmpty()) {
+				throw new IllegalArgumentException("pattern must not be empty");
+			}
+			if("/*".equals(pattern)) {
+				all = true;
+			} else if(pattern.startsWith("*.")) {
+				if(pattern.length() == 2 || pattern.indexOf('/') >= 0) {
+					throw new IllegalArgumentException("Invalid extension pattern: " + pattern);
+				}
+				extensionSet.add(pattern.substring(1));
+			} else if(!pattern.startsWith("/")) {
+				throw new IllegalArgumentException("Pattern must start with '/' or '*.': " + pattern);
+			} else if(pattern.endsWith("/*")) {
+				prefixes.add(pattern.substring(0, pattern.length() - 2));
+			} else if(pattern.indexOf('*') >= 0) {
+				throw new IllegalArgumentException("'*' is only allowed as \"/prefix/*\" or \"*.extension\": " + pattern);
+			} else {
+				exact.add(pattern);
+			}
+		}
+		this.matchAll = all;
+		this.extensions = extensionSet.toArray(new String[extensionSet.size()]);
+	}
+	/**
+	 * 
+	 * @param patterns
+	 * @return the compiled patterns
+	 * @throws IllegalArgumentException if a pattern is malformed
+	 */
+	public static RequestPathMatcher compile(String... patterns) {
+		return new RequestPathMatcher(patterns);
+	}
+	/**
+	 * 
+	 * @param path a path within the application, starting with '/'
+	 * @return true if any of the patterns match the path
+	 */
+	public boolean matches(String path) {
+		if(matchAll) {
+			return true;
+		}
+		if(path == null) {
+			return false;
+		}
+		if(!exact.isEmpty() && exact.contains(path)) {
+			return true;
+		}
+		if(extensions.length > 0) {
+			int slash = path.lastIndexOf('/');
+			for(String extension: extensions) {
+				if(path.endsWith(extension) && path.length() - extension.length() > slash + 1) {
+					return true;
+				}
+			}
+		}
+		return prefixes.matches(path);
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "RequestPathMatcher " + Arrays.toString(patterns);
+	}
+	
+	/**
+	 * Character trie node for prefix patterns.
+	 */
+	private static final class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		/**
+		 * True if a prefix ends at this node.
+		 */
+		private boolean terminal;
+		/**
+		 * 
+		 * @param prefix
+		 */
+		void add(String prefix) {
+			Node node = this;
+			for(int i = 0; i < prefix.length(); i++) {
+				node = node.child(prefix.charAt(i), true);
+			}
+			node.terminal = true;
+		}
+		/**
+		 * 
+		 * @param key
+		 * @param create
+		 * @return the child for the key, or null if absent and not created
+		 */
+		Node child(char key, boolean create) {
+			for(int i = 0; i < keys.length; i++) {
+				if(keys[i] == key) {
+					return children[i];
+				}
+			}
+			if(!create) {
+				return null;
+			}
+			keys = Arrays.copyOf(keys, keys.length + 1);
+			children = Arrays.copyOf(children, children.length + 1);
+			keys[keys.length - 1] = key;
+			return children[children.length - 1] = new Node();
+		}
+		/**
+		 * 
+		 * @param path
+		 * @return true if a prefix matches the path at a segment boundary
+		 */
+		boolean matches(String path) {
+			Node node = this;
+			for(int i = 0; ; i++) {
+				// "/static/*" matches "/static" and "/static/...", but not "/staticfile"
+				if(node.terminal && (i == path.length() || path.charAt(i) == '/')) {
+					return true;
+				}
+				if(i == path.length() || (node = node.child(path.charAt(i), false)) == null) {
+					return false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Decides which requests fall within a sample of a configured share of traffic, and counts the decisions.
+ * 
+ * Each decision is made without locks or shared state: from {@link ThreadLocalRandom}, or, when sticky, from a hash
+ * of the session id or remote user so every request in a sampled session (or from a sampled user) is sampled. Requests
+ * without a session or user fall back to the random decision. The counters are striped, so request threads don't contend on them.
+ * 
+ * @author Nicholas Blair
+ */
+public final class RequestSampler {
+
+	/**
+	 * What keeps a sampling decision the same across requests.
+	 */
+	public enum Stickiness {
+		/**
+		 * Every request is sampled independently.
+		 */
+		NONE,
+		/**
+		 * Requests in the same {@link HttpSession} are sampled together; no session is created.
+		 */
+		SESSION,
+		/**
+		 * Requests with the same {@link HttpServletRequest#getRemoteUser()} are sampled together.
+		 */
+		USER;
+	}
+	
+	private static final long SCALE = 1L << 32;
+	
+	private final double rate;
+	private final Stickiness stickiness;
+	/**
+	 * A request is sampled when a uniform 32 bit value falls below this.
+	 */
+	private final long threshold;
+	private final StripedCounter sampled = new StripedCounter();
+	private final StripedCounter bypassed = new StripedCounter();
+	/**
+	 * 
+	 * @param rate the share of requests to sample, between 0 and 1 (for example 0.01 for 1%)
+	 * @param stickiness null for {@link Stickiness#NONE}
+	 * @throws IllegalArgumentException if the rate is out of range
+	 */
+	public RequestSampler(double rate, Stickiness stickiness) {
+		if(!(rate >= 0d && rate <= 1d)) {
+			throw new IllegalArgumentException("rate must be between 0 and 1: " + rate);
+		}
+		this.rate = rate;
+		this.stickiness = stickiness != null ? stickiness : Stickiness.NONE;
+		this.threshold = (long) (rate * SCALE);
+	}
+	/**
+	 * @return the rate
+	 */
+	public double getRate() {
+		return rate;
+	}
+	/**
+	 * @return the stickiness
+	 */
+	public Stickiness getStickiness() {
+		return stickiness;
+	}
+	/**
+	 * Decide, and count, whether the request is in the sample.
+	 * 
+	 * @param request
+	 * @return true if the request is sampled
+	 */
+	public boolean sample(ServletRequest request) {
+		boolean decision = inSample(request);
+		if(decision) {
+			sampled.increment();
+		} else {
+			bypassed.increment();
+		}
+		return decision;
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return true if the request is sampled
+	 */
+	boolean inSample(ServletRequest request) {
+		String key = stickinessKey(request);
+		long value;
+		if(key != null) {
+			value = mix(key.hashCode()) & 0xffffffffL;
+		} else {
+			value = ThreadLocalRandom.current().nextInt() & 0xffffffffL;
+		}
+		return value < threshold;
+	}
+	/**
+	 * 
+	 * @param request
+	 * @return the value the decision should stick to, or null for a random decision
+	 */
+	private String stickinessKey(ServletRequest request) {
+		if(stickiness == Stickiness.NONE || !(request instanceof HttpServletRequest)) {
+			return null;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		if(stickiness == Stickiness.SESSION) {
+			HttpSession session = httpRequest.getSession(false);
+			return session != null ? session.getId() : null;
+		}
+		return httpRequest.getRemoteUser();
+	}
+	/**
+	 * Spread a {@link String#hashCode()} over all 32 bits (the murmur3 finalizer), so similar keys don't land together.
+	 * 
+	 * @param h
+	 * @return the mixed hash
+	 */
+	static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	/**
+	 * @return the number of requests sampled so far
+	 */
+	public long getSampledCount() {
+		return sampled.sum();
+	}
+	/**
+	 * @return the number of requests left out of the sample so far
+	 */
+	public long getBypassedCount() {
+		return bypassed.sum();
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for hot paths that many request threads increment at once.
+ * 
+ * Increments are spread across padded cells chosen by thread id, so threads rarely contend for the same cache line;
+ * {@link #sum()} adds the cells up. The sum is not an atomic snapshot while increments are in progress.
+ * 
+ * @author Nicholas Blair
+ */
+final class StripedCounter {
+
+	/**
+	 * Longs per cell; cells are 128 bytes apart to keep them on separate cache lines.
+	 */
+	private static final int PADDING = 16;
+	private final AtomicLongArray cells;
+	private final int mask;
+	/**
+	 * Sized to the number of available processors.
+	 */
+	StripedCounter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * 
+	 * @param stripes rounded up to a power of 2
+	 */
+	StripedCounter(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.mask = size - 1;
+		this.cells = new AtomicLongArray(size * PADDING);
+	}
+	/**
+	 * Add one.
+	 */
+	void increment() {
+		long id = Thread.currentThread().getId();
+		int stripe = (int) (id ^ (id >>> 16)) & mask;
+		cells.getAndIncrement(stripe * PADDING);
+	}
+	/**
+	 * 
+	 * @return the total of all increments
+	 */
+	long sum() {
+		long sum = 0;
+		for(int i = 0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+/**
+ * Tests for {@link CachedCondition}.
+ * 
+ * @author Nicholas Blair
+ */
+public class CachedConditionTest {
+
+	/**
+	 * Verify the outcome is computed once until invalidated, and changes are reported.
+	 */
+	@Test
+	public void evaluate_cached_until_invalidated() {
+		CountingCondition condition = new CountingCondition();
+		assertNull(condition.cached());
+		assertEquals("a", condition.evaluate(null));
+		assertEquals("a", condition.cached());
+		assertEquals(1, condition.computed);
+		
+		condition.invalidate();
+		assertNull(condition.cached());
+		assertEquals("a", condition.evaluate(null));
+		assertEquals(0, condition.changes.size());
+		
+		condition.outcome = "b";
+		condition.invalidate();
+		assertEquals("b", condition.evaluate(null));
+		assertEquals(3, condition.computed);
+		assertEquals(1, condition.changes.size());
+	}
+	/**
+	 * Verify an evaluation racing with {@link CachedCondition#invalidate()} doesn't cache its outcome.
+	 */
+	@Test
+	public void evaluate_racing_invalidate() {
+		CountingCondition condition = new CountingCondition() {
+			@Override
+			protected String compute() {
+				String result = super.compute();
+				invalidate();
+				return result;
+			}
+		};
+		assertEquals("a", condition.evaluate(null));
+		assertNull(condition.cached());
+	}
+	/**
+	 * Verify a {@link ContextRefreshedEvent} invalidates the outcome, with a single listener however often it is evaluated.
+	 */
+	@Test
+	public void evaluate_invalidated_by_refresh() {
+		StaticWebApplicationContext wac = new StaticWebApplicationContext();
+		wac.refresh();
+		CountingCondition condition = new CountingCondition();
+		condition.evaluate(wac);
+		condition.invalidate();
+		condition.evaluate(wac);
+		
+		wac.publishEvent(new ContextRefreshedEvent(wac));
+		assertNull(condition.cached());
+		assertEquals(1, condition.refreshes);
+	}
+	
+	/**
+	 * Condition returning {@link #outcome}, counting computations and changes.
+	 */
+	static class CountingCondition extends CachedCondition<String> {
+		String outcome = "a";
+		int computed;
+		int refreshes;
+		final List<String> changes = new ArrayList<>();
+		@Override
+		protected String compute() {
+			computed++;
+			return outcome;
+		}
+		@Override
+		protected void changed(String value) {
+			changes.add(value);
+		}
+		@Override
+		protected void refreshed() {
+			refreshes++;
+			super.refreshed();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyCircuitBreaker}.
+ * 
+ * @author Nicholas Blair
+ */
+public class LatencyCircuitBreakerTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+	
+	/**
+	 * Verify the breaker stays closed while the percentile is within budget.
+	 */
+	@Test
+	public void record_within_budget() {
+		LatencyCircuitBreaker breaker = new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0.9, 16, 1, TimeUnit.HOURS);
+		for(int i = 0; i < 1000; i++) {
+			// one slow call in 20 keeps the 90th percentile fast
+			breaker.record(breaker.tryAcquire(), i % 20 == 0 ? SLOW : FAST);
+		}
+		assertEquals(LatencyCircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getTripCount());
+	}
+	/**
+	 * Verify the breaker opens when the percentile exceeds the budget, then refuses calls.
+	 */
+	@Test
+	public void record_over_budget() {
+		LatencyCircuitBreaker breaker = new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0.9, 16, 1, TimeUnit.HOURS);
+		for(int i = 0; i < 16; i++) {
+			breaker.record(breaker.tryAcquire(), SLOW);
+		}
+		assertEquals(LatencyCircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(1, breaker.getTripCount());
+		assertNull(breaker.tryAcquire());
+	}
+	/**
+	 * Verify a single probe is let through after the cool-down, and closes the breaker when it is fast.
+	 * 
+	 * @throws InterruptedException 
+	 */
+	@Test
+	public void half_open_probe() throws InterruptedException {
+		LatencyCircuitBreaker breaker = new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0.5, 4, 20, TimeUnit.MILLISECONDS);
+		for(int i = 0; i < 4; i++) {
+			breaker.record(breaker.tryAcquire(), SLOW);
+		}
+		assertEquals(LatencyCircuitBreaker.State.OPEN, breaker.getState());
+		Thread.sleep(50);
+		
+		LatencyCircuitBreaker.State probe = breaker.tryAcquire();
+		assertEquals(LatencyCircuitBreaker.State.HALF_OPEN, probe);
+		assertNull(breaker.tryAcquire());
+		// a slow probe re-opens
+		breaker.record(probe, SLOW);
+		assertEquals(LatencyCircuitBreaker.State.OPEN, breaker.getState());
+		Thread.sleep(50);
+		
+		probe = breaker.tryAcquire();
+		breaker.record(probe, FAST);
+		assertEquals(LatencyCircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(LatencyCircuitBreaker.State.CLOSED, breaker.tryAcquire());
+	}
+	/**
+	 * Verify invalid arguments are rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void construct_invalid_percentile() {
+		new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0, 16, 1, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+/**
+ * Tests for {@link ProfileConditionalCompositeFilterProxy}.
+ * 
+ * @author Nicholas Blair
+ */
+public class ProfileConditionalCompositeFilterProxyTest {
+
+	/**
+	 * Verify only the delegates whose expressions are true run, in order, followed by the rest of the chain;
+	 * and that inactive delegate beans are never looked up.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_active_delegates() throws ServletException, IOException {
+		List<String> invocations = new ArrayList<>();
+		MockEnvironment environment = new MockEnvironment();
+		environment.setActiveProfiles("dev");
+		GenericWebApplicationContext wac = new GenericWebApplicationContext(new MockServletContext());
+		wac.setEnvironment(environment);
+		wac.getBeanFactory().registerSingleton("first", new RecordingFilter("first", invocations));
+		wac.getBeanFactory().registerSingleton("third", new RecordingFilter("third", invocations));
+		wac.refresh();
+		
+		ProfileConditionalCompositeFilterProxy proxy = new ProfileConditionalCompositeFilterProxy(wac)
+			.addFilter("dev", "first")
+			.addFilter("prod", "missing-bean")
+			.addFilter(null, new RecordingFilter("second", invocations))
+			.addFilter("dev & !ci", "third");
+		
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		proxy.doFilter(request, response, chain);
+		
+		assertEquals(Arrays.asList("first", "second", "third"), invocations);
+		verify(chain).doFilter(request, response);
+		
+		environment.setActiveProfiles("dev", "ci");
+		wac.publishEvent(new ContextRefreshedEvent(wac));
+		assertEquals(2, proxy.getActiveFilters().length);
+	}
+	/**
+	 * Verify the chain continues when no delegates are active.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_no_active_delegates() throws ServletException, IOException {
+		MockServletContext servletContext = new MockServletContext();
+		GenericWebApplicationContext wac = new GenericWebApplicationContext(servletContext);
+		wac.setEnvironment(new MockEnvironment());
+		wac.refresh();
+		servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+		ProfileConditionalCompositeFilterProxy proxy = new ProfileConditionalCompositeFilterProxy()
+			.addFilter("prod", "missing-bean");
+		proxy.setServletContext(servletContext);
+		
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain chain = mock(FilterChain.class);
+		proxy.doFilter(request, response, chain);
+		verify(chain).doFilter(request, response);
+		assertArrayEquals(new Filter[0], proxy.getActiveFilters());
+	}
+	
+	/**
+	 * Filter that records its name and continues the chain.
+	 */
+	static class RecordingFilter implements Filter {
+		private final String name;
+		private final List<String> invocations;
+		RecordingFilter(String name, List<String> invocations) {
+			this.name = name;
+			this.invocations = invocations;
+		}
+		@Override
+		public void init(FilterConfig filterConfig) throws ServletException {
+		}
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+			invocations.add(name);
+			chain.doFilter(request, response);
+		}
+		@Override
+		public void destroy() {
+		}
+	}
+}
@@ -16,24 +16,37 @@
  */
 package com.github.nblair.web;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.env.Environment;
 import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
 
 /**
  * Tests for {@link ProfileConditionalDelegatingFilterProxy}.
@@ -155,6 +168,286 @@ public class ProfileConditionalDelegatingFilterProxyTest {
 		verify(filterChain).doFilter(request, response);
 	}
 	
+	/**
+	 * Verify behavior with a required profile expression.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_required_profile_expression() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy(delegate);
+		filterProxy.setRequiredProfileExpression("prod & !canary");
+		MockEnvironment environment = new MockEnvironment();
+		environment.setActiveProfiles("prod", "canary");
+		filterProxy.setServletContext(mockServletContextWithEnvironment(environment));
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		verify(filterChain).doFilter(request, response);
+		
+		environment.setActiveProfiles("prod");
+		filterProxy.reevaluateRequiredProfiles();
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate).doFilter(request, response, filterChain);
+	}
+	/**
+	 * Verify the delegate bean is not looked up at startup when the required profile is inactive, and is when it's active.
+	 * 
+	 * @throws ServletException
+	 */
+	@Test
+	public void initFilterBean_deferred_when_inactive() throws ServletException {
+		MockEnvironment environment = new MockEnvironment();
+		ServletContext servletContext = mockServletContextWithEnvironment(environment);
+		WebApplicationContext wac = (WebApplicationContext) servletContext.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy("expensiveFilter");
+		filterProxy.setRequiredProfile("foo");
+		filterProxy.setServletContext(servletContext);
+		filterProxy.afterPropertiesSet();
+		verify(wac, never()).getBean("expensiveFilter", Filter.class);
+		
+		environment.setActiveProfiles("foo");
+		ProfileConditionalDelegatingFilterProxy activeProxy = new ProfileConditionalDelegatingFilterProxy("expensiveFilter");
+		activeProxy.setRequiredProfile("foo");
+		activeProxy.setServletContext(servletContext);
+		activeProxy.afterPropertiesSet();
+		verify(wac).getBean("expensiveFilter", Filter.class);
+	}
+	/**
+	 * Verify include and exclude patterns, and dispatcher types, limit which requests reach the delegate.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_patterns_and_dispatcher_types() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy(delegate)
+			.setIncludePatterns("/app/*")
+			.setExcludePatterns("*.css", "/app/health")
+			.setDispatcherTypes(DispatcherType.REQUEST);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		HttpServletRequest included = request("/context/app/page", DispatcherType.REQUEST);
+		filterProxy.doFilter(included, response, filterChain);
+		verify(delegate).doFilter(included, response, filterChain);
+		
+		for(String uri: new String[] { "/context/other", "/context/app/site.css", "/context/app/health" }) {
+			HttpServletRequest excluded = request(uri, DispatcherType.REQUEST);
+			filterProxy.doFilter(excluded, response, filterChain);
+			verify(delegate, never()).doFilter(excluded, response, filterChain);
+			verify(filterChain).doFilter(excluded, response);
+		}
+		
+		HttpServletRequest forwarded = request("/context/app/page", DispatcherType.FORWARD);
+		filterProxy.doFilter(forwarded, response, filterChain);
+		verify(delegate, never()).doFilter(forwarded, response, filterChain);
+	}
+	/**
+	 * 
+	 * @param requestURI
+	 * @param dispatcherType
+	 * @return a mock request under the "/context" context path
+	 */
+	private static HttpServletRequest request(String requestURI, DispatcherType dispatcherType) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRequestURI()).thenReturn(requestURI);
+		when(request.getContextPath()).thenReturn("/context");
+		when(request.getDispatcherType()).thenReturn(dispatcherType);
+		return request;
+	}
+	/**
+	 * Verify a re-dispatch made while the delegate is in progress skips the delegate when once-per-request is set.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_once_per_request() throws ServletException, IOException {
+		final AtomicInteger invocations = new AtomicInteger();
+		final ProfileConditionalDelegatingFilterProxy[] holder = new ProfileConditionalDelegatingFilterProxy[1];
+		Filter delegate = new Filter() {
+			@Override
+			public void init(FilterConfig filterConfig) {
+			}
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+				if(invocations.incrementAndGet() == 1) {
+					// simulate a FORWARD back through the proxy
+					holder[0].doFilter(request, response, chain);
+				} else {
+					chain.doFilter(request, response);
+				}
+			}
+			@Override
+			public void destroy() {
+			}
+		};
+		holder[0] = new ProfileConditionalDelegatingFilterProxy(delegate).setOncePerRequest(true);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/page");
+		FilterChain filterChain = mock(FilterChain.class);
+		holder[0].doFilter(request, mock(ServletResponse.class), filterChain);
+		assertEquals(1, invocations.get());
+		assertTrue(Collections.list(request.getAttributeNames()).isEmpty());
+		
+		// a new request gets the delegate again
+		holder[0].doFilter(new MockHttpServletRequest("GET", "/page"), mock(ServletResponse.class), filterChain);
+		assertEquals(2, invocations.get());
+	}
+	/**
+	 * Verify a sample rate limits the requests that reach the delegate, and the sampler counts them.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_sample_rate() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy(delegate).setSampleRate(0);
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		verify(filterChain).doFilter(request, response);
+		assertEquals(1, filterProxy.getSampler().getBypassedCount());
+		
+		filterProxy.setSampleRate(1);
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate).doFilter(request, response, filterChain);
+		assertEquals(1, filterProxy.getSampler().getSampledCount());
+	}
+	/**
+	 * Verify a slow delegate is bypassed once the circuit breaker opens, and that time spent downstream isn't held against it.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_latency_budget() throws ServletException, IOException {
+		final AtomicInteger invocations = new AtomicInteger();
+		final AtomicInteger slowDownstream = new AtomicInteger();
+		Filter delegate = new Filter() {
+			@Override
+			public void init(FilterConfig filterConfig) {
+			}
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+				invocations.incrementAndGet();
+				if(slowDownstream.get() == 0) {
+					sleep(20);
+				}
+				chain.doFilter(request, response);
+			}
+			@Override
+			public void destroy() {
+			}
+		};
+		FilterChain filterChain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) {
+				if(slowDownstream.get() == 1) {
+					sleep(20);
+				}
+			}
+		};
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		
+		ProfileConditionalDelegatingFilterProxy slowApplication = new ProfileConditionalDelegatingFilterProxy(delegate)
+			.setCircuitBreaker(new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0.5, 2, 1, TimeUnit.HOURS));
+		slowDownstream.set(1);
+		for(int i = 0; i < 4; i++) {
+			slowApplication.doFilter(request, response, filterChain);
+		}
+		assertEquals(LatencyCircuitBreaker.State.CLOSED, slowApplication.getCircuitBreaker().getState());
+		assertEquals(4, invocations.getAndSet(0));
+		
+		ProfileConditionalDelegatingFilterProxy slowDelegate = new ProfileConditionalDelegatingFilterProxy(delegate)
+			.setCircuitBreaker(new LatencyCircuitBreaker(10, TimeUnit.MILLISECONDS, 0.5, 2, 1, TimeUnit.HOURS));
+		slowDownstream.set(0);
+		for(int i = 0; i < 4; i++) {
+			slowDelegate.doFilter(request, response, filterChain);
+		}
+		assertEquals(LatencyCircuitBreaker.State.OPEN, slowDelegate.getCircuitBreaker().getState());
+		assertEquals(2, invocations.get());
+	}
+	/**
+	 * 
+	 * @param millis
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	 * Verify the decision is cached, and made again after {@link ProfileConditionalDelegatingFilterProxy#reevaluateRequiredProfiles()}.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_decision_cached() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy(delegate);
+		filterProxy.setRequiredProfile("foo");
+		MockEnvironment environment = new MockEnvironment();
+		ServletContext servletContext = mockServletContextWithEnvironment(environment);
+		filterProxy.setServletContext(servletContext);
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		filterProxy.doFilter(request, response, filterChain);
+		environment.setActiveProfiles("foo");
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		
+		filterProxy.reevaluateRequiredProfiles();
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate).doFilter(request, response, filterChain);
+	}
+	/**
+	 * Verify a {@link ContextRefreshedEvent} from the application context discards the cached decision.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_context_refreshed() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ProfileConditionalDelegatingFilterProxy filterProxy = new ProfileConditionalDelegatingFilterProxy(delegate);
+		filterProxy.setRequiredProfile("foo");
+		MockEnvironment environment = new MockEnvironment();
+		MockServletContext servletContext = new MockServletContext();
+		GenericWebApplicationContext wac = new GenericWebApplicationContext(servletContext);
+		wac.setEnvironment(environment);
+		wac.refresh();
+		servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+		filterProxy.setServletContext(servletContext);
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		filterProxy.doFilter(request, response, filterChain);
+		environment.setActiveProfiles("foo");
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		
+		wac.publishEvent(new ContextRefreshedEvent(wac));
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate).doFilter(request, response, filterChain);
+	}
+	
 	/**
 	 * Set up a {@link ServletContext} to contain a {@link WebApplicationContext} with the provided {@link Environment}.
 	 * 
@@ -0,0 +1,142 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.springframework.core.env.AbstractEnvironment;
+
+/**
+ * Tests for {@link ProfileConditionalFilterInitializer}.
+ * 
+ * @author Nicholas Blair
+ */
+public class ProfileConditionalFilterInitializerTest {
+
+	/**
+	 * Verify the filter is registered and mapped when the profiles from the servlet context match.
+	 * 
+	 * @throws ServletException
+	 */
+	@Test
+	public void onStartup_active() throws ServletException {
+		ServletContext servletContext = mockServletContext("dev");
+		FilterRegistration.Dynamic registration = mock(FilterRegistration.Dynamic.class);
+		Filter filter = mock(Filter.class);
+		when(servletContext.addFilter("devFilter", filter)).thenReturn(registration);
+		
+		new SimpleInitializer("dev | local", filter).onStartup(servletContext);
+		verify(registration).addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "/*");
+	}
+	/**
+	 * Verify nothing is registered (or created) when the profiles don't match.
+	 * 
+	 * @throws ServletException
+	 */
+	@Test
+	public void onStartup_inactive() throws ServletException {
+		ServletContext servletContext = mockServletContext("prod");
+		new SimpleInitializer("dev | local", null).onStartup(servletContext);
+		verify(servletContext, never()).addFilter(anyString(), any(Filter.class));
+	}
+	/**
+	 * Verify a filter with the same name already registered (the container returns null) is reported by name.
+	 * 
+	 * @throws ServletException
+	 */
+	@Test
+	public void onStartup_duplicate_name() throws ServletException {
+		ServletContext servletContext = mockServletContext("dev");
+		try {
+			new SimpleInitializer("dev", mock(Filter.class)).onStartup(servletContext);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("devFilter"));
+		}
+	}
+	/**
+	 * Verify {@link ProfileConditionalFilterInitializer#addFilterIfActive(ServletContext, String, String, Filter)}.
+	 */
+	@Test
+	public void addFilterIfActive() {
+		ServletContext servletContext = mockServletContext("dev");
+		FilterRegistration.Dynamic registration = mock(FilterRegistration.Dynamic.class);
+		Filter filter = mock(Filter.class);
+		when(servletContext.addFilter("devFilter", filter)).thenReturn(registration);
+		
+		assertSame(registration, ProfileConditionalFilterInitializer.addFilterIfActive(servletContext, "dev", "devFilter", filter));
+		assertNull(ProfileConditionalFilterInitializer.addFilterIfActive(servletContext, "!dev", "devFilter", filter));
+		verify(registration, never()).addMappingForUrlPatterns(Matchers.<EnumSet<DispatcherType>>any(), anyBoolean(), anyString());
+	}
+	/**
+	 * 
+	 * @param activeProfiles
+	 * @return a mock {@link ServletContext} with the active profiles as an init-param
+	 */
+	private ServletContext mockServletContext(String activeProfiles) {
+		ServletContext servletContext = mock(ServletContext.class);
+		when(servletContext.getInitParameter(AbstractEnvironment.ACTIVE_PROFILES_PROPERTY_NAME)).thenReturn(activeProfiles);
+		return servletContext;
+	}
+	
+	/**
+	 * Initializer under test.
+	 */
+	static class SimpleInitializer extends ProfileConditionalFilterInitializer {
+		private final String expression;
+		private final Filter filter;
+		SimpleInitializer(String expression, Filter filter) {
+			this.expression = expression;
+			this.filter = filter;
+		}
+		@Override
+		protected String getRequiredProfileExpression() {
+			return expression;
+		}
+		@Override
+		protected String getFilterName() {
+			return "devFilter";
+		}
+		@Override
+		protected Filter createFilter() {
+			if(filter == null) {
+				throw new AssertionError("filter should not be created");
+			}
+			return filter;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * Tests for {@link ProfileExpression}.
+ * 
+ * @author Nicholas Blair
+ */
+public class ProfileExpressionTest {
+
+	/**
+	 * Verify precedence: not binds tighter than and, which binds tighter than or.
+	 */
+	@Test
+	public void evaluate_precedence() {
+		ProfileExpression expression = ProfileExpression.parse("a | b & !c");
+		assertArrayEquals(new String[] { "a", "b", "c" }, expression.getProfiles());
+		assertTrue(expression.evaluate(0b001));
+		assertTrue(expression.evaluate(0b010));
+		assertFalse(expression.evaluate(0b110));
+		assertTrue(expression.evaluate(0b111));
+		assertFalse(expression.evaluate(0b000));
+	}
+	/**
+	 * Verify parentheses and repeated profile names.
+	 */
+	@Test
+	public void evaluate_parentheses() {
+		ProfileExpression expression = ProfileExpression.parse("(dev | local) & !(dev & ci)");
+		assertArrayEquals(new String[] { "dev", "local", "ci" }, expression.getProfiles());
+		assertTrue(expression.evaluate(0b001));
+		assertTrue(expression.evaluate(0b010));
+		assertFalse(expression.evaluate(0b101));
+		assertTrue(expression.evaluate(0b110));
+		assertEquals("(dev | local) & !(dev & ci)", expression.toString());
+	}
+	/**
+	 * Verify expressions with too many profiles for a lookup table evaluate the same way.
+	 */
+	@Test
+	public void evaluate_without_table() {
+		StringBuilder source = new StringBuilder("p0");
+		for(int i = 1; i < 20; i++) {
+			source.append(i % 2 == 0 ? " | " : " & ").append('p').append(i);
+		}
+		ProfileExpression expression = ProfileExpression.parse(source.toString());
+		assertEquals(20, expression.getProfiles().length);
+		// ((((p0 & p1) | p2) & p3) | ...): p19 is and-ed last
+		assertFalse(expression.evaluate(0));
+		assertTrue(expression.evaluate((1L << 18) | (1L << 19)));
+		assertFalse(expression.evaluate(1L << 18));
+	}
+	/**
+	 * Verify matching against an {@link org.springframework.core.env.Environment}.
+	 */
+	@Test
+	public void matches() {
+		MockEnvironment environment = new MockEnvironment();
+		environment.setActiveProfiles("prod");
+		assertTrue(ProfileExpression.parse("prod & !canary").matches(environment));
+		environment.setActiveProfiles("prod", "canary");
+		assertFalse(ProfileExpression.parse("prod & !canary").matches(environment));
+	}
+	/**
+	 * Verify malformed expressions are rejected.
+	 */
+	@Test
+	public void parse_invalid() {
+		for(String invalid: new String[] { "", "  ", "a &", "& a", "(a | b", "a b", "a | )", "!" }) {
+			try {
+				ProfileExpression.parse(invalid);
+				fail("expected IllegalArgumentException for \"" + invalid + "\"");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
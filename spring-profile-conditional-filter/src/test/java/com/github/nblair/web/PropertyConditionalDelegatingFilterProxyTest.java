@@ -0,0 +1,202 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+/**
+ * Tests for {@link PropertyConditionalDelegatingFilterProxy}.
+ * 
+ * @author Nicholas Blair
+ */
+public class PropertyConditionalDelegatingFilterProxyTest {
+
+	/**
+	 * Verify the delegate is invoked when the property is present and not "false".
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_property_present() throws ServletException, IOException {
+		assertDelegateInvoked(true, new MockEnvironment().withProperty("audit.enabled", "true"), new PropertyConditionalDelegatingFilterProxy().setPropertyName("audit.enabled"));
+		assertDelegateInvoked(true, new MockEnvironment().withProperty("audit.enabled", "yes"), new PropertyConditionalDelegatingFilterProxy().setPropertyName("audit.enabled"));
+		assertDelegateInvoked(false, new MockEnvironment().withProperty("audit.enabled", "FALSE"), new PropertyConditionalDelegatingFilterProxy().setPropertyName("audit.enabled"));
+	}
+	/**
+	 * Verify the behavior when the property is missing.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_property_missing() throws ServletException, IOException {
+		assertDelegateInvoked(false, new MockEnvironment(), new PropertyConditionalDelegatingFilterProxy().setPropertyName("audit.enabled"));
+		assertDelegateInvoked(true, new MockEnvironment(), new PropertyConditionalDelegatingFilterProxy().setPropertyName("audit.enabled").setMatchIfMissing(true));
+	}
+	/**
+	 * Verify {@link PropertyConditionalDelegatingFilterProxy#setHavingValue(String)}.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_having_value() throws ServletException, IOException {
+		assertDelegateInvoked(true, new MockEnvironment().withProperty("payload.logging", "Verbose"), 
+				new PropertyConditionalDelegatingFilterProxy().setPropertyName("payload.logging").setHavingValue("verbose"));
+		assertDelegateInvoked(false, new MockEnvironment().withProperty("payload.logging", "true"), 
+				new PropertyConditionalDelegatingFilterProxy().setPropertyName("payload.logging").setHavingValue("verbose"));
+	}
+	/**
+	 * Verify the outcome is cached, and that {@link PropertyConditionalDelegatingFilterProxy#refresh()} evaluates it again and notifies listeners.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_cached_until_refresh() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		final List<Boolean> changes = new ArrayList<Boolean>();
+		PropertyConditionalDelegatingFilterProxy filterProxy = new PropertyConditionalDelegatingFilterProxy(delegate)
+			.setPropertyName("audit.enabled")
+			.addConditionListener(new PropertyConditionalDelegatingFilterProxy.ConditionListener() {
+				@Override
+				public void conditionChanged(PropertyConditionalDelegatingFilterProxy proxy, boolean active) {
+					changes.add(active);
+				}
+			});
+		StandardEnvironment environment = new StandardEnvironment();
+		filterProxy.setServletContext(mockServletContextWithEnvironment(environment));
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		filterProxy.doFilter(request, response, filterChain);
+		environment.getPropertySources().addFirst(new MapPropertySource("overrides", Collections.<String, Object>singletonMap("audit.enabled", "true")));
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		assertEquals(Collections.emptyList(), changes);
+		
+		filterProxy.refresh();
+		assertEquals(Collections.singletonList(Boolean.TRUE), changes);
+		filterProxy.doFilter(request, response, filterChain);
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, times(2)).doFilter(request, response, filterChain);
+		
+		// refreshing without a change doesn't notify
+		filterProxy.refresh();
+		assertEquals(1, changes.size());
+	}
+	/**
+	 * Verify a {@link ContextRefreshedEvent} from the application context evaluates the condition again.
+	 * 
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	@Test
+	public void doFilter_context_refreshed() throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		PropertyConditionalDelegatingFilterProxy filterProxy = new PropertyConditionalDelegatingFilterProxy(delegate).setPropertyName("audit.enabled");
+		MockEnvironment environment = new MockEnvironment();
+		MockServletContext servletContext = new MockServletContext();
+		GenericWebApplicationContext wac = new GenericWebApplicationContext(servletContext);
+		wac.setEnvironment(environment);
+		wac.refresh();
+		servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+		filterProxy.setServletContext(servletContext);
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		
+		filterProxy.doFilter(request, response, filterChain);
+		environment.setProperty("audit.enabled", "true");
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate, never()).doFilter(request, response, filterChain);
+		
+		wac.publishEvent(new ContextRefreshedEvent(wac));
+		filterProxy.doFilter(request, response, filterChain);
+		verify(delegate).doFilter(request, response, filterChain);
+	}
+	/**
+	 * 
+	 * @param expected
+	 * @param environment
+	 * @param filterProxy a proxy created without a delegate
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	private void assertDelegateInvoked(boolean expected, Environment environment, PropertyConditionalDelegatingFilterProxy filterProxy) throws ServletException, IOException {
+		Filter delegate = mock(Filter.class);
+		ServletContext servletContext = mockServletContextWithEnvironment(environment);
+		WebApplicationContext wac = (WebApplicationContext) servletContext.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+		when(wac.getBean("delegate", Filter.class)).thenReturn(delegate);
+		filterProxy.setTargetBeanName("delegate");
+		filterProxy.setServletContext(servletContext);
+		
+		ServletRequest request = mock(ServletRequest.class);
+		ServletResponse response = mock(ServletResponse.class);
+		FilterChain filterChain = mock(FilterChain.class);
+		filterProxy.doFilter(request, response, filterChain);
+		if(expected) {
+			verify(delegate).doFilter(request, response, filterChain);
+		} else {
+			verify(delegate, never()).doFilter(request, response, filterChain);
+			verify(filterChain).doFilter(request, response);
+		}
+	}
+	/**
+	 * Set up a {@link ServletContext} to contain a {@link WebApplicationContext} with the provided {@link Environment}.
+	 * 
+	 * @param environment
+	 * @return a mock {@link ServletContext} ready for use in the delegate filter proxy
+	 */
+	protected ServletContext mockServletContextWithEnvironment(Environment environment) {
+		ServletContext servletContext = mock(ServletContext.class);
+		WebApplicationContext wac = mock(WebApplicationContext.class);
+	
+		when(wac.getEnvironment()).thenReturn(environment);
+		when(servletContext.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE)).thenReturn(wac);
+		return servletContext;
+	}
+}
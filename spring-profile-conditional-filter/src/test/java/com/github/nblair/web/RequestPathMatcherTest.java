@@ -0,0 +1,69 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestPathMatcher}.
+ * 
+ * @author Nicholas Blair
+ */
+public class RequestPathMatcherTest {
+
+	/**
+	 * Verify exact, prefix and extension patterns.
+	 */
+	@Test
+	public void matches() {
+		RequestPathMatcher matcher = RequestPathMatcher.compile("/health", "/static/*", "/static/images/*", "/st/*", "*.css", "*.min.js");
+		assertTrue(matcher.matches("/health"));
+		assertFalse(matcher.matches("/health/details"));
+		assertTrue(matcher.matches("/static"));
+		assertTrue(matcher.matches("/static/app.js"));
+		assertTrue(matcher.matches("/static/images/logo.png"));
+		assertTrue(matcher.matches("/st/x"));
+		assertFalse(matcher.matches("/staticfile"));
+		assertFalse(matcher.matches("/stat"));
+		assertTrue(matcher.matches("/app/site.css"));
+		assertTrue(matcher.matches("/app/vendor.min.js"));
+		assertFalse(matcher.matches("/app/app.js"));
+		assertFalse(matcher.matches("/app/.css"));
+		assertFalse(matcher.matches("/css/index.html"));
+		assertFalse(matcher.matches("/"));
+		assertFalse(matcher.matches(null));
+	}
+	/**
+	 * Verify "/*" matches everything.
+	 */
+	@Test
+	public void matches_all() {
+		RequestPathMatcher matcher = RequestPathMatcher.compile("/*");
+		assertTrue(matcher.matches("/"));
+		assertTrue(matcher.matches("/anything/at/all"));
+	}
+	/**
+	 * Verify malformed patterns are rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void compile_invalid() {
+		RequestPathMatcher.compile("/static/*.js");
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RequestSampler}.
+ * 
+ * @author Nicholas Blair
+ */
+public class RequestSamplerTest {
+
+	/**
+	 * Verify the sampled share is close to the rate, and the counters add up.
+	 */
+	@Test
+	public void sample_rate() {
+		RequestSampler sampler = new RequestSampler(0.1, null);
+		ServletRequest request = mock(ServletRequest.class);
+		for(int i = 0; i < 100000; i++) {
+			sampler.sample(request);
+		}
+		assertEquals(100000, sampler.getSampledCount() + sampler.getBypassedCount());
+		assertTrue(Long.toString(sampler.getSampledCount()), sampler.getSampledCount() > 9000 && sampler.getSampledCount() < 11000);
+	}
+	/**
+	 * Verify the rates at either end of the range.
+	 */
+	@Test
+	public void sample_none_or_all() {
+		ServletRequest request = mock(ServletRequest.class);
+		RequestSampler none = new RequestSampler(0, null);
+		RequestSampler all = new RequestSampler(1, null);
+		for(int i = 0; i < 1000; i++) {
+			assertFalse(none.sample(request));
+			assertTrue(all.sample(request));
+		}
+		assertEquals(1000, none.getBypassedCount());
+		assertEquals(1000, all.getSampledCount());
+	}
+	/**
+	 * Verify decisions stick to the user, and spread across users.
+	 */
+	@Test
+	public void sample_sticky_user() {
+		RequestSampler sampler = new RequestSampler(0.5, RequestSampler.Stickiness.USER);
+		int sampledUsers = 0;
+		for(int i = 0; i < 1000; i++) {
+			HttpServletRequest request = mock(HttpServletRequest.class);
+			when(request.getRemoteUser()).thenReturn("user-" + i);
+			boolean first = sampler.sample(request);
+			for(int j = 0; j < 5; j++) {
+				assertEquals(first, sampler.sample(request));
+			}
+			if(first) {
+				sampledUsers++;
+			}
+		}
+		assertTrue(Integer.toString(sampledUsers), sampledUsers > 400 && sampledUsers < 600);
+	}
+	/**
+	 * Verify decisions stick to the session, without creating one.
+	 */
+	@Test
+	public void sample_sticky_session() {
+		RequestSampler sampler = new RequestSampler(0.5, RequestSampler.Stickiness.SESSION);
+		HttpSession session = mock(HttpSession.class);
+		when(session.getId()).thenReturn("ABCDEF0123456789");
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getSession(false)).thenReturn(session);
+		boolean first = sampler.sample(request);
+		for(int i = 0; i < 10; i++) {
+			assertEquals(first, sampler.sample(request));
+		}
+	}
+	/**
+	 * Verify rates outside 0 to 1 are rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void construct_invalid_rate() {
+		new RequestSampler(1.5, null);
+	}
+}
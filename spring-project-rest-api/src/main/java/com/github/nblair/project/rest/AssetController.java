@@ -0,0 +1,328 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.wordnik.swagger.annotations.ApiOperation;
+
+/**
+ * {@link Controller} serving the static assets bundled by the build-descriptor-maven-plugin's bundle goal (like the angularjs-project-support
+ * directives) straight from the jars that contain them.
+ * 
+ * Every asset-manifest.json matching {@link #ASSET_MANIFESTS} lists content-hashed files, which are served under /assets/ with
+ * {@link #CACHE_CONTROL}: since a new version of a file gets a new name, browsers download each at most once. The precompressed ".gz" 
+ * variant is sent to clients that accept gzip. Each file is read from its jar once and then served from memory; only files named
+ * in a manifest are served, so the memory used is bounded by the bundles on the classpath.
+ * 
+ * Pages find the current names in /assets/asset-manifest.json (which is revalidated, not cached), or from {@link #hashedPath(String)}:
+ * <pre>
+&lt;script src="assets/build/build_directive.1fee0bcb529b.js"&gt;&lt;/script&gt;
+ </pre>
+ * 
+ * @author Nicholas Blair
+ */
+@Controller
+public class AssetController {
+
+  public static final String ASSET_MANIFESTS = "classpath*:META-INF/com.github.nblair/*/asset-manifest.json";
+  public static final String ASSETS = "/assets/**";
+  /**
+   * The hashed files never change, so caches may keep them for a year without revalidating.
+   */
+  public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+  static final String GZIP_SUFFIX = ".gz";
+  private static final Map<String, MediaType> CONTENT_TYPES;
+  static {
+    Map<String, MediaType> contentTypes = new HashMap<String, MediaType>();
+    contentTypes.put("js", new MediaType("application", "javascript", EncodedBuild.UTF_8));
+    contentTypes.put("css", new MediaType("text", "css", EncodedBuild.UTF_8));
+    contentTypes.put("html", new MediaType("text", "html", EncodedBuild.UTF_8));
+    contentTypes.put("json", new MediaType("application", "json", EncodedBuild.UTF_8));
+    contentTypes.put("map", new MediaType("application", "json", EncodedBuild.UTF_8));
+    contentTypes.put("svg", new MediaType("image", "svg+xml"));
+    contentTypes.put("png", MediaType.IMAGE_PNG);
+    contentTypes.put("gif", MediaType.IMAGE_GIF);
+    CONTENT_TYPES = Collections.unmodifiableMap(contentTypes);
+  }
+  
+  /**
+   * The manifests on the classpath, read on the first request.
+   */
+  static final class AssetIndex {
+    private final Map<String, String> hashedPaths;
+    private final Map<String, Resource> resources;
+    private final Representation manifest;
+    /**
+     * 
+     * @param hashedPaths the hashed path for each original path
+     * @param resources the resource for each hashed path
+     */
+    AssetIndex(Map<String, String> hashedPaths, Map<String, Resource> resources) {
+      this.hashedPaths = hashedPaths;
+      this.resources = resources;
+      StringBuilder json = new StringBuilder("{");
+      for(Map.Entry<String, String> entry: hashedPaths.entrySet()) {
+        if(json.length() > 1) {
+          json.append(',');
+        }
+        EncodedBuild.appendJsonString(json, entry.getKey());
+        json.append(':');
+        EncodedBuild.appendJsonString(json, entry.getValue());
+      }
+      json.append('}');
+      this.manifest = new Representation(json.toString().getBytes(EncodedBuild.UTF_8), new MediaType("application", "json", EncodedBuild.UTF_8), null);
+    }
+  }
+  /**
+   * A file read from its jar, with its precompressed variant if it has one.
+   */
+  static final class Asset {
+    private final Representation identity;
+    private final Representation gzip;
+    /**
+     * 
+     * @param identity
+     * @param gzip null if there is no gzip variant
+     */
+    Asset(Representation identity, Representation gzip) {
+      this.identity = identity;
+      this.gzip = gzip;
+    }
+    /**
+     * 
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @return the gzip variant if there is one and it's accepted, otherwise the identity
+     */
+    Representation select(String acceptEncoding) {
+      return gzip != null && EncodedBuild.acceptsGzip(acceptEncoding) ? gzip : identity;
+    }
+  }
+  
+  private final AntPathMatcher pathMatcher = new AntPathMatcher();
+  private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<String, Asset>();
+  private String manifestLocations = ASSET_MANIFESTS;
+  private volatile AssetIndex index;
+  /**
+   * Visible for testing.
+   * 
+   * @param manifestLocations the pattern matching the asset-manifest.json files
+   */
+  void setManifestLocations(String manifestLocations) {
+    this.manifestLocations = manifestLocations;
+    this.index = null;
+    this.assets.clear();
+  }
+  /**
+   * 
+   * @param path the original path of an asset, relative to its bundle (like "build/build_directive.js")
+   * @return the path to request under /assets/, or null if no bundle on the classpath has the asset
+   */
+  public String hashedPath(String path) {
+    return index().hashedPaths.get(path);
+  }
+  /**
+   * 
+   * @param ifNoneMatch the If-None-Match header
+   * @return the merged asset-manifest.json of the bundles on the classpath
+   */
+  @ApiOperation(value="Asset manifest", notes="Retrieve the content-hashed name of each bundled asset.")
+  @RequestMapping(value="/assets/asset-manifest.json", method=RequestMethod.GET, produces=MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> manifest(@RequestHeader(value="If-None-Match", required=false) String ifNoneMatch) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl(ProjectController.CACHE_CONTROL);
+    return index().manifest.toResponseEntity(headers, ifNoneMatch);
+  }
+  /**
+   * 
+   * @param request
+   * @param acceptEncoding the Accept-Encoding header
+   * @param ifNoneMatch the If-None-Match header
+   * @return the bundled asset at the path under /assets/
+   */
+  @ApiOperation(value="Bundled assets", notes="Retrieve a content-hashed asset; it never changes, so it may be cached for a year.")
+  @RequestMapping(value=ASSETS, method=RequestMethod.GET)
+  public ResponseEntity<byte[]> asset(HttpServletRequest request, 
+      @RequestHeader(value="Accept-Encoding", required=false) String acceptEncoding,
+      @RequestHeader(value="If-None-Match", required=false) String ifNoneMatch) {
+    String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    return asset(pathMatcher.extractPathWithinPattern(ASSETS, path), acceptEncoding, ifNoneMatch);
+  }
+  /**
+   * 
+   * @param path the hashed path
+   * @param acceptEncoding the Accept-Encoding request header, may be null
+   * @param ifNoneMatch the If-None-Match request header, may be null
+   * @return the asset, or a 404 if no manifest lists it
+   */
+  ResponseEntity<byte[]> asset(String path, String acceptEncoding, String ifNoneMatch) {
+    Asset asset = assets.get(path);
+    if(asset == null) {
+      Resource resource = index().resources.get(path);
+      if(resource == null) {
+        return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+      }
+      asset = readAsset(path, resource);
+      Asset existing = assets.putIfAbsent(path, asset);
+      if(existing != null) {
+        asset = existing;
+      }
+    }
+    HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl(CACHE_CONTROL);
+    headers.set("Vary", "Accept-Encoding");
+    return asset.select(acceptEncoding).toResponseEntity(headers, ifNoneMatch);
+  }
+  /**
+   * 
+   * @return the index of the bundles on the classpath, read on the first call only
+   */
+  AssetIndex index() {
+    AssetIndex result = index;
+    if(result == null) {
+      result = readIndex(manifestLocations);
+      index = result;
+    }
+    return result;
+  }
+  /**
+   * 
+   * @param manifestLocations
+   * @return the index of the manifests matching the pattern
+   * @throws IllegalStateException if a manifest can't be read
+   */
+  static AssetIndex readIndex(String manifestLocations) {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if(classLoader == null) {
+      classLoader = AssetController.class.getClassLoader();
+    }
+    Map<String, String> hashedPaths = new TreeMap<String, String>();
+    Map<String, Resource> resources = new HashMap<String, Resource>();
+    try {
+      for(Resource manifest: new PathMatchingResourcePatternResolver(classLoader).getResources(manifestLocations)) {
+        Map<String, String> entries = readManifest(manifest);
+        for(Map.Entry<String, String> entry: entries.entrySet()) {
+          hashedPaths.put(entry.getKey(), entry.getValue());
+          if(!resources.containsKey(entry.getValue())) {
+            resources.put(entry.getValue(), manifest.createRelative(entry.getValue()));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to read asset manifests " + manifestLocations, e);
+    }
+    return new AssetIndex(hashedPaths, resources);
+  }
+  /**
+   * 
+   * @param manifest
+   * @return the hashed path for each original path
+   * @throws IOException
+   * @throws IllegalStateException if the manifest isn't a flat object of strings
+   */
+  static Map<String, String> readManifest(Resource manifest) throws IOException {
+    InputStream stream = manifest.getInputStream();
+    String json;
+    try {
+      json = StreamUtils.copyToString(stream, EncodedBuild.UTF_8);
+    } finally {
+      stream.close();
+    }
+    Map<String, String> entries = new TreeMap<String, String>();
+    try {
+      JsonReader reader = new JsonReader(json);
+      reader.expect('{');
+      if(!reader.consume('}')) {
+        do {
+          String path = reader.readString();
+          reader.expect(':');
+          entries.put(path, reader.readString());
+        } while(reader.consume(','));
+        reader.expect('}');
+      }
+      reader.expectEnd();
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("failed to read asset manifest " + manifest, e);
+    }
+    return entries;
+  }
+  /**
+   * 
+   * @param path
+   * @param resource
+   * @return the asset, with its gzip variant if there is one
+   * @throws IllegalStateException if the asset can't be read
+   */
+  static Asset readAsset(String path, Resource resource) {
+    MediaType contentType = contentType(path);
+    try {
+      Representation identity = new Representation(read(resource), contentType, null);
+      Resource gzipResource = resource.createRelative(resource.getFilename() + GZIP_SUFFIX);
+      Representation gzip = gzipResource.exists() ? new Representation(read(gzipResource), contentType, "gzip") : null;
+      return new Asset(identity, gzip);
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to read asset " + resource, e);
+    }
+  }
+  /**
+   * 
+   * @param resource
+   * @return the resource's bytes
+   * @throws IOException
+   */
+  private static byte[] read(Resource resource) throws IOException {
+    InputStream stream = resource.getInputStream();
+    try {
+      return StreamUtils.copyToByteArray(stream);
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * 
+   * @param path
+   * @return the content type for the path's extension, application/octet-stream if it isn't known
+   */
+  static MediaType contentType(String path) {
+    String extension = path.substring(path.lastIndexOf('.') + 1);
+    MediaType contentType = CONTENT_TYPES.get(extension);
+    return contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM;
+  }
+}
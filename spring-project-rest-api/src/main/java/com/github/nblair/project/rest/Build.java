@@ -51,6 +51,17 @@ public class Build {
   public Build(String buildNumber) {
     this.buildNumber = buildNumber;
   }
+  /**
+   * 
+   * @param other the build to copy
+   */
+  public Build(Build other) {
+    this.buildNumber = other.buildNumber;
+    this.scmBranch = other.scmBranch;
+    this.projectVersion = other.projectVersion;
+    this.timestamp = other.timestamp;
+    this.dirty = other.dirty;
+  }
   /**
    * @return the buildNumber
    */
@@ -111,6 +122,47 @@ public class Build {
   public void setDirty(boolean dirty) {
     this.dirty = dirty;
   }
+  /* (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + ((buildNumber == null) ? 0 : buildNumber.hashCode());
+    result = prime * result + (dirty ? 1231 : 1237);
+    result = prime * result + ((projectVersion == null) ? 0 : projectVersion.hashCode());
+    result = prime * result + ((scmBranch == null) ? 0 : scmBranch.hashCode());
+    result = prime * result + ((timestamp == null) ? 0 : timestamp.hashCode());
+    return result;
+  }
+  /* (non-Javadoc)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Build)) {
+      return false;
+    }
+    Build other = (Build) obj;
+    return dirty == other.dirty
+        && equal(buildNumber, other.buildNumber)
+        && equal(projectVersion, other.projectVersion)
+        && equal(scmBranch, other.scmBranch)
+        && equal(timestamp, other.timestamp);
+  }
+  /**
+   * 
+   * @param a
+   * @param b
+   * @return true if both are null or equal
+   */
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
   /* (non-Javadoc)
    * @see java.lang.Object#toString()
    */
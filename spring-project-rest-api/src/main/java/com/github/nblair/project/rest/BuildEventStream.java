@@ -0,0 +1,257 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Server-Sent Events stream of the {@link Build}: each subscriber gets the current build when it connects, and again
+ * whenever a different one is published.
+ * 
+ * Subscribers are held as {@link AsyncContext}s, so an idle connection doesn't hold a request thread. A single daemon 
+ * thread writes published builds to every subscriber, and a comment periodically, to keep proxies from closing idle connections
+ * and to notice subscribers that have gone away.
+ * 
+ * {@link #publish(EncodedBuild)} only hands the build to that thread, so it never waits on a client. The writes themselves block,
+ * one subscriber after another: a client that stops reading without closing its connection (once its socket buffers fill) delays
+ * the events for every other subscriber, until the container's write timeout fails the write and the subscriber is dropped.
+ * Keep that timeout short if clients may be on unreliable networks.
+ * 
+ * @author Nicholas Blair
+ */
+final class BuildEventStream implements Closeable {
+
+  static final String EVENT_NAME = "build";
+  static final long RETRY_MILLISECONDS = 5000;
+  static final long HEARTBEAT_SECONDS = 20;
+  /**
+   * Connections are closed after this long, and the client reconnects; this bounds what a lost connection can cost.
+   */
+  static final long TIMEOUT_MILLISECONDS = TimeUnit.MINUTES.toMillis(30);
+  private static final byte[] HEARTBEAT = ":\n\n".getBytes(EncodedBuild.UTF_8);
+  
+  private final Set<AsyncContext> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<AsyncContext, Boolean>());
+  private volatile EncodedBuild current;
+  /**
+   * Writes published builds and heartbeats; started with the first subscriber. Guarded by this, as is {@link #closed}.
+   */
+  private ScheduledExecutorService writer;
+  private boolean closed;
+  /**
+   * Start streaming to the request's client, beginning with the current build (unless the client's Last-Event-ID shows it already has it).
+   * Once the stream is closed, the request is answered with 503 Service Unavailable instead.
+   * If the first write fails, the client has gone away: the subscription is ended without an exception.
+   * 
+   * @param request
+   * @param response
+   * @param build the current build
+   * @throws IOException if the 503 can't be sent
+   * @throws IllegalStateException if the request doesn't support async processing
+   */
+  void subscribe(HttpServletRequest request, HttpServletResponse response, EncodedBuild build) throws IOException {
+    if(current == null) {
+      current = build;
+    }
+    final AsyncContext asyncContext;
+    synchronized (this) {
+      // checked under the lock close() holds, so nothing is added after close() has ended every subscription
+      if(closed) {
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return;
+      }
+      response.setContentType("text/event-stream");
+      response.setCharacterEncoding(EncodedBuild.UTF_8.name());
+      response.setHeader("Cache-Control", "no-cache");
+      // ask proxies like nginx not to buffer the stream
+      response.setHeader("X-Accel-Buffering", "no");
+      asyncContext = request.startAsync(request, response);
+      asyncContext.setTimeout(TIMEOUT_MILLISECONDS);
+      asyncContext.addListener(new AsyncListener() {
+        @Override
+        public void onComplete(AsyncEvent event) {
+          subscribers.remove(asyncContext);
+        }
+        @Override
+        public void onTimeout(AsyncEvent event) {
+          subscribers.remove(asyncContext);
+          asyncContext.complete();
+        }
+        @Override
+        public void onError(AsyncEvent event) {
+          subscribers.remove(asyncContext);
+        }
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+      });
+      subscribers.add(asyncContext);
+      startWriter();
+    }
+    EncodedBuild latest = current;
+    String lastEventId = request.getHeader("Last-Event-ID");
+    String prefix = "retry: " + RETRY_MILLISECONDS + "\n\n";
+    try {
+      if(lastEventId != null && lastEventId.equals(latest.select(null, null).getEtag())) {
+        write(asyncContext, prefix.getBytes(EncodedBuild.UTF_8));
+      } else {
+        write(asyncContext, (prefix + event(latest)).getBytes(EncodedBuild.UTF_8));
+      }
+      EncodedBuild published = current;
+      if(published != latest) {
+        // published while we were writing; the broadcast may have reached us before the event above
+        write(asyncContext, event(published).getBytes(EncodedBuild.UTF_8));
+      }
+    } catch (IOException | IllegalStateException e) {
+      drop(asyncContext);
+    }
+  }
+  /**
+   * Send the build to every subscriber, if it differs from the last one sent. Returns without waiting for the writes.
+   * 
+   * @param build
+   */
+  void publish(EncodedBuild build) {
+    EncodedBuild previous = current;
+    current = build;
+    if(previous != null && previous.select(null, null).getEtag().equals(build.select(null, null).getEtag())) {
+      return;
+    }
+    final byte[] bytes = event(build).getBytes(EncodedBuild.UTF_8);
+    synchronized (this) {
+      // no writer before the first subscriber, and none after close(): nobody to send to
+      if(writer != null) {
+        writer.execute(new Runnable() {
+          @Override
+          public void run() {
+            broadcast(bytes);
+          }
+        });
+      }
+    }
+  }
+  /**
+   * 
+   * @return the number of open subscriptions
+   */
+  int getSubscriberCount() {
+    return subscribers.size();
+  }
+  /**
+   * 
+   * @param build
+   * @return the event for the build, with its ETag as the event id
+   */
+  static String event(EncodedBuild build) {
+    Representation json = build.select(null, null);
+    return "id: " + json.getEtag() + "\nevent: " + EVENT_NAME + "\ndata: " + new String(json.getBody(), EncodedBuild.UTF_8) + "\n\n";
+  }
+  /**
+   * 
+   * @param bytes
+   */
+  private void broadcast(byte[] bytes) {
+    for(AsyncContext asyncContext: subscribers) {
+      try {
+        write(asyncContext, bytes);
+      } catch (IOException | IllegalStateException e) {
+        drop(asyncContext);
+      }
+    }
+  }
+  /**
+   * End a subscription whose client went away.
+   * 
+   * @param asyncContext
+   */
+  private void drop(AsyncContext asyncContext) {
+    subscribers.remove(asyncContext);
+    try {
+      asyncContext.complete();
+    } catch (IllegalStateException alreadyComplete) {
+      // ignore
+    }
+  }
+  /**
+   * 
+   * @param asyncContext
+   * @param bytes
+   * @throws IOException
+   */
+  private static void write(AsyncContext asyncContext, byte[] bytes) throws IOException {
+    synchronized (asyncContext) {
+      ServletOutputStream out = asyncContext.getResponse().getOutputStream();
+      out.write(bytes);
+      out.flush();
+    }
+  }
+  /**
+   * Start the writer thread and its heartbeat, if it isn't running. Called holding the lock.
+   */
+  private void startWriter() {
+    if(writer != null || closed) {
+      return;
+    }
+    writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "build-event-stream-writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    writer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        broadcast(HEARTBEAT);
+      }
+    }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+  }
+  /**
+   * End every subscription (clients will reconnect, perhaps to another node) and stop the writer; builds not yet written are discarded.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if(writer != null) {
+      writer.shutdownNow();
+      writer = null;
+    }
+    for(AsyncContext asyncContext: subscribers) {
+      subscribers.remove(asyncContext);
+      try {
+        asyncContext.complete();
+      } catch (IllegalStateException e) {
+        // already complete
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link Build} serialized once, as JSON and XML, each plain and gzipped, with a strong ETag per representation.
+ * 
+ * @author Nicholas Blair
+ */
+final class EncodedBuild {
+
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+  
+  private final Build build;
+  private final Representation json;
+  private final Representation jsonGzip;
+  private final Representation xml;
+  private final Representation xmlGzip;
+  /**
+   * 
+   * @param build
+   * @throws IllegalStateException if the build can't be serialized
+   */
+  EncodedBuild(Build build) {
+    this.build = build;
+    byte[] jsonBytes = toJson(build).getBytes(UTF_8);
+    byte[] xmlBytes = toXml(build);
+    MediaType jsonType = new MediaType("application", "json", UTF_8);
+    MediaType xmlType = new MediaType("application", "xml", UTF_8);
+    this.json = new Representation(jsonBytes, jsonType, null);
+    this.jsonGzip = new Representation(gzip(jsonBytes), jsonType, "gzip");
+    this.xml = new Representation(xmlBytes, xmlType, null);
+    this.xmlGzip = new Representation(gzip(xmlBytes), xmlType, "gzip");
+  }
+  /**
+   * @return the build; shared, so don't modify it
+   */
+  Build getBuild() {
+    return build;
+  }
+  /**
+   * 
+   * @param accept the Accept request header, may be null
+   * @param acceptEncoding the Accept-Encoding request header, may be null
+   * @return the representation to send: XML if it is preferred to JSON, otherwise JSON; gzipped if accepted
+   */
+  Representation select(String accept, String acceptEncoding) {
+    boolean gzip = acceptsGzip(acceptEncoding);
+    if(prefersXml(accept)) {
+      return gzip ? xmlGzip : xml;
+    }
+    return gzip ? jsonGzip : json;
+  }
+  /**
+   * 
+   * @param accept
+   * @return true if the first acceptable type in order of preference is XML rather than JSON
+   */
+  static boolean prefersXml(String accept) {
+    if(!StringUtils.hasText(accept)) {
+      return false;
+    }
+    List<MediaType> mediaTypes;
+    try {
+      mediaTypes = MediaType.parseMediaTypes(accept);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    MediaType.sortBySpecificityAndQuality(mediaTypes);
+    for(MediaType mediaType: mediaTypes) {
+      if(mediaType.getQualityValue() == 0d) {
+        continue;
+      }
+      if(mediaType.includes(MediaType.APPLICATION_JSON)) {
+        return false;
+      }
+      if(mediaType.includes(MediaType.APPLICATION_XML)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  /**
+   * 
+   * @param acceptEncoding
+   * @return true if gzip (or any coding) is listed without q=0 (or a malformed q)
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if(acceptEncoding == null) {
+      return false;
+    }
+    for(String coding: StringUtils.commaDelimitedListToStringArray(acceptEncoding)) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      if("gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+        for(int i = 1; i < parts.length; i++) {
+          String parameter = parts[i].trim();
+          if(parameter.startsWith("q=") && !isPositiveQuality(parameter.substring(2).trim())) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+  /**
+   * 
+   * @param qvalue
+   * @return true if the qvalue is a number greater than 0; false for 0 or anything that isn't a number
+   */
+  private static boolean isPositiveQuality(String qvalue) {
+    try {
+      return Double.parseDouble(qvalue) > 0d;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+  /**
+   * 
+   * @param build
+   * @return the build as a JSON object, with the same properties Jackson would write
+   */
+  static String toJson(Build build) {
+    StringBuilder builder = new StringBuilder(160);
+    builder.append("{\"buildNumber\":");
+    appendJsonString(builder, build.getBuildNumber());
+    builder.append(",\"scmBranch\":");
+    appendJsonString(builder, build.getScmBranch());
+    builder.append(",\"projectVersion\":");
+    appendJsonString(builder, build.getProjectVersion());
+    builder.append(",\"timestamp\":");
+    appendJsonString(builder, build.getTimestamp());
+    builder.append(",\"dirty\":");
+    builder.append(build.isDirty());
+    builder.append('}');
+    return builder.toString();
+  }
+  /**
+   * 
+   * @param builder
+   * @param value may be null
+   */
+  static void appendJsonString(StringBuilder builder, String value) {
+    if(value == null) {
+      builder.append("null");
+      return;
+    }
+    builder.append('"');
+    for(int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch(c) {
+      case '"': builder.append("\\\""); break;
+      case '\\': builder.append("\\\\"); break;
+      case '\n': builder.append("\\n"); break;
+      case '\r': builder.append("\\r"); break;
+      case '\t': builder.append("\\t"); break;
+      default:
+        if(c < 0x20) {
+          builder.append(String.format("\\u%04x", (int) c));
+        } else {
+          builder.append(c);
+        }
+      }
+    }
+    builder.append('"');
+  }
+  /**
+   * Reads the JSON written by {@link #toJson(Build)} (or the build-descriptor-maven-plugin): a flat object of strings, 
+   * booleans and nulls. Unknown properties are ignored.
+   * 
+   * @param json
+   * @return the build
+   * @throws IllegalArgumentException if the JSON isn't a flat object
+   */
+  static Build fromJson(String json) {
+    JsonReader reader = new JsonReader(json);
+    Build build = new Build();
+    reader.expect('{');
+    if(!reader.consume('}')) {
+      do {
+        String name = reader.readString();
+        reader.expect(':');
+        Object value = reader.readValue();
+        if("buildNumber".equals(name)) {
+          build.setBuildNumber((String) value);
+        } else if("scmBranch".equals(name)) {
+          build.setScmBranch((String) value);
+        } else if("projectVersion".equals(name)) {
+          build.setProjectVersion((String) value);
+        } else if("timestamp".equals(name)) {
+          build.setTimestamp((String) value);
+        } else if("dirty".equals(name)) {
+          build.setDirty(Boolean.TRUE.equals(value));
+        }
+      } while(reader.consume(','));
+      reader.expect('}');
+    }
+    reader.expectEnd();
+    return build;
+  }
+  /**
+   * 
+   * @param build
+   * @return the build marshalled by JAXB
+   */
+  static byte[] toXml(Build build) {
+    try {
+      Marshaller marshaller = JAXBContext.newInstance(Build.class).createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_ENCODING, UTF_8.name());
+      ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+      marshaller.marshal(build, out);
+      return out.toByteArray();
+    } catch (JAXBException e) {
+      throw new IllegalStateException("failed to marshal " + build, e);
+    }
+  }
+  /**
+   * 
+   * @param bytes
+   * @return the bytes, gzipped
+   */
+  static byte[] gzip(byte[] bytes) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(bytes);
+      gzip.close();
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to gzip", e);
+    }
+  }
+}
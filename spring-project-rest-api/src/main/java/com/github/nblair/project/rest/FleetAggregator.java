@@ -0,0 +1,310 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * Queries the /build and /activeProfiles endpoints of a list of peers concurrently, and summarizes the answers as a {@link FleetSummary}.
+ * 
+ * At most maxConcurrency peers are queried at once, on daemon threads that exit when idle. Each peer gets the timeout 
+ * for both of its requests; a peer that fails or runs out of time is listed in {@link FleetSummary#getFailures()} and 
+ * the rest are summarized anyway. Summaries are cached for the TTL, and concurrent callers share a single fan-out.
+ * 
+ * @author Nicholas Blair
+ */
+public class FleetAggregator implements Closeable {
+
+  public static final int DEFAULT_MAX_CONCURRENCY = 8;
+  public static final long DEFAULT_TIMEOUT_MILLISECONDS = 2000;
+  public static final long DEFAULT_CACHE_TTL_MILLISECONDS = 5000;
+  
+  private static final Comparator<FleetSummary.BuildCount> BUILDS_BY_COUNT = new Comparator<FleetSummary.BuildCount>() {
+    @Override
+    public int compare(FleetSummary.BuildCount o1, FleetSummary.BuildCount o2) {
+      return o2.getCount() - o1.getCount();
+    }
+  };
+  private static final Comparator<FleetSummary.ProfileSetCount> PROFILE_SETS_BY_COUNT = new Comparator<FleetSummary.ProfileSetCount>() {
+    @Override
+    public int compare(FleetSummary.ProfileSetCount o1, FleetSummary.ProfileSetCount o2) {
+      return o2.getCount() - o1.getCount();
+    }
+  };
+  
+  private final FleetPeerProvider peerProvider;
+  private final int maxConcurrency;
+  private final long timeoutMillis;
+  private final long cacheTtlNanos;
+  private final ThreadPoolExecutor executor;
+  private final Object refreshLock = new Object();
+  private volatile CachedSummary cached;
+  
+  /**
+   * A summary and when it was made.
+   */
+  private static final class CachedSummary {
+    private final FleetSummary summary;
+    private final long createdNanos;
+    /**
+     * @param summary
+     * @param createdNanos
+     */
+    CachedSummary(FleetSummary summary, long createdNanos) {
+      this.summary = summary;
+      this.createdNanos = createdNanos;
+    }
+  }
+  /**
+   * Uses the {@link #DEFAULT_MAX_CONCURRENCY}, {@link #DEFAULT_TIMEOUT_MILLISECONDS} and {@link #DEFAULT_CACHE_TTL_MILLISECONDS}.
+   * 
+   * @param peerProvider
+   */
+  public FleetAggregator(FleetPeerProvider peerProvider) {
+    this(peerProvider, DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT_MILLISECONDS, DEFAULT_CACHE_TTL_MILLISECONDS);
+  }
+  /**
+   * 
+   * @param peerProvider
+   * @param maxConcurrency the most peers queried at once
+   * @param timeoutMillis how long each peer has to answer both requests
+   * @param cacheTtlMillis how long a summary is reused; 0 to query the peers on every call
+   * @throws IllegalArgumentException if maxConcurrency or timeoutMillis isn't positive, or cacheTtlMillis is negative
+   */
+  public FleetAggregator(FleetPeerProvider peerProvider, int maxConcurrency, long timeoutMillis, long cacheTtlMillis) {
+    if(maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+    }
+    if(timeoutMillis < 1 || timeoutMillis > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+    }
+    if(cacheTtlMillis < 0) {
+      throw new IllegalArgumentException("cacheTtlMillis must not be negative: " + cacheTtlMillis);
+    }
+    this.peerProvider = peerProvider;
+    this.maxConcurrency = maxConcurrency;
+    this.timeoutMillis = timeoutMillis;
+    this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMillis);
+    this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS, 
+        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+  /**
+   * 
+   * @return the cached summary if it is younger than the TTL, otherwise a new one
+   */
+  public FleetSummary getSummary() {
+    CachedSummary current = cached;
+    if(isFresh(current)) {
+      return current.summary;
+    }
+    synchronized (refreshLock) {
+      current = cached;
+      if(isFresh(current)) {
+        return current.summary;
+      }
+      FleetSummary summary = query(peerProvider.getPeers());
+      cached = new CachedSummary(summary, System.nanoTime());
+      return summary;
+    }
+  }
+  /**
+   * 
+   * @param current
+   * @return true if current is not null and younger than the TTL
+   */
+  private boolean isFresh(CachedSummary current) {
+    return current != null && System.nanoTime() - current.createdNanos < cacheTtlNanos;
+  }
+  /**
+   * Query all the peers, without the cache.
+   * 
+   * @param peers
+   * @return the summary
+   */
+  FleetSummary query(List<String> peers) {
+    FleetSummary summary = new FleetSummary();
+    summary.setTimestamp(System.currentTimeMillis());
+    summary.setPeers(peers.size());
+    List<Future<PeerStatus>> futures = new ArrayList<Future<PeerStatus>>(peers.size());
+    for(final String peer: peers) {
+      futures.add(executor.submit(new Callable<PeerStatus>() {
+        @Override
+        public PeerStatus call() throws IOException {
+          return fetch(peer);
+        }
+      }));
+    }
+    // peers beyond maxConcurrency wait their turn, so allow a timeout per wave (plus one for stragglers)
+    long waves = (peers.size() + maxConcurrency - 1) / maxConcurrency;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis * (waves + 1));
+    Map<Build, FleetSummary.BuildCount> builds = new LinkedHashMap<Build, FleetSummary.BuildCount>();
+    Map<List<String>, FleetSummary.ProfileSetCount> profileSets = new LinkedHashMap<List<String>, FleetSummary.ProfileSetCount>();
+    boolean interrupted = false;
+    for(int i = 0; i < peers.size(); i++) {
+      String peer = peers.get(i);
+      Future<PeerStatus> future = futures.get(i);
+      PeerStatus status;
+      try {
+        status = interrupted ? null : future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        status = null;
+      } catch (InterruptedException e) {
+        interrupted = true;
+        status = null;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        summary.getFailures().add(new FleetSummary.PeerFailure(peer, cause.getClass().getSimpleName() + ": " + cause.getMessage()));
+        continue;
+      }
+      if(status == null) {
+        future.cancel(true);
+        summary.getFailures().add(new FleetSummary.PeerFailure(peer, interrupted ? "interrupted" : "timed out"));
+        continue;
+      }
+      FleetSummary.BuildCount buildCount = builds.get(status.build);
+      if(buildCount == null) {
+        buildCount = new FleetSummary.BuildCount(status.build);
+        builds.put(status.build, buildCount);
+      }
+      buildCount.add(peer);
+      List<String> profiles = Arrays.asList(status.activeProfiles);
+      FleetSummary.ProfileSetCount profileSetCount = profileSets.get(profiles);
+      if(profileSetCount == null) {
+        profileSetCount = new FleetSummary.ProfileSetCount(status.activeProfiles);
+        profileSets.put(profiles, profileSetCount);
+      }
+      profileSetCount.add(peer);
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    summary.getBuilds().addAll(builds.values());
+    Collections.sort(summary.getBuilds(), BUILDS_BY_COUNT);
+    summary.getProfileSets().addAll(profileSets.values());
+    Collections.sort(summary.getProfileSets(), PROFILE_SETS_BY_COUNT);
+    return summary;
+  }
+  /**
+   * What one peer reported.
+   */
+  static final class PeerStatus {
+    private final Build build;
+    private final String[] activeProfiles;
+    /**
+     * @param build
+     * @param activeProfiles sorted
+     */
+    PeerStatus(Build build, String[] activeProfiles) {
+      this.build = build;
+      this.activeProfiles = activeProfiles;
+    }
+  }
+  /**
+   * 
+   * @param peer
+   * @return the peer's build and active profiles
+   * @throws IOException if either request fails, or runs out of time
+   */
+  PeerStatus fetch(String peer) throws IOException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    String base = peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer;
+    Build build = EncodedBuild.fromJson(get(base + "/build", deadline));
+    String[] activeProfiles = new JsonReader(get(base + "/activeProfiles", deadline)).readStringArray();
+    Arrays.sort(activeProfiles);
+    return new PeerStatus(build, activeProfiles);
+  }
+  /**
+   * 
+   * @param url
+   * @param deadline from {@link System#nanoTime()}
+   * @return the JSON response body
+   * @throws IOException if the request fails, doesn't succeed, or there is no time left
+   */
+  private String get(String url, long deadline) throws IOException {
+    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    if(remainingMillis <= 0) {
+      throw new IOException("timed out before requesting " + url);
+    }
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout((int) remainingMillis);
+    connection.setReadTimeout((int) remainingMillis);
+    connection.setRequestProperty("Accept", "application/json");
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    int status = connection.getResponseCode();
+    if(status != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("HTTP " + status + " from " + url);
+    }
+    InputStream stream = connection.getInputStream();
+    try {
+      if("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+        stream = new GZIPInputStream(stream);
+      }
+      return StreamUtils.copyToString(stream, EncodedBuild.UTF_8);
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * Stop the query threads.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+  /**
+   * Names the query threads, and doesn't let them keep the JVM alive.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL = new AtomicInteger();
+    private final int pool = POOL.incrementAndGet();
+    private final AtomicInteger count = new AtomicInteger();
+    /* (non-Javadoc)
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "fleet-aggregator-" + pool + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
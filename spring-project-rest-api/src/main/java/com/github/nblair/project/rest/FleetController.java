@@ -0,0 +1,140 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.wordnik.swagger.annotations.ApiOperation;
+
+/**
+ * {@link Controller} that asks every peer in a fleet for its /build and /activeProfiles (as served by {@link ProjectController})
+ * and summarizes the distinct builds and sets of active profiles, with the peers reporting each.
+ * 
+ * The peers come from a {@link FleetPeerProvider} bean if there is one, otherwise from the comma separated base URLs in the
+ * {@link #FLEET_PEERS} property. The other properties tune the {@link FleetAggregator}:
+ * <pre>
+fleet.peers=http://node1:8080/app,http://node2:8080/app
+fleet.maxConcurrency=8
+fleet.timeoutMillis=2000
+fleet.cacheTtlMillis=5000
+ </pre>
+ * 
+ * @author Nicholas Blair
+ */
+@Controller
+public class FleetController {
+
+  public static final String FLEET_PEERS = "fleet.peers";
+  public static final String FLEET_MAX_CONCURRENCY = "fleet.maxConcurrency";
+  public static final String FLEET_TIMEOUT_MILLIS = "fleet.timeoutMillis";
+  public static final String FLEET_CACHE_TTL_MILLIS = "fleet.cacheTtlMillis";
+  
+  @Inject
+  private Environment environment;
+  @Autowired(required=false)
+  private FleetPeerProvider peerProvider;
+  private FleetAggregator aggregator;
+  /**
+   * Visible for testing.
+   * 
+   * @param environment the environment to set
+   */
+  void setEnvironment(Environment environment) {
+    this.environment = environment;
+  }
+  /**
+   * Visible for testing.
+   * 
+   * @param peerProvider the peerProvider to set
+   */
+  void setPeerProvider(FleetPeerProvider peerProvider) {
+    this.peerProvider = peerProvider;
+  }
+  /**
+   * 
+   * @return the summary of the fleet, at most fleet.cacheTtlMillis old
+   */
+  @ApiOperation(value="Fleet summary", notes="Summarize the builds and active profiles of all peers.")
+  @RequestMapping(value="/fleet", method=RequestMethod.GET, produces={ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+  public @ResponseBody FleetSummary fleet() {
+    return aggregator().getSummary();
+  }
+  /**
+   * 
+   * @return the aggregator, created from the environment on the first call
+   */
+  synchronized FleetAggregator aggregator() {
+    if(aggregator == null) {
+      FleetPeerProvider provider = peerProvider;
+      if(provider == null) {
+        provider = new EnvironmentPeerProvider(environment);
+      }
+      aggregator = new FleetAggregator(provider, 
+          environment.getProperty(FLEET_MAX_CONCURRENCY, Integer.class, FleetAggregator.DEFAULT_MAX_CONCURRENCY),
+          environment.getProperty(FLEET_TIMEOUT_MILLIS, Long.class, FleetAggregator.DEFAULT_TIMEOUT_MILLISECONDS),
+          environment.getProperty(FLEET_CACHE_TTL_MILLIS, Long.class, FleetAggregator.DEFAULT_CACHE_TTL_MILLISECONDS));
+    }
+    return aggregator;
+  }
+  /**
+   * Stop the {@link FleetAggregator}'s threads.
+   */
+  @PreDestroy
+  public synchronized void destroy() {
+    if(aggregator != null) {
+      aggregator.close();
+      aggregator = null;
+    }
+  }
+  /**
+   * {@link FleetPeerProvider} reading the {@link FleetController#FLEET_PEERS} property (on each call, so changes to it are seen).
+   */
+  static final class EnvironmentPeerProvider implements FleetPeerProvider {
+    private final Environment environment;
+    /**
+     * @param environment
+     */
+    EnvironmentPeerProvider(Environment environment) {
+      this.environment = environment;
+    }
+    /* (non-Javadoc)
+     * @see com.github.nblair.project.rest.FleetPeerProvider#getPeers()
+     */
+    @Override
+    public List<String> getPeers() {
+      String peers = environment.getProperty(FLEET_PEERS);
+      if(!StringUtils.hasText(peers)) {
+        return Collections.emptyList();
+      }
+      return Arrays.asList(StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(peers)));
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.util.List;
+
+/**
+ * Supplies the peers {@link FleetController} queries; implement it (as a bean) to discover peers
+ * rather than listing them in the {@link FleetController#FLEET_PEERS} property.
+ * 
+ * @author Nicholas Blair
+ */
+public interface FleetPeerProvider {
+
+  /**
+   * 
+   * @return the base URLs of the peers, where each serves /build and /activeProfiles (for example "http://node1:8080/app")
+   */
+  List<String> getPeers();
+}
@@ -0,0 +1,223 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Bean summarizing the {@link Build}s and active profiles reported by a fleet of peers.
+ * 
+ * @author Nicholas Blair
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class FleetSummary {
+
+  @XmlElement
+  protected int peers;
+  @XmlElement
+  protected long timestamp;
+  @XmlElement(name="build")
+  protected List<BuildCount> builds = new ArrayList<BuildCount>();
+  @XmlElement(name="profileSet")
+  protected List<ProfileSetCount> profileSets = new ArrayList<ProfileSetCount>();
+  @XmlElement(name="failure")
+  protected List<PeerFailure> failures = new ArrayList<PeerFailure>();
+  
+  /**
+   * A distinct {@link Build}, and the peers running it.
+   */
+  @XmlAccessorType(XmlAccessType.FIELD)
+  public static class BuildCount {
+    @XmlElement
+    protected Build build;
+    @XmlElement
+    protected int count;
+    @XmlElement(name="peer")
+    protected List<String> peers = new ArrayList<String>();
+    /**
+     * 
+     */
+    public BuildCount() {
+    }
+    /**
+     * @param build
+     */
+    public BuildCount(Build build) {
+      this.build = build;
+    }
+    /**
+     * @return the build
+     */
+    public Build getBuild() {
+      return build;
+    }
+    /**
+     * @return the number of peers running the build
+     */
+    public int getCount() {
+      return count;
+    }
+    /**
+     * @return the peers running the build
+     */
+    public List<String> getPeers() {
+      return peers;
+    }
+    /**
+     * 
+     * @param peer
+     */
+    void add(String peer) {
+      peers.add(peer);
+      count++;
+    }
+  }
+  /**
+   * A distinct set of active profiles, and the peers with it.
+   */
+  @XmlAccessorType(XmlAccessType.FIELD)
+  public static class ProfileSetCount {
+    @XmlElement(name="profile")
+    protected List<String> profiles;
+    @XmlElement
+    protected int count;
+    @XmlElement(name="peer")
+    protected List<String> peers = new ArrayList<String>();
+    /**
+     * 
+     */
+    public ProfileSetCount() {
+    }
+    /**
+     * @param profiles sorted
+     */
+    public ProfileSetCount(String[] profiles) {
+      this.profiles = Arrays.asList(profiles);
+    }
+    /**
+     * @return the profiles, sorted
+     */
+    public List<String> getProfiles() {
+      return profiles;
+    }
+    /**
+     * @return the number of peers with these active profiles
+     */
+    public int getCount() {
+      return count;
+    }
+    /**
+     * @return the peers with these active profiles
+     */
+    public List<String> getPeers() {
+      return peers;
+    }
+    /**
+     * 
+     * @param peer
+     */
+    void add(String peer) {
+      peers.add(peer);
+      count++;
+    }
+  }
+  /**
+   * A peer that didn't answer in time, or answered with an error.
+   */
+  @XmlAccessorType(XmlAccessType.FIELD)
+  public static class PeerFailure {
+    @XmlElement
+    protected String peer;
+    @XmlElement
+    protected String message;
+    /**
+     * 
+     */
+    public PeerFailure() {
+    }
+    /**
+     * @param peer
+     * @param message
+     */
+    public PeerFailure(String peer, String message) {
+      this.peer = peer;
+      this.message = message;
+    }
+    /**
+     * @return the peer
+     */
+    public String getPeer() {
+      return peer;
+    }
+    /**
+     * @return the message
+     */
+    public String getMessage() {
+      return message;
+    }
+  }
+  /**
+   * @return the number of peers queried
+   */
+  public int getPeers() {
+    return peers;
+  }
+  /**
+   * @param peers the peers to set
+   */
+  public void setPeers(int peers) {
+    this.peers = peers;
+  }
+  /**
+   * @return when the peers were queried, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+  /**
+   * @param timestamp the timestamp to set
+   */
+  public void setTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+  }
+  /**
+   * @return the distinct builds, most common first
+   */
+  public List<BuildCount> getBuilds() {
+    return builds;
+  }
+  /**
+   * @return the distinct sets of active profiles, most common first
+   */
+  public List<ProfileSetCount> getProfileSets() {
+    return profileSets;
+  }
+  /**
+   * @return the peers that couldn't be queried
+   */
+  public List<PeerFailure> getFailures() {
+    return failures;
+  }
+}
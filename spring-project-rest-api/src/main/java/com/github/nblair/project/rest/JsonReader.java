@@ -0,0 +1,166 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Just enough of a JSON reader for the flat objects and string arrays the endpoints in this package write:
+ * strings, booleans and nulls, no numbers or nesting.
+ * 
+ * @author Nicholas Blair
+ */
+final class JsonReader {
+
+  private final String json;
+  private int position;
+  /**
+   * @param json
+   */
+  JsonReader(String json) {
+    this.json = json;
+  }
+  /**
+   * 
+   * @param c
+   * @return true if the next non-whitespace character is c (and it was consumed)
+   */
+  boolean consume(char c) {
+    skipWhitespace();
+    if(position < json.length() && json.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+  /**
+   * 
+   * @param c
+   */
+  void expect(char c) {
+    if(!consume(c)) {
+      throw malformed("expected '" + c + "'");
+    }
+  }
+  /**
+   * 
+   */
+  void expectEnd() {
+    skipWhitespace();
+    if(position != json.length()) {
+      throw malformed("unexpected content");
+    }
+  }
+  /**
+   * 
+   * @return a String, Boolean, or null
+   */
+  Object readValue() {
+    skipWhitespace();
+    if(json.startsWith("null", position)) {
+      position += 4;
+      return null;
+    }
+    if(json.startsWith("true", position)) {
+      position += 4;
+      return Boolean.TRUE;
+    }
+    if(json.startsWith("false", position)) {
+      position += 5;
+      return Boolean.FALSE;
+    }
+    return readString();
+  }
+  /**
+   * 
+   * @return the array of strings (or nulls)
+   */
+  String[] readStringArray() {
+    List<String> values = new ArrayList<String>();
+    expect('[');
+    if(!consume(']')) {
+      do {
+        Object value = readValue();
+        if(value instanceof Boolean) {
+          throw malformed("expected a string");
+        }
+        values.add((String) value);
+      } while(consume(','));
+      expect(']');
+    }
+    return values.toArray(new String[values.size()]);
+  }
+  /**
+   * 
+   * @return the string, unescaped
+   */
+  String readString() {
+    expect('"');
+    StringBuilder builder = new StringBuilder();
+    while(position < json.length()) {
+      char c = json.charAt(position++);
+      if(c == '"') {
+        return builder.toString();
+      }
+      if(c != '\\') {
+        builder.append(c);
+        continue;
+      }
+      if(position >= json.length()) {
+        break;
+      }
+      char escaped = json.charAt(position++);
+      switch(escaped) {
+      case 'n': builder.append('\n'); break;
+      case 'r': builder.append('\r'); break;
+      case 't': builder.append('\t'); break;
+      case 'b': builder.append('\b'); break;
+      case 'f': builder.append('\f'); break;
+      case 'u':
+        if(position + 4 > json.length()) {
+          throw malformed("truncated escape");
+        }
+        try {
+          builder.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+        } catch (NumberFormatException e) {
+          throw malformed("invalid escape");
+        }
+        position += 4;
+        break;
+      default: builder.append(escaped);
+      }
+    }
+    throw malformed("unterminated string");
+  }
+  /**
+   * 
+   */
+  private void skipWhitespace() {
+    while(position < json.length() && Character.isWhitespace(json.charAt(position))) {
+      position++;
+    }
+  }
+  /**
+   * 
+   * @param message
+   * @return an exception describing the problem and where it is
+   */
+  private IllegalArgumentException malformed(String message) {
+    return new IllegalArgumentException(message + " at offset " + position + " of " + json);
+  }
+}
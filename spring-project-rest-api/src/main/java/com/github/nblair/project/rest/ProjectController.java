@@ -20,12 +20,22 @@
 package com.github.nblair.project.rest;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -35,7 +45,9 @@ import com.wordnik.swagger.annotations.ApiOperation;
 /**
  * {@link Controller} providing a REST API for project information.
  * 
- * Expects the {@link Environment} to be injected and provide a number of properties.
+ * Serves the {@link #BUILD_DESCRIPTOR} written by the build-descriptor-maven-plugin if it is on the classpath.
+ * Otherwise, expects the {@link Environment} to be injected and provide a number of properties. Either way, the build is read once, 
+ * on the first request for /build, and the result is kept pre-serialized.
  * Here is an example of the properties you'll need:
  * <pre>
 # provided via Maven resource filtering
@@ -59,9 +71,23 @@ public class ProjectController {
   public static final String GIT_DIRTY = "git.dirty";
   public static final String GIT_TAGS = "git.tags";
   public static final String PROJECT_VERSION = "projectVersion";
+  /**
+   * Classpath location of the build descriptor written by the build-descriptor-maven-plugin.
+   */
+  public static final String BUILD_DESCRIPTOR = "META-INF/build.json";
+  /**
+   * Caches may keep /build, but must revalidate it (cheaply, with the ETag) before each use.
+   */
+  public static final String CACHE_CONTROL = "public, no-cache";
   
   @Inject
   private Environment environment;
+  /**
+   * The build can't change for the life of the deployment, so it is read and serialized once.
+   */
+  private volatile EncodedBuild encodedBuild;
+  private String buildDescriptorLocation = BUILD_DESCRIPTOR;
+  private final BuildEventStream events = new BuildEventStream();
   /**
    * Visible for testing.
    * 
@@ -69,14 +95,126 @@ public class ProjectController {
    */
   void setEnvironment(Environment environment) {
     this.environment = environment;
+    this.encodedBuild = null;
+  }
+  /**
+   * Visible for testing.
+   * 
+   * @param buildDescriptorLocation the classpath location of the build descriptor
+   */
+  void setBuildDescriptorLocation(String buildDescriptorLocation) {
+    this.buildDescriptorLocation = buildDescriptorLocation;
+    this.encodedBuild = null;
   }
   /**
    * 
    * @return the current {@link Build} information
    */
-  @ApiOperation(value="Build information", notes="Retrieve project build information.")
+  public Build build() {
+    return new Build(encodedBuild().getBuild());
+  }
+  /**
+   * Serves the {@link Build} from bytes serialized once: JSON unless the client prefers XML, gzipped if the client accepts it.
+   * A request whose If-None-Match lists the current ETag gets a 304.
+   * 
+   * @param accept the Accept header
+   * @param acceptEncoding the Accept-Encoding header
+   * @param ifNoneMatch the If-None-Match header
+   * @return the response for /build
+   */
+  @ApiOperation(value="Build information", notes="Retrieve project build information.", response=Build.class)
   @RequestMapping(value="/build", method=RequestMethod.GET, produces={ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
-  public @ResponseBody Build build() {
+  public ResponseEntity<byte[]> buildResponse(@RequestHeader(value="Accept", required=false) String accept,
+      @RequestHeader(value="Accept-Encoding", required=false) String acceptEncoding,
+      @RequestHeader(value="If-None-Match", required=false) String ifNoneMatch) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setCacheControl(CACHE_CONTROL);
+    headers.set("Vary", "Accept, Accept-Encoding");
+    return encodedBuild().select(accept, acceptEncoding).toResponseEntity(headers, ifNoneMatch);
+  }
+  /**
+   * Streams the {@link Build} as Server-Sent Events: a "build" event on connect, and another whenever it changes
+   * (see {@link #refreshBuild()}). The connection is held with async servlet support, so the DispatcherServlet and
+   * any filters in front of it must be async-supported.
+   * 
+   * @param request
+   * @param response
+   * @throws IOException
+   */
+  @ApiOperation(value="Build events", notes="Stream project build information as Server-Sent Events.")
+  @RequestMapping(value="/build/events", method=RequestMethod.GET, produces="text/event-stream")
+  public void buildEvents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    events.subscribe(request, response, encodedBuild());
+  }
+  /**
+   * Read the {@link Build} again, and push it to /build/events subscribers if it changed.
+   * Only needed if the build descriptor or properties can change while the application runs.
+   */
+  public void refreshBuild() {
+    EncodedBuild result = new EncodedBuild(loadBuild());
+    encodedBuild = result;
+    events.publish(result);
+  }
+  /**
+   * Close the /build/events connections; clients reconnect (to another node, behind a load balancer) and get the build running there.
+   */
+  @PreDestroy
+  public void destroy() {
+    events.close();
+  }
+  /**
+   * 
+   * @return the {@link Build}, read and serialized on the first call only
+   */
+  EncodedBuild encodedBuild() {
+    EncodedBuild result = encodedBuild;
+    if(result == null) {
+      result = new EncodedBuild(loadBuild());
+      encodedBuild = result;
+    }
+    return result;
+  }
+  /**
+   * 
+   * @return the {@link Build} from the build descriptor if there is one, otherwise from the {@link Environment}
+   */
+  private Build loadBuild() {
+    Build build = readBuildDescriptor(buildDescriptorLocation);
+    return build != null ? build : readBuild(environment);
+  }
+  /**
+   * 
+   * @param location
+   * @return the {@link Build} in the descriptor at the classpath location, or null if there is none
+   * @throws IllegalStateException if the descriptor can't be read
+   */
+  static Build readBuildDescriptor(String location) {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if(classLoader == null) {
+      classLoader = ProjectController.class.getClassLoader();
+    }
+    InputStream stream = classLoader.getResourceAsStream(location);
+    if(stream == null) {
+      return null;
+    }
+    try {
+      return EncodedBuild.fromJson(StreamUtils.copyToString(stream, EncodedBuild.UTF_8));
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalStateException("failed to read build descriptor " + location, e);
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+  /**
+   * 
+   * @param environment
+   * @return a new {@link Build} from the environment's properties
+   */
+  static Build readBuild(Environment environment) {
     Build build = new Build(environment.getProperty(GIT_COMMIT_ID_ABBREV));
     if(StringUtils.isEmpty(environment.getProperty(GIT_TAGS))) {
       build.setScmBranch(environment.getProperty(GIT_BRANCH));
@@ -0,0 +1,107 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * A response body serialized (and, optionally, compressed) ahead of time, with a strong ETag.
+ * 
+ * @author Nicholas Blair
+ */
+final class Representation {
+  private final byte[] body;
+  private final MediaType contentType;
+  private final String contentEncoding;
+  private final String etag;
+  /**
+   * 
+   * @param body
+   * @param contentType
+   * @param contentEncoding null for identity
+   */
+  Representation(byte[] body, MediaType contentType, String contentEncoding) {
+    this.body = body;
+    this.contentType = contentType;
+    this.contentEncoding = contentEncoding;
+    this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+  }
+  /**
+   * @return the body; not copied, so don't modify it
+   */
+  byte[] getBody() {
+    return body;
+  }
+  /**
+   * @return the contentType
+   */
+  MediaType getContentType() {
+    return contentType;
+  }
+  /**
+   * @return the contentEncoding, null for identity
+   */
+  String getContentEncoding() {
+    return contentEncoding;
+  }
+  /**
+   * @return the strong ETag, quoted
+   */
+  String getEtag() {
+    return etag;
+  }
+  /**
+   * 
+   * @param ifNoneMatch the If-None-Match request header, may be null
+   * @return true if the header lists this representation's ETag (or is "*")
+   */
+  boolean matches(String ifNoneMatch) {
+    if(ifNoneMatch == null) {
+      return false;
+    }
+    for(String tag: StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+      tag = tag.trim();
+      if("*".equals(tag) || etag.equals(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  /**
+   * 
+   * @param headers the headers every response carries (like Cache-Control and Vary); the ETag and content headers are added
+   * @param ifNoneMatch the If-None-Match request header, may be null
+   * @return a 304 if ifNoneMatch lists this representation's ETag, otherwise a 200 with the body
+   */
+  ResponseEntity<byte[]> toResponseEntity(HttpHeaders headers, String ifNoneMatch) {
+    headers.setETag(etag);
+    if(matches(ifNoneMatch)) {
+      return new ResponseEntity<byte[]>(headers, HttpStatus.NOT_MODIFIED);
+    }
+    headers.setContentType(contentType);
+    if(contentEncoding != null) {
+      headers.set("Content-Encoding", contentEncoding);
+    }
+    headers.setContentLength(body.length);
+    return new ResponseEntity<byte[]>(body, headers, HttpStatus.OK);
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+/**
+ * 
+ */
+package com.github.nblair.project.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Tests for {@link AssetController}.
+ * 
+ * @author Nicholas Blair
+ */
+public class AssetControllerTest {
+
+  private AssetController controller;
+  
+  @Before
+  public void setUp() {
+    controller = new AssetController();
+    controller.setManifestLocations("classpath*:com/github/nblair/project/rest/assets/*/asset-manifest.json");
+  }
+  /**
+   * Verify the gzip variant is sent to clients that accept it, with the immutable Cache-Control.
+   * 
+   * @throws IOException 
+   */
+  @Test
+  public void asset_gzip() throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/assets/app.0123456789ab.js");
+    request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/assets/app.0123456789ab.js");
+    ResponseEntity<byte[]> response = controller.asset(request, "gzip, deflate", null);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("gzip", response.getHeaders().getFirst("Content-Encoding"));
+    assertEquals(AssetController.CACHE_CONTROL, response.getHeaders().getCacheControl());
+    assertEquals("Accept-Encoding", response.getHeaders().getFirst("Vary"));
+    assertEquals("application/javascript;charset=UTF-8", response.getHeaders().getContentType().toString());
+    assertArrayEquals(read("assets/1.0/app.0123456789ab.js.gz"), response.getBody());
+  }
+  /**
+   * Verify clients that don't accept gzip get the identity, as do all clients of an asset without a gzip variant.
+   * 
+   * @throws IOException 
+   */
+  @Test
+  public void asset_identity() throws IOException {
+    ResponseEntity<byte[]> response = controller.asset("app.0123456789ab.js", "gzip;q=0", null);
+    assertNull(response.getHeaders().getFirst("Content-Encoding"));
+    assertArrayEquals(read("assets/1.0/app.0123456789ab.js"), response.getBody());
+    
+    response = controller.asset("app.ba9876543210.css", "gzip", null);
+    assertNull(response.getHeaders().getFirst("Content-Encoding"));
+    assertEquals("text/css;charset=UTF-8", response.getHeaders().getContentType().toString());
+    assertArrayEquals(read("assets/1.0/app.ba9876543210.css"), response.getBody());
+  }
+  /**
+   * Verify the bytes are read once and then served from memory, and If-None-Match gets a 304.
+   */
+  @Test
+  public void asset_cached() {
+    ResponseEntity<byte[]> first = controller.asset("app.0123456789ab.js", "gzip", null);
+    ResponseEntity<byte[]> second = controller.asset("app.0123456789ab.js", "gzip", null);
+    assertSame(first.getBody(), second.getBody());
+    
+    ResponseEntity<byte[]> notModified = controller.asset("app.0123456789ab.js", "gzip", first.getHeaders().getETag());
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    assertNull(notModified.getBody());
+  }
+  /**
+   * Verify only the files listed in a manifest are served.
+   */
+  @Test
+  public void asset_not_found() {
+    assertEquals(HttpStatus.NOT_FOUND, controller.asset("app.js", null, null).getStatusCode());
+    assertEquals(HttpStatus.NOT_FOUND, controller.asset("asset-manifest.json", null, null).getStatusCode());
+    assertEquals(HttpStatus.NOT_FOUND, controller.asset("../build.json", null, null).getStatusCode());
+  }
+  /**
+   * Verify the original paths map to the hashed paths, in {@link AssetController#hashedPath(String)} and the manifest.
+   */
+  @Test
+  public void manifest() {
+    assertEquals("app.0123456789ab.js", controller.hashedPath("app.js"));
+    assertNull(controller.hashedPath("other.js"));
+    
+    ResponseEntity<byte[]> response = controller.manifest(null);
+    assertEquals(ProjectController.CACHE_CONTROL, response.getHeaders().getCacheControl());
+    assertEquals("{\"app.css\":\"app.ba9876543210.css\",\"app.js\":\"app.0123456789ab.js\"}", new String(response.getBody(), EncodedBuild.UTF_8));
+    assertEquals(HttpStatus.NOT_MODIFIED, controller.manifest(response.getHeaders().getETag()).getStatusCode());
+  }
+  /**
+   * 
+   * @param name
+   * @return the test resource's bytes
+   * @throws IOException
+   */
+  private static byte[] read(String name) throws IOException {
+    InputStream stream = AssetControllerTest.class.getResourceAsStream(name);
+    try {
+      return StreamUtils.copyToByteArray(stream);
+    } finally {
+      stream.close();
+    }
+  }
+}
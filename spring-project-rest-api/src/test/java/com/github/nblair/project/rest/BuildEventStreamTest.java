@@ -0,0 +1,245 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BuildEventStream}.
+ * 
+ * @author Nicholas Blair
+ */
+public class BuildEventStreamTest {
+
+  /**
+   * Verify a subscriber gets the current build on connect, a changed build when published, and nothing for an unchanged one.
+   * 
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  @Test
+  public void subscribe_and_publish() throws IOException, InterruptedException {
+    BuildEventStream stream = new BuildEventStream();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpServletResponse response = response(body);
+    HttpServletRequest request = request(response, null);
+    EncodedBuild v1 = new EncodedBuild(new Build("abc1234"));
+    try {
+      stream.subscribe(request, response, v1);
+      verify(response).setContentType("text/event-stream");
+      assertEquals(1, stream.getSubscriberCount());
+      String expected = "retry: 5000\n\n" + "id: " + v1.select(null, null).getEtag() + "\nevent: build\ndata: " + EncodedBuild.toJson(v1.getBuild()) + "\n\n";
+      assertEquals(expected, body.toString("UTF-8"));
+      
+      stream.publish(new EncodedBuild(new Build("abc1234")));
+      EncodedBuild v2 = new EncodedBuild(new Build("def5678"));
+      stream.publish(v2);
+      // writes are in publish order, so nothing was written for the unchanged build if v2 directly follows v1
+      awaitBody(body, expected + BuildEventStream.event(v2));
+    } finally {
+      stream.close();
+    }
+    assertEquals(0, stream.getSubscriberCount());
+  }
+  /**
+   * Verify a reconnecting client that already has the current build isn't sent it again.
+   * 
+   * @throws IOException
+   */
+  @Test
+  public void subscribe_last_event_id() throws IOException {
+    BuildEventStream stream = new BuildEventStream();
+    EncodedBuild v1 = new EncodedBuild(new Build("abc1234"));
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpServletResponse response = response(body);
+    try {
+      stream.subscribe(request(response, v1.select(null, null).getEtag()), response, v1);
+      assertEquals("retry: 5000\n\n", body.toString("UTF-8"));
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * Verify a subscriber whose connection fails is dropped.
+   * 
+   * @throws IOException
+   */
+  @Test
+  public void publish_drops_failed_subscriber() throws IOException {
+    BuildEventStream stream = new BuildEventStream();
+    ServletOutputStream out = mock(ServletOutputStream.class);
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(out);
+    HttpServletRequest request = request(response, null);
+    try {
+      stream.subscribe(request, response, new EncodedBuild(new Build("abc1234")));
+      assertEquals(1, stream.getSubscriberCount());
+      doThrow(new IOException("broken pipe")).when(out).write(any(byte[].class));
+      stream.publish(new EncodedBuild(new Build("def5678")));
+      verify(request.startAsync(request, response), timeout(5000)).complete();
+      assertEquals(0, stream.getSubscriberCount());
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * Verify publish returns while a subscriber's write is stalled, and the event is written once the client reads again.
+   * 
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  @Test(timeout = 10000)
+  public void publish_does_not_wait_for_subscriber() throws IOException, InterruptedException {
+    BuildEventStream stream = new BuildEventStream();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final AtomicBoolean stalled = new AtomicBoolean();
+    final CountDownLatch reading = new CountDownLatch(1);
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          if(stalled.get()) {
+            reading.await();
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        body.write(b);
+      }
+    });
+    HttpServletRequest request = request(response, null);
+    try {
+      stream.subscribe(request, response, new EncodedBuild(new Build("abc1234")));
+      String expected = body.toString("UTF-8");
+      
+      stalled.set(true);
+      EncodedBuild v2 = new EncodedBuild(new Build("def5678"));
+      stream.publish(v2);
+      assertEquals(expected, body.toString("UTF-8"));
+      
+      reading.countDown();
+      awaitBody(body, expected + BuildEventStream.event(v2));
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * Verify a subscriber whose first write fails is dropped and completed, rather than kept until the timeout.
+   * 
+   * @throws IOException
+   */
+  @Test
+  public void subscribe_drops_failed_subscriber() throws IOException {
+    BuildEventStream stream = new BuildEventStream();
+    ServletOutputStream out = mock(ServletOutputStream.class);
+    doThrow(new IOException("broken pipe")).when(out).write(any(byte[].class));
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(out);
+    HttpServletRequest request = request(response, null);
+    try {
+      stream.subscribe(request, response, new EncodedBuild(new Build("abc1234")));
+      assertEquals(0, stream.getSubscriberCount());
+      verify(request.startAsync(request, response)).complete();
+    } finally {
+      stream.close();
+    }
+  }
+  /**
+   * Verify connections arriving after {@link BuildEventStream#close()} are turned away instead of held open.
+   * 
+   * @throws IOException
+   */
+  @Test
+  public void subscribe_after_close() throws IOException {
+    BuildEventStream stream = new BuildEventStream();
+    stream.close();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    stream.subscribe(request, response, new EncodedBuild(new Build("abc1234")));
+    verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    verify(request, never()).startAsync(any(ServletRequest.class), any(ServletResponse.class));
+    assertEquals(0, stream.getSubscriberCount());
+  }
+  /**
+   * Wait for the body to be written, as publish doesn't.
+   * 
+   * @param body
+   * @param expected
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private static void awaitBody(ByteArrayOutputStream body, String expected) throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while(!expected.equals(body.toString("UTF-8")) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, body.toString("UTF-8"));
+  }
+  /**
+   * 
+   * @param response
+   * @param lastEventId
+   * @return a mock request whose async context writes to the response
+   */
+  private static HttpServletRequest request(HttpServletResponse response, String lastEventId) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    AsyncContext asyncContext = mock(AsyncContext.class);
+    when(asyncContext.getResponse()).thenReturn(response);
+    when(request.startAsync(request, response)).thenReturn(asyncContext);
+    when(request.getHeader("Last-Event-ID")).thenReturn(lastEventId);
+    return request;
+  }
+  /**
+   * 
+   * @param body
+   * @return a mock response writing to the body
+   * @throws IOException
+   */
+  private static HttpServletResponse response(final ByteArrayOutputStream body) throws IOException {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+    return response;
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link FleetAggregator}, against stub peers on local {@link HttpServer}s.
+ * 
+ * @author Nicholas Blair
+ */
+public class FleetAggregatorTest {
+
+  private final List<HttpServer> servers = new ArrayList<HttpServer>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private FleetAggregator aggregator;
+  
+  /**
+   * Stop the stub peers.
+   */
+  @After
+  public void tearDown() {
+    if(aggregator != null) {
+      aggregator.close();
+    }
+    for(HttpServer server: servers) {
+      server.stop(0);
+    }
+  }
+  /**
+   * Verify builds and profile sets are counted, most common first, and failed peers are reported alongside.
+   */
+  @Test
+  public void getSummary_partial_results() {
+    String v1 = json("1.0.0", "abc1234");
+    String v2 = json("1.1.0", "def5678");
+    final List<String> peers = Arrays.asList(
+        peer(v1, "[\"prod\"]", 0, false, 200),
+        peer(v1, "[\"prod\"]", 0, true, 200),
+        peer(v2, "[\"prod\",\"canary\"]", 0, false, 200),
+        peer(v1, "[\"prod\"]", 0, false, 200),
+        peer(v1, "[\"prod\"]", 2000, false, 200),
+        peer(v1, "[\"prod\"]", 0, false, 500));
+    aggregator = new FleetAggregator(new FleetPeerProvider() {
+      @Override
+      public List<String> getPeers() {
+        return peers;
+      }
+    }, 4, 300, 0);
+    
+    long start = System.currentTimeMillis();
+    FleetSummary summary = aggregator.getSummary();
+    assertTrue("took too long", System.currentTimeMillis() - start < 1500);
+    assertEquals(6, summary.getPeers());
+    
+    assertEquals(2, summary.getBuilds().size());
+    assertEquals("1.0.0", summary.getBuilds().get(0).getBuild().getProjectVersion());
+    assertEquals(3, summary.getBuilds().get(0).getCount());
+    assertEquals(Arrays.asList(peers.get(0), peers.get(1), peers.get(3)), summary.getBuilds().get(0).getPeers());
+    assertEquals("1.1.0", summary.getBuilds().get(1).getBuild().getProjectVersion());
+    assertEquals(1, summary.getBuilds().get(1).getCount());
+    
+    assertEquals(2, summary.getProfileSets().size());
+    assertEquals(Arrays.asList("prod"), summary.getProfileSets().get(0).getProfiles());
+    assertEquals(3, summary.getProfileSets().get(0).getCount());
+    // sorted, so the order a peer lists its profiles in doesn't matter
+    assertEquals(Arrays.asList("canary", "prod"), summary.getProfileSets().get(1).getProfiles());
+    assertEquals(Arrays.asList(peers.get(2)), summary.getProfileSets().get(1).getPeers());
+    
+    assertEquals(2, summary.getFailures().size());
+    Map<String, String> failures = new HashMap<String, String>();
+    for(FleetSummary.PeerFailure failure: summary.getFailures()) {
+      failures.put(failure.getPeer(), failure.getMessage());
+    }
+    assertTrue(failures.get(peers.get(4)), failures.get(peers.get(4)).contains("timed out") || failures.get(peers.get(4)).contains("SocketTimeoutException"));
+    assertTrue(failures.get(peers.get(5)), failures.get(peers.get(5)).contains("HTTP 500"));
+  }
+  /**
+   * Verify a summary is reused within the TTL.
+   */
+  @Test
+  public void getSummary_cached() {
+    final List<String> peers = Arrays.asList(peer(json("1.0.0", "abc1234"), "[]", 0, false, 200));
+    aggregator = new FleetAggregator(new FleetPeerProvider() {
+      @Override
+      public List<String> getPeers() {
+        return peers;
+      }
+    }, 1, 1000, 60000);
+    FleetSummary summary = aggregator.getSummary();
+    assertEquals(1, summary.getBuilds().size());
+    assertEquals(2, requests.get());
+    assertSame(summary, aggregator.getSummary());
+    assertEquals(2, requests.get());
+  }
+  /**
+   * Verify an unreachable peer is a failure, not an exception.
+   */
+  @Test
+  public void getSummary_unreachable() {
+    HttpServer server = start();
+    final String peer = "http://localhost:" + server.getAddress().getPort();
+    server.stop(0);
+    servers.remove(server);
+    aggregator = new FleetAggregator(new FleetPeerProvider() {
+      @Override
+      public List<String> getPeers() {
+        return Arrays.asList(peer);
+      }
+    }, 1, 1000, 0);
+    FleetSummary summary = aggregator.getSummary();
+    assertEquals(0, summary.getBuilds().size());
+    assertEquals(1, summary.getFailures().size());
+  }
+  /**
+   * 
+   * @param projectVersion
+   * @param buildNumber
+   * @return a /build response
+   */
+  private static String json(String projectVersion, String buildNumber) {
+    Build build = new Build(buildNumber);
+    build.setProjectVersion(projectVersion);
+    return EncodedBuild.toJson(build);
+  }
+  /**
+   * 
+   * @param build the /build response
+   * @param activeProfiles the /activeProfiles response
+   * @param delayMillis how long to wait before responding
+   * @param gzip whether to gzip the responses
+   * @param status the response status
+   * @return the base URL of a new stub peer
+   */
+  private String peer(final String build, final String activeProfiles, final long delayMillis, final boolean gzip, final int status) {
+    HttpServer server = start();
+    server.createContext("/app/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if(delayMillis > 0) {
+          try {
+            Thread.sleep(delayMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = (path.endsWith("/build") ? build : activeProfiles).getBytes(EncodedBuild.UTF_8);
+        if(gzip) {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          GZIPOutputStream gzipped = new GZIPOutputStream(out);
+          gzipped.write(body);
+          gzipped.close();
+          body = out.toByteArray();
+          exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream responseBody = exchange.getResponseBody();
+        responseBody.write(body);
+        responseBody.close();
+      }
+    });
+    return "http://localhost:" + server.getAddress().getPort() + "/app";
+  }
+  /**
+   * 
+   * @return a started server on an ephemeral port
+   */
+  private HttpServer start() {
+    try {
+      HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.setExecutor(null);
+      server.start();
+      servers.add(server);
+      return server;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nblair.project.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * Tests for {@link FleetController}.
+ * 
+ * @author Nicholas Blair
+ */
+public class FleetControllerTest {
+
+  /**
+   * Verify the peers are read from the {@link FleetController#FLEET_PEERS} property.
+   */
+  @Test
+  public void peers_from_property() {
+    FleetController.EnvironmentPeerProvider provider = new FleetController.EnvironmentPeerProvider(new MockEnvironment()
+      .withProperty(FleetController.FLEET_PEERS, " http://node1:8080/app, http://node2:8080/app"));
+    assertEquals(Arrays.asList("http://node1:8080/app", "http://node2:8080/app"), provider.getPeers());
+    assertTrue(new FleetController.EnvironmentPeerProvider(new MockEnvironment()).getPeers().isEmpty());
+  }
+  /**
+   * Verify a {@link FleetPeerProvider} bean is used, and an empty fleet summarizes cleanly.
+   */
+  @Test
+  public void fleet_empty() {
+    FleetController controller = new FleetController();
+    controller.setEnvironment(new MockEnvironment().withProperty(FleetController.FLEET_PEERS, "http://localhost:1/app"));
+    controller.setPeerProvider(new FleetPeerProvider() {
+      @Override
+      public List<String> getPeers() {
+        return Collections.emptyList();
+      }
+    });
+    try {
+      FleetSummary summary = controller.fleet();
+      assertEquals(0, summary.getPeers());
+      assertTrue(summary.getBuilds().isEmpty());
+      assertTrue(summary.getFailures().isEmpty());
+      assertSame(controller.aggregator(), controller.aggregator());
+    } finally {
+      controller.destroy();
+    }
+  }
+}
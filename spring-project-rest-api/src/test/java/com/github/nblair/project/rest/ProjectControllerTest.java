@@ -21,12 +21,21 @@ package com.github.nblair.project.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
 import org.junit.Test;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.StreamUtils;
 
 /**
  * Tests for {@link ProjectController}.
@@ -89,6 +98,122 @@ public class ProjectControllerTest {
     assertEquals("something/branchname", build.getScmBranch());
     assertFalse(build.isDirty()); 
   }
-  
- 
+  /**
+   * Verify the build is read once, and {@link ProjectController#build()} returns copies.
+   */
+  @Test
+  public void build_read_once() {
+    ProjectController controller = new ProjectController();
+    MockEnvironment env = new MockEnvironment()
+      .withProperty(ProjectController.PROJECT_VERSION, "1.2.3");
+    controller.setEnvironment(env);
+    
+    Build build = controller.build();
+    build.setProjectVersion("modified");
+    env.setProperty(ProjectController.PROJECT_VERSION, "4.5.6");
+    assertEquals("1.2.3", controller.build().getProjectVersion());
+  }
+  /**
+   * Verify the JSON representation, its headers and the 304 for a matching If-None-Match.
+   */
+  @Test
+  public void buildResponse_json() {
+    ProjectController controller = new ProjectController();
+    controller.setEnvironment(new MockEnvironment()
+      .withProperty(ProjectController.PROJECT_VERSION, "1.2.4-SNAPSHOT")
+      .withProperty(ProjectController.GIT_BRANCH, "some\"branch")
+      .withProperty(ProjectController.GIT_COMMIT_ID_ABBREV, "abcd123")
+      .withProperty(ProjectController.GIT_DIRTY, "false"));
+    
+    ResponseEntity<byte[]> response = controller.buildResponse("application/json", null, null);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("{\"buildNumber\":\"abcd123\",\"scmBranch\":\"some\\\"branch\",\"projectVersion\":\"1.2.4-SNAPSHOT\",\"timestamp\":null,\"dirty\":false}", 
+        new String(response.getBody(), EncodedBuild.UTF_8));
+    assertEquals(MediaType.APPLICATION_JSON, new MediaType(response.getHeaders().getContentType().getType(), response.getHeaders().getContentType().getSubtype()));
+    assertEquals(ProjectController.CACHE_CONTROL, response.getHeaders().getCacheControl());
+    String etag = response.getHeaders().getETag();
+    assertNotNull(etag);
+    assertNull(response.getHeaders().getFirst("Content-Encoding"));
+    
+    ResponseEntity<byte[]> notModified = controller.buildResponse("application/json", null, "\"other\", " + etag);
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    assertNull(notModified.getBody());
+    assertEquals(etag, notModified.getHeaders().getETag());
+  }
+  /**
+   * Verify XML is served when preferred, and gzip when accepted, each with its own ETag.
+   * 
+   * @throws IOException 
+   */
+  @Test
+  public void buildResponse_xml_gzip() throws IOException {
+    ProjectController controller = new ProjectController();
+    controller.setEnvironment(new MockEnvironment()
+      .withProperty(ProjectController.GIT_COMMIT_ID_ABBREV, "abcd123"));
+    
+    ResponseEntity<byte[]> xml = controller.buildResponse("application/xml;q=0.9, application/json;q=0.5", null, null);
+    String body = new String(xml.getBody(), EncodedBuild.UTF_8);
+    assertTrue(body, body.contains("<buildNumber>abcd123</buildNumber>"));
+    assertEquals("xml", xml.getHeaders().getContentType().getSubtype());
+    
+    ResponseEntity<byte[]> gzipped = controller.buildResponse("application/xml", "deflate, gzip", null);
+    assertEquals("gzip", gzipped.getHeaders().getFirst("Content-Encoding"));
+    assertFalse(xml.getHeaders().getETag().equals(gzipped.getHeaders().getETag()));
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBody()));
+    assertEquals(body, StreamUtils.copyToString(in, EncodedBuild.UTF_8));
+    
+    assertNull(controller.buildResponse("application/xml", "gzip;q=0", null).getHeaders().getFirst("Content-Encoding"));
+    assertEquals("json", controller.buildResponse(null, null, null).getHeaders().getContentType().getSubtype());
+  }
+  /**
+   * Verify a malformed q in Accept-Encoding makes that coding unacceptable, instead of failing the request.
+   */
+  @Test
+  public void acceptsGzip_quality() {
+    assertTrue(EncodedBuild.acceptsGzip("gzip;q=.5"));
+    assertTrue(EncodedBuild.acceptsGzip("deflate, gzip; q=1.0"));
+    assertFalse(EncodedBuild.acceptsGzip("gzip;q=0.000"));
+    assertFalse(EncodedBuild.acceptsGzip("gzip;q=abc"));
+    assertFalse(EncodedBuild.acceptsGzip("*;q="));
+    
+    ProjectController controller = new ProjectController();
+    controller.setEnvironment(new MockEnvironment()
+      .withProperty(ProjectController.GIT_COMMIT_ID_ABBREV, "abcd123"));
+    ResponseEntity<byte[]> response = controller.buildResponse(null, "gzip;q=abc", null);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertNull(response.getHeaders().getFirst("Content-Encoding"));
+  }
+  /**
+   * Verify the build descriptor is used, without the {@link Environment}, when present.
+   */
+  @Test
+  public void build_descriptor() {
+    ProjectController controller = new ProjectController();
+    controller.setBuildDescriptorLocation("com/github/nblair/project/rest/build.json");
+    
+    Build build = controller.build();
+    assertEquals("abcd123", build.getBuildNumber());
+    assertEquals("feature/\u00e9t\u00e9", build.getScmBranch());
+    assertEquals("1.2.4-SNAPSHOT", build.getProjectVersion());
+    assertEquals("18.10.2026 @ 12:00:00 CDT", build.getTimestamp());
+    assertFalse(build.isDirty());
+  }
+  /**
+   * Verify {@link EncodedBuild#fromJson(String)} reads what {@link EncodedBuild#toJson(Build)} writes.
+   */
+  @Test
+  public void build_json_round_trip() {
+    Build build = new Build("a\"b\\c");
+    build.setScmBranch("tab\there");
+    build.setDirty(true);
+    String json = EncodedBuild.toJson(build);
+    assertEquals(json, EncodedBuild.toJson(EncodedBuild.fromJson(" " + json + "\n")));
+  }
+  /**
+   * Verify malformed JSON is rejected.
+   */
+  @Test(expected=IllegalArgumentException.class)
+  public void build_json_malformed() {
+    EncodedBuild.fromJson("{\"buildNumber\":\"abcd123\"");
+  }
 }